@@ -1,15 +1,43 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import javax.swing.*;
 import javax.swing.event.TableModelEvent;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.TextStyle;
+import java.time.temporal.TemporalAdjusters;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.*;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 // ---------------- Logging Setup ----------------
 class Log {
@@ -37,39 +65,52 @@ class Log {
 // ---------------- JSON Utility (Refactor) ----------------
 class JsonUtil {
     public static String stringify(Object v) {
-        if (v == null) return "null";
-        if (v instanceof String) return "\"" + esc((String)v) + "\"";
-        if (v instanceof Number || v instanceof Boolean) return String.valueOf(v);
+        StringBuilder sb = new StringBuilder();
+        try { write(v, sb); } catch (IOException e) { throw new UncheckedIOException(e); }
+        return sb.toString();
+    }
+
+    // Same output as stringify, appended piecewise so large documents can go straight to a Writer.
+    public static void write(Object v, Appendable out) throws IOException {
+        if (v == null) { out.append("null"); return; }
+        if (v instanceof String) { out.append('"'); esc((String) v, out); out.append('"'); return; }
+        if (v instanceof Number || v instanceof Boolean) { out.append(String.valueOf(v)); return; }
         if (v instanceof Map) {
-            StringBuilder sb = new StringBuilder("{");
+            out.append('{');
             boolean first = true;
             for (Object eObj : ((Map<?, ?>) v).entrySet()) {
                 Map.Entry<?, ?> e = (Map.Entry<?, ?>) eObj;
-                if (!first) sb.append(",");
+                if (!first) out.append(',');
                 first = false;
-                sb.append("\"").append(esc(String.valueOf(e.getKey()))).append("\":").append(stringify(e.getValue()));
+                out.append('"'); esc(String.valueOf(e.getKey()), out); out.append("\":");
+                write(e.getValue(), out);
             }
-            sb.append("}");
-            return sb.toString();
+            out.append('}');
+            return;
         }
         if (v instanceof List) {
-            StringBuilder sb = new StringBuilder("[");
+            out.append('[');
             boolean first = true;
             for (Object o : (List<?>) v) {
-                if (!first) sb.append(",");
+                if (!first) out.append(',');
                 first = false;
-                sb.append(stringify(o));
+                write(o, out);
             }
-            sb.append("]");
-            return sb.toString();
+            out.append(']');
+            return;
         }
-        return "\"" + esc(String.valueOf(v)) + "\"";
+        out.append('"'); esc(String.valueOf(v), out); out.append('"');
     }
 
     public static Object parse(String s) throws IOException {
         return new Parser(s).parse();
     }
 
+    // Streams the document through a bounded buffer instead of reading it into a string first.
+    public static Object parse(Reader r) throws IOException {
+        return new Parser(r).parse();
+    }
+
     @SuppressWarnings("unchecked")
     public static Map<String, Object> obj(Object o) { return (Map<String, Object>) o; }
     @SuppressWarnings("unchecked")
@@ -81,6 +122,10 @@ class JsonUtil {
         }
     }
 
+    public static Writer newWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
     public static String readString(File file) throws IOException {
         try (InputStream in = new FileInputStream(file)) {
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -91,9 +136,9 @@ class JsonUtil {
         }
     }
 
-    private static String esc(String s) {
-        StringBuilder sb = new StringBuilder();
-        for (char c : s.toCharArray()) {
+    private static void esc(String s, Appendable sb) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
             switch (c) {
                 case '"': sb.append("\\\""); break;
                 case '\\': sb.append("\\\\"); break;
@@ -107,117 +152,130 @@ class JsonUtil {
                     else sb.append(c);
             }
         }
-        return sb.toString();
     }
 
-    private static class Parser {
-        private final String s;
-        private int i = 0;
-        Parser(String s) { this.s = s; }
+    // Works over a bounded window of characters, refilled from a Reader as it goes (a string is one big window), so a
+    // document of any size can be walked value by value; the pull methods let callers do that for top-level arrays.
+    static final class Parser {
+        private final Reader in;   // null when the whole document is in buf
+        private char[] buf;
+        private int i, len, mark = -1;   // chars from mark on are kept across refills
+        private long dropped;            // chars discarded before buf[0], for error offsets
+        Parser(String s) { in = null; buf = s.toCharArray(); len = buf.length; }
+        Parser(Reader in) { this.in = in; buf = new char[8192]; }
         Object parse() throws IOException {
-            skip();
             Object v = readValue();
-            skip();
-            if (i != s.length()) throw err("Trailing content");
+            end();
             return v;
         }
-        private Object readValue() throws IOException {
+        // Fails unless only whitespace is left.
+        void end() throws IOException {
             skip();
-            if (i >= s.length()) throw err("Unexpected end");
-            char c = s.charAt(i);
+            if (avail(1)) throw err("Trailing content");
+        }
+        // Skips whitespace and consumes c if it comes next.
+        boolean consume(char c) throws IOException {
+            skip();
+            if (avail(1) && buf[i] == c) { i++; return true; }
+            return false;
+        }
+        void expect(char c) throws IOException { if (!consume(c)) throw err("Expected " + c); }
+        Object readValue() throws IOException {
+            skip();
+            if (!avail(1)) throw err("Unexpected end");
+            char c = buf[i];
             if (c == '"') return readString();
             if (c == '{') return readObject();
             if (c == '[') return readArray();
-            if (s.startsWith("true", i)) { i += 4; return Boolean.TRUE; }
-            if (s.startsWith("false", i)) { i += 5; return Boolean.FALSE; }
-            if (s.startsWith("null", i)) { i += 4; return null; }
+            if (startsWith("true")) { i += 4; return Boolean.TRUE; }
+            if (startsWith("false")) { i += 5; return Boolean.FALSE; }
+            if (startsWith("null")) { i += 4; return null; }
             return readNumber();
         }
-        private String readString() throws IOException {
-            if (s.charAt(i) != '"') throw err("Expected string");
+        String readString() throws IOException {
+            skip();
+            if (!avail(1) || buf[i] != '"') throw err("Expected string");
             i++;
             StringBuilder sb = new StringBuilder();
-            while (i < s.length()) {
-                char c = s.charAt(i++);
+            while (avail(1)) {
+                int run = i;
+                while (run < len && buf[run] != '"' && buf[run] != '\\') run++;
+                sb.append(buf, i, run - i); i = run;
+                if (i == len) continue;
+                char c = buf[i++];
                 if (c == '"') return sb.toString();
-                if (c == '\\') {
-                    if (i >= s.length()) throw err("Bad escape");
-                    char e = s.charAt(i++);
-                    switch (e) {
-                        case '"': sb.append('"'); break;
-                        case '\\': sb.append('\\'); break;
-                        case '/': sb.append('/'); break;
-                        case 'b': sb.append('\b'); break;
-                        case 'f': sb.append('\f'); break;
-                        case 'n': sb.append('\n'); break;
-                        case 'r': sb.append('\r'); break;
-                        case 't': sb.append('\t'); break;
-                        case 'u':
-                            if (i + 4 > s.length()) throw err("Bad unicode");
-                            String hex = s.substring(i, i + 4);
-                            sb.append((char) Integer.parseInt(hex, 16));
-                            i += 4; break;
-                        default: throw err("Bad escape");
-                    }
-                } else {
-                    sb.append(c);
+                if (!avail(1)) throw err("Bad escape");
+                char e = buf[i++];
+                switch (e) {
+                    case '"': sb.append('"'); break;
+                    case '\\': sb.append('\\'); break;
+                    case '/': sb.append('/'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (!avail(4)) throw err("Bad unicode");
+                        try { sb.append((char) Integer.parseInt(new String(buf, i, 4), 16)); }
+                        catch (NumberFormatException ex) { throw err("Bad unicode"); }
+                        i += 4; break;
+                    default: throw err("Bad escape");
                 }
             }
             throw err("Unterminated string");
         }
         private Map<String, Object> readObject() throws IOException {
-            if (s.charAt(i) != '{') throw err("Expected {");
-            i++;
+            expect('{');
             Map<String, Object> m = new LinkedHashMap<>();
-            skip();
-            if (i < s.length() && s.charAt(i) == '}') { i++; return m; }
-            while (true) {
-                skip();
+            if (consume('}')) return m;
+            do {
                 String k = readString();
-                skip();
-                if (i >= s.length() || s.charAt(i) != ':') throw err("Expected :");
-                i++;
-                Object v = readValue();
-                m.put(k, v);
-                skip();
-                if (i >= s.length()) throw err("Unterminated object");
-                char c = s.charAt(i++);
-                if (c == '}') break;
-                if (c != ',') throw err("Expected ,");
-            }
+                expect(':');
+                m.put(k, readValue());
+            } while (consume(','));
+            if (!consume('}')) throw err(avail(1) ? "Expected ," : "Unterminated object");
             return m;
         }
         private List<Object> readArray() throws IOException {
-            if (s.charAt(i) != '[') throw err("Expected [");
-            i++;
+            expect('[');
             List<Object> a = new ArrayList<>();
-            skip();
-            if (i < s.length() && s.charAt(i) == ']') { i++; return a; }
-            while (true) {
-                Object v = readValue();
-                a.add(v);
-                skip();
-                if (i >= s.length()) throw err("Unterminated array");
-                char c = s.charAt(i++);
-                if (c == ']') break;
-                if (c != ',') throw err("Expected ,");
-            }
+            if (consume(']')) return a;
+            do a.add(readValue()); while (consume(','));
+            if (!consume(']')) throw err(avail(1) ? "Expected ," : "Unterminated array");
             return a;
         }
+        private boolean isDigits(int from, int to) {
+            if (from >= to) return false;
+            for (int k = from; k < to; k++) if (buf[k] < '0' || buf[k] > '9') return false;
+            return true;
+        }
         private Number readNumber() throws IOException {
-            int start = i;
-            if (s.charAt(i) == '-') i++;
-            while (i < s.length() && Character.isDigit(s.charAt(i))) i++;
-            if (i < s.length() && s.charAt(i) == '.') {
+            mark = i;
+            if (buf[i] == '-') i++;
+            digits();
+            if (avail(1) && buf[i] == '.') { i++; digits(); }
+            if (avail(1) && (buf[i] == 'e' || buf[i] == 'E')) {
                 i++;
-                while (i < s.length() && Character.isDigit(s.charAt(i))) i++;
+                if (avail(1) && (buf[i] == '+' || buf[i] == '-')) i++;
+                digits();
             }
-            if (i < s.length() && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
-                i++;
-                if (i < s.length() && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
-                while (i < s.length() && Character.isDigit(s.charAt(i))) i++;
+            int start = mark; mark = -1;
+            boolean neg = buf[start] == '-';
+            if (isDigits(neg ? start + 1 : start, i)) {
+                // plain integers are accumulated in place (negated, so Long.MIN_VALUE fits), without a substring
+                long l = 0; boolean overflow = false;
+                for (int k = neg ? start + 1 : start; k < i && !overflow; k++) {
+                    int dg = buf[k] - '0';
+                    if (l < (Long.MIN_VALUE + dg) / 10) overflow = true; else l = l * 10 - dg;
+                }
+                if (!overflow && (neg || l != Long.MIN_VALUE)) {
+                    if (!neg) l = -l;
+                    if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) return (int) l;
+                    return l;
+                }
             }
-            String num = s.substring(start, i);
+            String num = new String(buf, start, i - start);
             try {
                 if (num.indexOf('.') >= 0 || num.indexOf('e') >= 0 || num.indexOf('E') >= 0) return Double.parseDouble(num);
                 long l = Long.parseLong(num);
@@ -227,14 +285,38 @@ class JsonUtil {
                 throw err("Bad number");
             }
         }
-        private void skip() { while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++; }
-        private IOException err(String m) { return new IOException(m + " at " + i); }
+        private void digits() throws IOException { while (avail(1) && buf[i] >= '0' && buf[i] <= '9') i++; }
+        private boolean startsWith(String word) throws IOException {
+            if (!avail(word.length())) return false;
+            for (int k = 0; k < word.length(); k++) if (buf[i + k] != word.charAt(k)) return false;
+            return true;
+        }
+        private void skip() throws IOException { while (avail(1) && Character.isWhitespace(buf[i])) i++; }
+        // True if n more characters can be read at i, refilling the window from the reader when needed.
+        private boolean avail(int n) throws IOException {
+            if (i + n <= len) return true;
+            if (in == null) return false;
+            int keep = mark >= 0 ? mark : i;
+            if (keep > 0) {
+                System.arraycopy(buf, keep, buf, 0, len - keep);
+                dropped += keep; len -= keep; i -= keep; if (mark >= 0) mark = 0;
+            }
+            while (i + n > len) {
+                if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);   // one token longer than the window
+                int r = in.read(buf, len, buf.length - len);
+                if (r < 0) return false;
+                len += r;
+            }
+            return true;
+        }
+        private IOException err(String m) { return new IOException(m + " at " + (dropped + i)); }
     }
 }
 
 // ---------------- Core Models ----------------
 class Task<T> implements Serializable {
     private static final long serialVersionUID = 4L;
+    private long id;          // stable identity, survives renames and every save format; never 0
     private String taskName;
     private String time;      // start time HH:MM
     private String endTime;   // end time HH:MM
@@ -243,6 +325,7 @@ class Task<T> implements Serializable {
     private boolean completed;
 
     public Task(String taskName, String time, String endTime, T priority, String category) {
+        this.id = newId();
         this.taskName = taskName;
         this.time = time;
         this.endTime = endTime;
@@ -256,6 +339,18 @@ class Task<T> implements Serializable {
         this(taskName, time, time, priority, category);
     }
 
+    // A persisted task with its id and state (packed days decode through this).
+    Task(long id, String taskName, String time, String endTime, T priority, String category, boolean completed) {
+        this.id = id;
+        this.taskName = taskName;
+        this.time = time;
+        this.endTime = endTime;
+        this.priority = priority;
+        this.category = category;
+        this.completed = completed;
+    }
+
+    public long getId() { return id; }
     public String getTaskName() { return taskName; }
     public String getTime() { return time; }
     public String getEndTime() { return endTime; }
@@ -263,6 +358,8 @@ class Task<T> implements Serializable {
     public String getCategory() { return category; }
     public boolean isCompleted() { return completed; }
 
+    // Only loaders should call this, to restore a persisted id.
+    public void setId(long id) { this.id = id; }
     public void setTaskName(String taskName) { this.taskName = taskName; }
     public void setTime(String time) { this.time = time; }
     public void setEndTime(String endTime) { this.endTime = endTime; }
@@ -270,383 +367,4684 @@ class Task<T> implements Serializable {
     public void setCategory(String category) { this.category = category; }
     public void setCompleted(boolean completed) { this.completed = completed; }
 
+    // Same task, same id (snapshots, undo state).
+    public Task<T> copy() {
+        Task<T> c = duplicate();
+        c.id = id;
+        return c;
+    }
+
+    // Another task with the same fields and a fresh id (copying to other days, templates, recurrence).
+    public Task<T> duplicate() {
+        Task<T> c = new Task<>(taskName, time, endTime, priority, category);
+        c.setCompleted(completed);
+        return c;
+    }
+
+    // Random so ids from different files, templates and machines do not collide.
+    static long newId() {
+        long id;
+        do id = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE; while (id == 0);
+        return id;
+    }
+
+    // Tasks serialized before ids existed come back with 0.
+    private Object readResolve() { if (id == 0) id = newId(); return this; }
+
     @Override
     public String toString() { return time + "–" + endTime + " - " + taskName + " [" + priority + "]"; }
 }
 
 class DaySchedule<T> implements Serializable {
     private static final long serialVersionUID = 1L;
+    // Start, then end; HH:MM text sorts like the times it holds.
+    static final Comparator<Task<?>> BY_TIME = new Comparator<Task<?>>() { @Override public int compare(Task<?> t1, Task<?> t2) {
+        int c = t1.getTime().compareTo(t2.getTime());
+        if (c != 0) return c;
+        return t1.getEndTime().compareTo(t2.getEndTime());
+    }};
     private String dayName;
     private List<Task<T>> tasks;
     public DaySchedule(String dayName) { this.dayName = dayName; this.tasks = new ArrayList<>(); }
+    // A loaded day whose tasks stay encoded until something reads or edits them (see PackedTaskList).
+    static DaySchedule<String> packed(String dayName, PackedDay packed) {
+        DaySchedule<String> s = new DaySchedule<>(dayName);
+        s.tasks = new PackedTaskList(packed);
+        return s;
+    }
     public void addTask(Task<T> task) { tasks.add(task); sortTasksByTime(); }
+    public void addTasks(Collection<Task<T>> batch) { tasks.addAll(batch); sortTasksByTime(); }
     public void removeTask(int index) { if (index >= 0 && index < tasks.size()) tasks.remove(index); }
     public List<Task<T>> getTasks() { return tasks; }
+    // The task at index as an object that may be changed in place and keeps its identity; in a packed day this
+    // promotes it to a full Task. Holders of a task across edits (undo commands) take it from here.
+    public Task<T> editableTask(int index) {
+        PackedTaskList packed = packedTasks();
+        if (packed == null) return tasks.get(index);
+        @SuppressWarnings("unchecked") Task<T> t = (Task<T>) packed.promote(index);
+        return t;
+    }
     public String getDayName() { return dayName; }
-    private void sortTasksByTime() {
-        Collections.sort(tasks, new Comparator<Task<T>>() { @Override public int compare(Task<T> t1, Task<T> t2) {
-            int c = t1.getTime().compareTo(t2.getTime());
-            if (c != 0) return c;
-            return t1.getEndTime().compareTo(t2.getEndTime());
-        }});
+    public DaySchedule<T> copy() { return copyAs(dayName); }
+    // Copies keep task ids only when the day name stays the same. A packed day's copy shares the encoded tasks.
+    public DaySchedule<T> copyAs(String newDayName) {
+        DaySchedule<T> c = new DaySchedule<>(newDayName);
+        boolean sameDay = newDayName.equals(dayName);
+        PackedTaskList packed = sameDay ? packedTasks() : null, shared = packed == null ? null : packed.copy();
+        if (shared != null) { @SuppressWarnings("unchecked") List<Task<T>> l = (List<Task<T>>) (List<?>) shared; c.tasks = l; return c; }
+        for (Task<T> t : tasks) c.tasks.add(sameDay ? t.copy() : t.duplicate());
+        return c;
     }
+    private PackedTaskList packedTasks() { Object l = tasks; return l instanceof PackedTaskList ? (PackedTaskList) l : null; }
+    private void sortTasksByTime() { tasks.sort(BY_TIME); }
 }
 
-// ---------------- Persistence (uses JsonUtil) ----------------
-class DataPersistence {
-    enum Format { JSON, XML, SERIALIZED }
+class Times {
+    // "HH:MM" -> minutes since midnight, or -1 if the text is not a valid time.
+    static int toMinutes(String hhmm) {
+        if (hhmm == null || hhmm.length() != 5 || hhmm.charAt(2) != ':') return -1;
+        int h = digit(hhmm.charAt(0)) * 10 + digit(hhmm.charAt(1));
+        int m = digit(hhmm.charAt(3)) * 10 + digit(hhmm.charAt(4));
+        if (h < 0 || m < 0 || h > 23 || m > 59) return -1;
+        return h * 60 + m;
+    }
+    static String format(int minutes) {
+        int h = minutes / 60, m = minutes % 60;
+        return (h < 10 ? "0" : "") + h + (m < 10 ? ":0" : ":") + m;
+    }
+    // format() for 0..1439 as one shared string per minute, so decoded tasks do not each carry their own copies.
+    static String text(int minutes) { return TEXT[minutes]; }
+    private static final String[] TEXT = new String[24 * 60];
+    static { for (int m = 0; m < TEXT.length; m++) TEXT[m] = format(m); }
+    // 0 = Monday ... 6 = Sunday, or -1 for a day name that is not an English weekday.
+    static int weekday(String dayName) {
+        for (DayOfWeek d : DayOfWeek.values()) if (d.getDisplayName(TextStyle.FULL, Locale.ENGLISH).equalsIgnoreCase(dayName)) return d.getValue() - 1;
+        return -1;
+    }
+    private static int digit(char c) { return c >= '0' && c <= '9' ? c - '0' : -1000; }
+}
 
-    public void save(Map<String, DaySchedule<String>> data, File file, Format format) throws IOException {
-        try {
-            switch (format) {
-                case JSON:
-                    Log.PERSIST.info("Saving JSON to " + file);
-                    JsonUtil.writeString(file, JsonUtil.stringify(serializeToJsonObject(data)));
-                    break;
-                case XML:
-                    Log.PERSIST.info("Saving XML to " + file);
-                    JsonUtil.writeString(file, toXml(data));
-                    break;
-                case SERIALIZED:
-                    Log.PERSIST.info("Saving serialized to " + file);
-                    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-                        oos.writeObject(new LinkedHashMap<>(data));
-                    }
-                    break;
-            }
-        } catch (IOException ex) {
-            Log.PERSIST.log(Level.SEVERE, "Save failed", ex);
-            throw ex;
-        }
+// The one set of task field rules, shared by UI entry, the HTTP service and every loader. Checks only read
+// characters (Times.toMinutes), so validating a huge import allocates nothing for the tasks that pass.
+final class TaskValidator {
+    static final int OK = 0, NO_NAME = 1, BAD_START = 2, BAD_END = 3, END_BEFORE_START = 4;
+    private static final String[] PROBLEMS = {"ok", "missing name", "start is not a valid HH:MM time", "end is not a valid HH:MM time", "end is before start"};
+
+    private TaskValidator() {}
+
+    // New tasks entered by hand: named, and starting and ending on the same day.
+    static int checkEntry(String name, String start, String end) {
+        int p = check(name, start, end);
+        return p == OK && Times.toMinutes(end) < Times.toMinutes(start) ? END_BEFORE_START : p;
     }
+    // Stored tasks may run past midnight (end before start), as imported calendars do; the minute bitmaps cut them there.
+    static int check(String name, String start, String end) {
+        if (isBlank(name)) return NO_NAME;
+        if (Times.toMinutes(start) < 0) return BAD_START;
+        if (Times.toMinutes(end) < 0) return BAD_END;
+        return OK;
+    }
+    static int check(Task<?> t) { return t == null ? NO_NAME : check(t.getTaskName(), t.getTime(), t.getEndTime()); }
+    static String describe(int problem) { return PROBLEMS[problem]; }
 
-    public Map<String, DaySchedule<String>> load(File file, Format format) throws IOException {
-        try {
-            switch (format) {
-                case JSON:
-                    Log.PERSIST.info("Loading JSON from " + file);
-                    Object root = JsonUtil.parse(JsonUtil.readString(file));
-                    return deserializeFromJsonObject(JsonUtil.obj(root));
-                case XML:
-                    Log.PERSIST.info("Loading XML from " + file);
-                    return fromXml(JsonUtil.readString(file));
-                case SERIALIZED:
-                    Log.PERSIST.info("Loading serialized from " + file);
-                    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, DaySchedule<String>> m = (Map<String, DaySchedule<String>>) ois.readObject();
-                        return m;
-                    } catch (ClassNotFoundException e) {
-                        throw new IOException("Serialized data incompatible", e);
-                    }
-            }
-        } catch (IOException ex) {
-            Log.PERSIST.log(Level.SEVERE, "Load failed", ex);
-            throw ex;
+    // Drops invalid tasks from a loaded routine, one compacting pass per day, and records them in the report.
+    static void clean(Map<String, ? extends DaySchedule<?>> data, Report report) {
+        for (Map.Entry<String, ? extends DaySchedule<?>> e : data.entrySet())
+            if (e.getValue() != null) clean(e.getKey(), e.getValue().getTasks(), report);
+    }
+    static void clean(String where, List<? extends Task<?>> tasks, Report report) {
+        int kept = 0, n = tasks.size();
+        for (int i = 0; i < n; i++) {
+            Task<?> t = tasks.get(i);
+            if (admit(where, t, report)) { if (kept != i) set(tasks, kept, t); kept++; }
         }
-        throw new IOException("Unsupported format");
+        if (kept < n) tasks.subList(kept, n).clear();
     }
+    // One task of a streaming load: counted, and recorded in the report if it is rejected.
+    static boolean admit(String where, Task<?> t, Report report) {
+        int p = check(t);
+        report.checked++;
+        if (p != OK) report.reject(where, t, p);
+        return p == OK;
+    }
+    @SuppressWarnings("unchecked")
+    private static <E> void set(List<E> list, int i, Object value) { list.set(i, (E) value); }
 
-    // JSON model: { "days":[ { "day":"Monday", "tasks":[ {...}, ... ] }, ... ] }
-    private Map<String, Object> serializeToJsonObject(Map<String, DaySchedule<String>> data) {
-        List<Object> days = new ArrayList<>();
-        for (Map.Entry<String, DaySchedule<String>> e : data.entrySet()) {
-            List<Object> tasks = new ArrayList<>();
-            for (Task<String> t : e.getValue().getTasks()) {
-                Map<String, Object> to = new LinkedHashMap<>();
-                to.put("time", t.getTime());
-                to.put("endTime", t.getEndTime());
-                to.put("taskName", t.getTaskName());
-                to.put("priority", String.valueOf(t.getPriority()));
-                to.put("category", t.getCategory());
-                to.put("completed", t.isCompleted());
-                tasks.add(to);
-            }
-            Map<String, Object> dayObj = new LinkedHashMap<>();
-            dayObj.put("day", e.getKey());
-            dayObj.put("tasks", tasks);
-            days.add(dayObj);
+    // Blank the way String.trim() sees it, which is what the entry fields apply.
+    private static boolean isBlank(String s) {
+        if (s == null) return true;
+        for (int i = 0; i < s.length(); i++) if (s.charAt(i) > ' ') return false;
+        return true;
+    }
+
+    // What a batch load skipped: counts per problem plus the first few offenders, for logs and import dialogs.
+    // Filled by one loader at a time.
+    static final class Report {
+        private static final int SAMPLES = 10;
+        final String source;
+        int checked, rejected;
+        private final int[] byProblem = new int[PROBLEMS.length];
+        private final List<String> samples = new ArrayList<>();
+
+        Report(String source) { this.source = source; }
+
+        boolean isClean() { return rejected == 0; }
+
+        void reject(String where, Task<?> t, int problem) {
+            rejected++; byProblem[problem]++;
+            if (samples.size() < SAMPLES)
+                samples.add(where + ": " + (t == null ? "(no task)" : (t.getTaskName() == null ? "(no name)" : "\"" + t.getTaskName() + "\"") + " " + t.getTime() + "–" + t.getEndTime()) + " – " + describe(problem));
+        }
+
+        String summary() {
+            StringBuilder sb = new StringBuilder(source).append(": skipped ").append(rejected).append(" of ").append(checked).append(" task(s)");
+            String sep = " (";
+            for (int p = 1; p < byProblem.length; p++) if (byProblem[p] > 0) { sb.append(sep).append(byProblem[p]).append(' ').append(PROBLEMS[p]); sep = ", "; }
+            return rejected > 0 ? sb.append(')').toString() : sb.toString();
+        }
+
+        String details() {
+            StringBuilder sb = new StringBuilder(summary());
+            for (String s : samples) sb.append("\n  ").append(s);
+            if (rejected > samples.size()) sb.append("\n  ... and ").append(rejected - samples.size()).append(" more");
+            return sb.toString();
         }
-        Map<String, Object> root = new LinkedHashMap<>();
-        root.put("days", days);
-        return root;
     }
+}
 
-    private Map<String, DaySchedule<String>> deserializeFromJsonObject(Map<String, Object> root) {
-        Map<String, DaySchedule<String>> out = new LinkedHashMap<>();
-        Object daysObj = root.get("days");
-        if (!(daysObj instanceof List)) return out;
-        for (Object d : JsonUtil.arr(daysObj)) {
-            Map<String, Object> day = JsonUtil.obj(d);
-            String dayName = String.valueOf(day.get("day"));
-            DaySchedule<String> schedule = new DaySchedule<>(dayName);
-            Object tasksObj = day.get("tasks");
-            if (tasksObj instanceof List) {
-                for (Object to : JsonUtil.arr(tasksObj)) {
-                    Map<String, Object> m = JsonUtil.obj(to);
-                    String time = String.valueOf(m.get("time"));
-                    Object endObj = m.get("endTime");
-                    String endTime = endObj == null ? time : String.valueOf(endObj);
-                    String taskName = String.valueOf(m.get("taskName"));
-                    String priority = String.valueOf(m.get("priority"));
-                    String category = String.valueOf(m.get("category"));
-                    boolean completed = Boolean.TRUE.equals(m.get("completed"));
-                    if (time != null && taskName != null) {
-                        Task<String> t = new Task<>(taskName, time, endTime, priority, category);
-                        t.setCompleted(completed);
-                        schedule.addTask(t);
-                    }
-                }
-            }
-            out.put(dayName, schedule);
+// Word-parallel helpers over a day's 1440-bit minute bitmap (bit m set: minute m is taken). Ranges are [from, to).
+final class MinuteBitmap {
+    static final int MINUTES = 24 * 60, WORDS = (MINUTES + 63) / 64;
+
+    private MinuteBitmap() {}
+
+    // Minutes a task occupies as start << 11 | end, or -1 if its start is not a valid time. An end before the start
+    // runs past midnight; an end equal to the start occupies nothing.
+    static int span(Task<?> t) { return span(t.getTime(), t.getEndTime()); }
+    static int span(String start, String end) {
+        int a = Times.toMinutes(start), b = Times.toMinutes(end);
+        if (a < 0) return -1;
+        if (b < a) b = MINUTES;
+        return a << 11 | b;
+    }
+    static int start(int span) { return span >>> 11; }
+    static int end(int span) { return span & 0x7ff; }
+
+    static void set(long[] b, int from, int to) {
+        for (int i = from >>> 6; from < to; i++) {
+            int e = Math.min(to, (i + 1) << 6);
+            b[i] |= mask(from, e); from = e;
         }
-        return out;
     }
 
-    // XML
-    private static String escXml(String s) {
-        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;").replace("'", "&apos;");
+    static void clear(long[] b, int from, int to) {
+        for (int i = from >>> 6; from < to; i++) {
+            int e = Math.min(to, (i + 1) << 6);
+            b[i] &= ~mask(from, e); from = e;
+        }
     }
-    private String toXml(Map<String, DaySchedule<String>> data) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<weeklyRoutine>\n");
-        for (Map.Entry<String, DaySchedule<String>> e : data.entrySet()) {
-            sb.append("  <day name=\"").append(escXml(e.getKey())).append("\">\n");
-            for (Task<String> t : e.getValue().getTasks()) {
-                sb.append("    <task completed=\"").append(t.isCompleted()).append("\">\n");
-                sb.append("      <time>").append(escXml(t.getTime())).append("</time>\n");
-                sb.append("      <endTime>").append(escXml(t.getEndTime())).append("</endTime>\n");
-                sb.append("      <name>").append(escXml(t.getTaskName())).append("</name>\n");
-                sb.append("      <priority>").append(escXml(String.valueOf(t.getPriority()))).append("</priority>\n");
-                sb.append("      <category>").append(escXml(t.getCategory())).append("</category>\n");
-                sb.append("    </task>\n");
-            }
-            sb.append("  </day>\n");
+
+    static boolean anySet(long[] b, int from, int to) { return nextSet(b, from, to) < to; }
+
+    static int count(long[] b, int from, int to) {
+        int n = 0;
+        for (int i = from >>> 6; from < to; i++) {
+            int e = Math.min(to, (i + 1) << 6);
+            n += Long.bitCount(b[i] & mask(from, e)); from = e;
         }
-        sb.append("</weeklyRoutine>\n");
-        return sb.toString();
+        return n;
     }
-    private Map<String, DaySchedule<String>> fromXml(String xml) {
-        Map<String, DaySchedule<String>> map = new LinkedHashMap<>();
-        int pos = 0;
+
+    // First set bit in [from, limit), or limit.
+    static int nextSet(long[] b, int from, int limit) {
+        if (from >= limit) return limit;
+        int i = from >>> 6;
+        long word = b[i] & (-1L << from);
         while (true) {
-            int dayStart = xml.indexOf("<day", pos); if (dayStart < 0) break;
-            int nameAttr = xml.indexOf("name=\"", dayStart); int nameEnd = nameAttr >= 0 ? xml.indexOf("\"", nameAttr + 6) : -1;
-            if (nameAttr < 0 || nameEnd < 0) break;
-            String dayName = xml.substring(nameAttr + 6, nameEnd);
-            int closeDayStart = xml.indexOf(">", nameEnd); int dayEnd = xml.indexOf("</day>", closeDayStart);
-            if (closeDayStart < 0 || dayEnd < 0) break;
-            String body = xml.substring(closeDayStart + 1, dayEnd);
-            DaySchedule<String> schedule = new DaySchedule<>(dayName);
-            int tpos = 0;
-            while (true) {
-                int ts = body.indexOf("<task", tpos); if (ts < 0) break;
-                int te = body.indexOf("</task>", ts); if (te < 0) break;
-                String taskTag = body.substring(ts, te);
-                boolean completed = taskTag.contains("completed=\"true\"");
-                int gt = taskTag.indexOf(">");
-                String txml = body.substring(ts + gt + 1, te);
-                String time = extractTag(txml, "time");
-                String endTime = extractTag(txml, "endTime");
-                String name = extractTag(txml, "name");
-                String priority = extractTag(txml, "priority");
-                String category = extractTag(txml, "category");
-                if (time != null && name != null) {
-                    if (endTime == null) endTime = time;
-                    Task<String> t = new Task<>(name, time, endTime, priority != null ? priority : "Low", category != null ? category : "Other");
-                    t.setCompleted(completed); schedule.addTask(t);
-                }
-                tpos = te + 7;
-            }
-            map.put(dayName, schedule); pos = dayEnd + 6;
+            if (word != 0) return Math.min(limit, (i << 6) + Long.numberOfTrailingZeros(word));
+            if (++i >= b.length || i << 6 >= limit) return limit;
+            word = b[i];
         }
-        return map;
     }
-    private static String extractTag(String xml, String tag) {
-        int s = xml.indexOf("<" + tag + ">"); if (s < 0) return null;
-        int e = xml.indexOf("</" + tag + ">", s); if (e < 0) return null;
-        return xml.substring(s + tag.length() + 2, e).replace("&lt;","<").replace("&gt;",">").replace("&quot;","\"").replace("&apos;","'").replace("&amp;","&");
+
+    // First clear bit in [from, limit), or limit.
+    static int nextClear(long[] b, int from, int limit) {
+        if (from >= limit) return limit;
+        int i = from >>> 6;
+        long word = ~b[i] & (-1L << from);
+        while (true) {
+            if (word != 0) return Math.min(limit, (i << 6) + Long.numberOfTrailingZeros(word));
+            if (++i >= b.length || i << 6 >= limit) return limit;
+            word = ~b[i];
+        }
     }
 
-    public static DataPersistence.Format formatFromFile(File f) {
-        String name = f.getName().toLowerCase(Locale.ROOT);
-        if (name.endsWith(".json")) return Format.JSON;
-        if (name.endsWith(".xml")) return Format.XML;
-        if (name.endsWith(".ser")) return Format.SERIALIZED;
-        return Format.JSON;
+    // Start of the first clear run of at least len bits in [from, limit), or -1.
+    static int nextGap(long[] b, int from, int limit, int len) {
+        for (int s = nextClear(b, from, limit); s + len <= limit; ) {
+            int e = nextSet(b, s, limit);
+            if (e - s >= len) return s;
+            s = nextClear(b, e, limit);
+        }
+        return -1;
     }
+
+    // Bits from..to-1 of the word that holds them (both in the same word, to > from).
+    private static long mask(int from, int to) { return (-1L << from) & (-1L >>> (64 - (to - (from & ~63)))); }
 }
 
-// ---------------- Recurrence & Templates ----------------
-class RecurringTasks {
-    public enum Recurrence { NONE, DAILY, WEEKLY, WEEKDAYS }
-    public static void applyRecurrence(Map<String, DaySchedule<String>> weekSchedule, String[] daysOfWeek, String currentDay, Task<String> task, Recurrence recurrence) {
-        switch (recurrence) {
-            case NONE: case WEEKLY: weekSchedule.get(currentDay).addTask(task); break;
-            case DAILY: for (String d : daysOfWeek) weekSchedule.get(d).addTask(cloneTask(task)); break;
-            case WEEKDAYS: for (String d : daysOfWeek) if (!d.equalsIgnoreCase("Saturday") && !d.equalsIgnoreCase("Sunday")) weekSchedule.get(d).addTask(cloneTask(task)); break;
+// Open-addressing long -> int map (linear probing, half full at most) for task ids; key 0 is reserved as empty.
+final class LongIntMap {
+    private long[] keys;
+    private int[] values;
+    private int size, mask;
+
+    LongIntMap() { this(8); }
+    LongIntMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        keys = new long[cap]; values = new int[cap]; mask = cap - 1;
+    }
+
+    int size() { return size; }
+    boolean containsKey(long key) { return keys[find(key)] == key; }
+    int get(long key, int missing) { int i = find(key); return keys[i] == key ? values[i] : missing; }
+
+    // Present keys, in table order.
+    long[] keys() {
+        long[] out = new long[size]; int n = 0;
+        for (long k : keys) if (k != 0) out[n++] = k;
+        return out;
+    }
+
+    void put(long key, int value) {
+        if (key == 0) throw new IllegalArgumentException("key 0 is reserved");
+        int i = find(key);
+        if (keys[i] != key) {
+            if ((size + 1) * 2 > keys.length) { grow(); i = find(key); }
+            keys[i] = key; size++;
         }
+        values[i] = value;
     }
-    public static void applyToDays(Map<String, DaySchedule<String>> weekSchedule, Collection<String> targetDays, Task<String> task) {
-        for (String d : targetDays) { DaySchedule<String> s = weekSchedule.get(d); if (s != null) s.addTask(cloneTask(task)); }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones.
+    int remove(long key, int missing) {
+        int i = find(key);
+        if (keys[i] != key || key == 0) return missing;
+        int old = values[i];
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) { keys[i] = keys[j]; values[i] = values[j]; i = j; }
+        }
+        keys[i] = 0; size--;
+        return old;
     }
-    private static Task<String> cloneTask(Task<String> t) {
-        Task<String> c = new Task<>(t.getTaskName(), t.getTime(), t.getEndTime(), t.getPriority(), t.getCategory());
-        c.setCompleted(t.isCompleted());
-        return c;
+
+    private int find(long key) {
+        int i = slot(key);
+        while (keys[i] != 0 && keys[i] != key) i = (i + 1) & mask;
+        return i;
     }
 
-    static class TemplateManager {
-        private final Map<String, List<Task<String>>> dayTemplates = new LinkedHashMap<>();
-        private final File templatesFile = new File(System.getProperty("user.home"), "weekly_routine_templates.json");
-        TemplateManager() { load(); }
-        Set<String> getTemplateNames() { return dayTemplates.keySet(); }
-        void saveDayTemplate(String name, List<Task<String>> tasks) {
-            List<Task<String>> copy = new ArrayList<>(); for (Task<String> t : tasks) copy.add(cloneTask(t));
-            dayTemplates.put(name, copy); persist();
+    private int slot(long key) { long h = key * 0x9E3779B97F4A7C15L; return (int) (h ^ (h >>> 32)) & mask; }
+
+    private void grow() {
+        long[] k = keys; int[] v = values;
+        keys = new long[k.length * 2]; values = new int[k.length * 2]; mask = keys.length - 1; size = 0;
+        for (int i = 0; i < k.length; i++) if (k[i] != 0) put(k[i], v[i]);
+    }
+}
+
+// Open-addressing int -> object map for dates, months and other int keys; Integer.MIN_VALUE is reserved as empty.
+final class IntObjectMap<V> {
+    private static final int EMPTY = Integer.MIN_VALUE;
+    private int[] keys;
+    private Object[] values;
+    private int size, mask;
+
+    IntObjectMap() { this(8); }
+    IntObjectMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        keys = new int[cap]; Arrays.fill(keys, EMPTY); values = new Object[cap]; mask = cap - 1;
+    }
+
+    int size() { return size; }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) { int i = find(key); return keys[i] == key ? (V) values[i] : null; }
+
+    void put(int key, V value) {
+        if (key == EMPTY) throw new IllegalArgumentException("key " + EMPTY + " is reserved");
+        int i = find(key);
+        if (keys[i] != key) {
+            if ((size + 1) * 2 > keys.length) { grow(); i = find(key); }
+            keys[i] = key; size++;
         }
-        void deleteTemplate(String name) { dayTemplates.remove(name); persist(); }
-        List<Task<String>> getTemplate(String name) {
-            List<Task<String>> src = dayTemplates.get(name); if (src == null) return null;
-            List<Task<String>> copy = new ArrayList<>(); for (Task<String> t : src) copy.add(cloneTask(t)); return copy;
+        values[i] = value;
+    }
+
+    // Present keys, in table order.
+    int[] keys() {
+        int[] out = new int[size]; int n = 0;
+        for (int k : keys) if (k != EMPTY) out[n++] = k;
+        return out;
+    }
+
+    private int find(int key) {
+        int i = slot(key);
+        while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private int slot(int key) { int h = key * 0x9E3779B9; return (h ^ (h >>> 16)) & mask; }
+
+    private void grow() {
+        int[] k = keys; Object[] v = values;
+        keys = new int[k.length * 2]; Arrays.fill(keys, EMPTY); values = new Object[k.length * 2]; mask = keys.length - 1; size = 0;
+        for (int i = 0; i < k.length; i++) if (k[i] != EMPTY) put(k[i], v[i] == null ? null : castValue(v[i]));
+    }
+
+    @SuppressWarnings("unchecked") private V castValue(Object o) { return (V) o; }
+}
+
+// Immutable, column-wise encoding of one day's tasks in DaySchedule order: ids, start/end minutes and the completed
+// flag in one int, priority and category as indexes into a per-day dictionary, and all names in one array (a byte
+// per char when every name is Latin-1). About 30 bytes plus the name per task, against ~300 as Task objects.
+final class PackedDay {
+    private static final int COMPLETED = 1 << 22;
+    private final long[] ids;
+    private final int[] times;          // start << 11 | end in minutes, plus COMPLETED
+    private final int[] priorities, categories;
+    private final String[] dict;
+    private final int[] nameEnds;
+    private final byte[] latin1;        // names when every char fits in a byte,
+    private final char[] wide;          // otherwise as chars
+
+    private PackedDay(long[] ids, int[] times, int[] priorities, int[] categories, String[] dict, int[] nameEnds, byte[] latin1, char[] wide) {
+        this.ids = ids; this.times = times; this.priorities = priorities; this.categories = categories;
+        this.dict = dict; this.nameEnds = nameEnds; this.latin1 = latin1; this.wide = wide;
+    }
+
+    int size() { return ids.length; }
+    long id(int i) { return ids[i]; }
+    boolean isCompleted(int i) { return (times[i] & COMPLETED) != 0; }
+    String time(int i) { return Times.text(times[i] >>> 11 & 0x7ff); }
+    String endTime(int i) { return Times.text(times[i] & 0x7ff); }
+    String priority(int i) { return dict[priorities[i]]; }
+    String category(int i) { return dict[categories[i]]; }
+
+    String name(int i) {
+        int from = i == 0 ? 0 : nameEnds[i - 1], len = nameEnds[i] - from;
+        return latin1 != null ? new String(latin1, from, len, StandardCharsets.ISO_8859_1) : new String(wide, from, len);
+    }
+
+    Task<String> task(int i) { return new Task<>(ids[i], name(i), time(i), endTime(i), priority(i), category(i), isCompleted(i)); }
+
+    // Heap held by the encoding (array payloads and dictionary strings, headers approximated).
+    long bytes() {
+        long b = 16L * 7 + ids.length * 8L + times.length * 16L + nameEnds.length * 4L;
+        b += latin1 != null ? latin1.length : wide.length * 2L;
+        for (String s : dict) if (s != null) b += 40 + s.length();
+        return b;
+    }
+
+    static PackedDay of(Collection<Task<String>> tasks) {
+        Builder b = new Builder();
+        for (Task<String> t : tasks) if (!b.add(t)) return null;
+        return b.build();
+    }
+
+    // Appends tasks as they stream in; build() sorts them (stably, like DaySchedule) and trims the arrays.
+    static final class Builder {
+        private long[] ids = new long[16];
+        private int[] times = new int[16], priorities = new int[16], categories = new int[16], nameEnds = new int[16];
+        private char[] names = new char[256];
+        private int n, chars;
+        private boolean wide;
+        private final Map<String, Integer> dictIndex = new HashMap<>();
+        private final List<String> dict = new ArrayList<>();
+
+        int size() { return n; }
+
+        // False, and nothing added, for a task a packed day cannot hold: no name, or times that are not HH:MM.
+        boolean add(Task<String> t) {
+            int start = Times.toMinutes(t.getTime()), end = Times.toMinutes(t.getEndTime());
+            String name = t.getTaskName();
+            if (start < 0 || end < 0 || name == null) return false;
+            if (n == ids.length) {
+                int cap = n * 2;
+                ids = Arrays.copyOf(ids, cap); times = Arrays.copyOf(times, cap); priorities = Arrays.copyOf(priorities, cap);
+                categories = Arrays.copyOf(categories, cap); nameEnds = Arrays.copyOf(nameEnds, cap);
+            }
+            if (chars + name.length() > names.length) names = Arrays.copyOf(names, Math.max(names.length * 2, chars + name.length()));
+            for (int i = 0; i < name.length(); i++) { char c = name.charAt(i); names[chars++] = c; if (c > 0xff) wide = true; }
+            ids[n] = t.getId();
+            times[n] = start << 11 | end | (t.isCompleted() ? COMPLETED : 0);
+            priorities[n] = intern(t.getPriority());
+            categories[n] = intern(t.getCategory());
+            nameEnds[n++] = chars;
+            return true;
         }
-        private void load() {
-            if (!templatesFile.exists()) return;
-            try {
-                Object root = JsonUtil.parse(JsonUtil.readString(templatesFile));
-                Map<String,Object> obj = JsonUtil.obj(root);
-                List<Object> arr = JsonUtil.arr(obj.get("templates"));
-                dayTemplates.clear();
-                for (Object o : arr) {
-                    Map<String,Object> to = JsonUtil.obj(o);
-                    String name = String.valueOf(to.get("name"));
-                    List<Task<String>> tasks = new ArrayList<>();
-                    for (Object tt : JsonUtil.arr(to.get("tasks"))) {
-                        Map<String,Object> tm = JsonUtil.obj(tt);
-                        String time = String.valueOf(tm.get("time"));
-                        Object endObj = tm.get("endTime");
-                        String end = endObj == null ? time : String.valueOf(endObj);
-                        Task<String> t = new Task<>(String.valueOf(tm.get("taskName")), time, end,
-                                String.valueOf(tm.get("priority")), String.valueOf(tm.get("category")));
-                        t.setCompleted(Boolean.TRUE.equals(tm.get("completed"))); tasks.add(t);
-                    }
-                    dayTemplates.put(name, tasks);
-                }
-            } catch (Exception ex) { Log.PERSIST.log(Level.WARNING, "Template load failed", ex); }
+
+        PackedDay build() {
+            long[] order = new long[n];
+            for (int i = 0; i < n; i++) order[i] = (long) (times[i] & ~COMPLETED) << 32 | i;
+            Arrays.sort(order);   // the index in the low bits keeps equal times in arrival order
+            long[] sIds = new long[n];
+            int[] sTimes = new int[n], sPrio = new int[n], sCat = new int[n], sEnds = new int[n];
+            char[] sNames = new char[chars];
+            for (int k = 0, pos = 0; k < n; k++) {
+                int i = (int) order[k], from = i == 0 ? 0 : nameEnds[i - 1], len = nameEnds[i] - from;
+                sIds[k] = ids[i]; sTimes[k] = times[i]; sPrio[k] = priorities[i]; sCat[k] = categories[i];
+                System.arraycopy(names, from, sNames, pos, len);
+                sEnds[k] = pos += len;
+            }
+            byte[] latin1 = null;
+            if (!wide) { latin1 = new byte[chars]; for (int i = 0; i < chars; i++) latin1[i] = (byte) sNames[i]; }
+            return new PackedDay(sIds, sTimes, sPrio, sCat, dict.toArray(new String[0]), sEnds, latin1, wide ? sNames : null);
         }
-        private void persist() {
-            try {
-                List<Object> arr = new ArrayList<>();
-                for (Map.Entry<String,List<Task<String>>> e : dayTemplates.entrySet()) {
-                    Map<String,Object> to = new LinkedHashMap<>();
-                    to.put("name", e.getKey());
-                    List<Object> tl = new ArrayList<>();
-                    for (Task<String> t : e.getValue()) {
-                        Map<String,Object> tm = new LinkedHashMap<>();
-                        tm.put("time", t.getTime());
-                        tm.put("endTime", t.getEndTime());
-                        tm.put("taskName", t.getTaskName());
-                        tm.put("priority", String.valueOf(t.getPriority()));
-                        tm.put("category", t.getCategory());
-                        tm.put("completed", t.isCompleted());
-                        tl.add(tm);
-                    }
-                    to.put("tasks", tl); arr.add(to);
-                }
-                Map<String,Object> root = new LinkedHashMap<>(); root.put("templates", arr);
-                JsonUtil.writeString(templatesFile, JsonUtil.stringify(root));
-            } catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Template save failed", ex); }
+
+        private int intern(String s) {
+            Integer i = dictIndex.get(s);
+            if (i == null) { i = dict.size(); dict.add(s); dictIndex.put(s, i); }
+            return i;
         }
     }
-}
+}
+
+// A day's task list over a PackedDay. get() decodes a view and keeps the last CACHE_SIZE in an LRU cache; iteration
+// decodes without caching. A view changed through a setter is promoted: it takes over its slot as a full object, so
+// only edited tasks cost their full size. Replacing an element (set) also only fills its slot; adding, removing or a
+// sort that reorders unpacks the whole list into an ArrayList. Methods synchronize on the list because readers under
+// a day's read lock still fill the cache.
+final class PackedTaskList extends AbstractList<Task<String>> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int CACHE_SIZE = 64;
+    private final PackedDay packed;
+    private final IntObjectMap<Task<String>> promoted = new IntObjectMap<>();
+    private LinkedHashMap<Integer, Task<String>> cache;
+    private ArrayList<Task<String>> full;   // once unpacked
+
+    PackedTaskList(PackedDay packed) { this.packed = packed; }
+
+    synchronized boolean isPacked() { return full == null; }
+    synchronized int promotedCount() { return full == null ? promoted.size() : 0; }
+
+    @Override public synchronized int size() { return full != null ? full.size() : packed.size(); }
+
+    @Override public synchronized Task<String> get(int i) {
+        if (full != null) return full.get(i);
+        Task<String> t = slot(i);
+        if (t != null) return t;
+        if (cache == null) cache = new LinkedHashMap<Integer, Task<String>>(CACHE_SIZE * 2, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Integer, Task<String>> e) { return size() > CACHE_SIZE; }
+        };
+        t = cache.get(i);
+        if (t == null) { t = new View(i); cache.put(i, t); }
+        return t;
+    }
+
+    // get(i), promoted if it is still a view.
+    synchronized Task<String> promote(int i) {
+        Task<String> t = get(i);
+        if (t instanceof View) ((View) t).promote();
+        return t;
+    }
+
+    @Override public synchronized Task<String> set(int i, Task<String> t) {
+        if (full != null) return full.set(i, t);
+        Task<String> old = get(i);
+        promoted.put(i, t);
+        if (cache != null) cache.remove(i);
+        return old;
+    }
+
+    @Override public synchronized void add(int i, Task<String> t) { unpack().add(i, t); modCount++; }
+    @Override public synchronized boolean addAll(Collection<? extends Task<String>> c) { modCount++; return unpack().addAll(c); }
+    @Override public synchronized Task<String> remove(int i) { modCount++; return unpack().remove(i); }
+    @Override public synchronized void clear() { if (full != null || packed.size() > 0) { modCount++; unpack().clear(); } }
+
+    @Override public synchronized void sort(Comparator<? super Task<String>> c) {
+        if (full == null && c == DaySchedule.BY_TIME && promotedInOrder()) return;
+        unpack().sort(c); modCount++;
+    }
+
+    // Any view of slot i stands for that slot (unpromoted views of a slot are interchangeable).
+    @Override public synchronized int indexOf(Object o) {
+        if (full != null) return full.indexOf(o);
+        if (o instanceof View && ((View) o).owner() == this) { int i = ((View) o).slot; Task<String> p = promoted.get(i); return p == null || p == o ? i : -1; }
+        for (int k : promoted.keys()) if (promoted.get(k) == o) return k;
+        return -1;
+    }
+    @Override public boolean contains(Object o) { return indexOf(o) >= 0; }
+
+    @Override public Iterator<Task<String>> iterator() {
+        return new Iterator<Task<String>>() {
+            private int next; private final int expected = modCount;
+            @Override public boolean hasNext() { return next < size(); }
+            @Override public Task<String> next() {
+                if (modCount != expected) throw new ConcurrentModificationException();
+                if (next >= size()) throw new NoSuchElementException();
+                return uncached(next++);
+            }
+        };
+    }
+
+    // A list sharing the encoded tasks, with copies of the promoted ones; null once this list is unpacked.
+    synchronized PackedTaskList copy() {
+        if (full != null) return null;
+        PackedTaskList c = new PackedTaskList(packed);
+        for (int k : promoted.keys()) c.promoted.put(k, promoted.get(k).copy());
+        return c;
+    }
+
+    private synchronized Task<String> uncached(int i) {
+        if (full != null) return full.get(i);
+        Task<String> t = slot(i);
+        if (t != null) return t;
+        t = cache == null ? null : cache.get(i);
+        return t != null ? t : new View(i);
+    }
+
+    private Task<String> slot(int i) {
+        if (i < 0 || i >= packed.size()) throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + packed.size());
+        return promoted.get(i);
+    }
+
+    // Packed slots are in BY_TIME order, so only promoted (possibly edited) slots can be out of place.
+    private boolean promotedInOrder() {
+        int n = packed.size();
+        for (int k : promoted.keys()) {
+            Task<String> t = promoted.get(k);
+            if (k > 0 && DaySchedule.BY_TIME.compare(uncached(k - 1), t) > 0) return false;
+            if (k + 1 < n && DaySchedule.BY_TIME.compare(t, uncached(k + 1)) > 0) return false;
+        }
+        return true;
+    }
+
+    // Cached and promoted views stay in the list as they are, so holders of those keep live objects. Other views
+    // handed out earlier are detached copies from here on; callers that edit later take tasks from editableTask.
+    private List<Task<String>> unpack() {
+        if (full == null) {
+            ArrayList<Task<String>> out = new ArrayList<>(packed.size() + 8);
+            for (int i = 0; i < packed.size(); i++) {
+                Task<String> t = promoted.get(i);
+                if (t == null && cache != null) t = cache.get(i);
+                out.add(t != null ? t : packed.task(i));
+            }
+            full = out; cache = null;
+        }
+        return full;
+    }
+
+    // Serialized as a plain list of plain tasks.
+    private synchronized Object writeReplace() {
+        ArrayList<Task<String>> out = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) { Task<String> t = full != null ? full.get(i) : slot(i); out.add(t == null ? packed.task(i) : t.copy()); }
+        return out;
+    }
+
+    private final class View extends Task<String> {
+        private static final long serialVersionUID = 1L;   // never written as a View: writeReplace hands out a plain copy
+        final int slot;
+        View(int slot) {
+            super(packed.id(slot), packed.name(slot), packed.time(slot), packed.endTime(slot), packed.priority(slot), packed.category(slot), packed.isCompleted(slot));
+            this.slot = slot;
+        }
+        PackedTaskList owner() { return PackedTaskList.this; }
+        void promote() {
+            synchronized (PackedTaskList.this) {
+                if (full == null && promoted.get(slot) == null) { promoted.put(slot, this); if (cache != null) cache.remove(slot); }
+            }
+        }
+        @Override public void setId(long id) { promote(); super.setId(id); }
+        @Override public void setTaskName(String taskName) { promote(); super.setTaskName(taskName); }
+        @Override public void setTime(String time) { promote(); super.setTime(time); }
+        @Override public void setEndTime(String endTime) { promote(); super.setEndTime(endTime); }
+        @Override public void setPriority(String priority) { promote(); super.setPriority(priority); }
+        @Override public void setCategory(String category) { promote(); super.setCategory(category); }
+        @Override public void setCompleted(boolean completed) { promote(); super.setCompleted(completed); }
+        private Object writeReplace() { return copy(); }
+    }
+}
+
+// ---------------- Concurrent Schedule Model ----------------
+// Days are guarded by striped read/write locks; the week map keeps a fixed key set and is swapped atomically as a whole.
+// snapshot() hands out read-only copies and re-copies only days whose version moved since the last call.
+class ScheduleStore {
+    private static final int STRIPES = 16;
+    private final String[] days;
+    private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[STRIPES];
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Map<String, DaySchedule<String>> week;
+
+    // Called on the writing thread after the locks are released, with the days whose contents may have changed.
+    interface ChangeListener { void daysChanged(ScheduleStore store, Collection<String> days); }
+
+    private static final class Snapshot {
+        final long version; final DaySchedule<String> day;
+        Snapshot(long version, DaySchedule<String> day) { this.version = version; this.day = day; }
+    }
+
+    ScheduleStore(String[] days) {
+        this.days = days.clone();
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantReadWriteLock();
+        for (String d : days) versions.put(d, new AtomicLong());
+        week = emptyWeek();
+    }
+
+    String[] getDays() { return days.clone(); }
+
+    void addListener(ChangeListener l) { listeners.add(l); }
+    void removeListener(ChangeListener l) { listeners.remove(l); }
+
+    Map<String, DaySchedule<String>> emptyWeek() {
+        Map<String, DaySchedule<String>> m = new LinkedHashMap<>();
+        for (String d : days) m.put(d, new DaySchedule<>(d));
+        return m;
+    }
+
+    // Same day set and order as this store: unknown days dropped, missing ones created empty.
+    Map<String, DaySchedule<String>> normalize(Map<String, DaySchedule<String>> incoming) {
+        Map<String, DaySchedule<String>> next = new LinkedHashMap<>();
+        for (String d : days) {
+            DaySchedule<String> s = incoming.get(d);
+            next.put(d, s != null ? s : new DaySchedule<>(d));
+        }
+        return next;
+    }
+
+    long version(String day) { AtomicLong v = versions.get(day); return v == null ? -1 : v.get(); }
+
+    <R> R read(String day, Function<DaySchedule<String>, R> fn) {
+        Lock l = stripe(day).readLock(); l.lock();
+        try { return fn.apply(requireDay(day)); } finally { l.unlock(); }
+    }
+
+    <R> R edit(String day, Function<DaySchedule<String>, R> fn) {
+        Lock l = stripe(day).writeLock(); l.lock();
+        try { return fn.apply(requireDay(day)); } finally { bump(day); l.unlock(); fire(Collections.singletonList(day)); }
+    }
+
+    // Runs fn against the live week with every stripe covering the given days write-locked (acquired in index order).
+    void editDays(Collection<String> targetDays, Consumer<Map<String, DaySchedule<String>>> fn) {
+        int[] idx = stripeIndexes(targetDays);
+        for (int i : idx) stripes[i].writeLock().lock();
+        try { fn.accept(week); }
+        finally {
+            for (String d : targetDays) bump(d);
+            for (int i = idx.length - 1; i >= 0; i--) stripes[idx[i]].writeLock().unlock();
+            fire(targetDays);
+        }
+    }
+
+    DaySchedule<String> replaceDay(String day, DaySchedule<String> schedule) { return replaceDay(day, schedule, null); }
+
+    // Returns the detached previous day; atMoment runs after the swap while the day is still locked.
+    DaySchedule<String> replaceDay(String day, DaySchedule<String> schedule, Runnable atMoment) {
+        Lock l = stripe(day).writeLock(); l.lock();
+        try {
+            requireDay(day);
+            DaySchedule<String> previous = week.put(day, schedule);
+            if (atMoment != null) atMoment.run();
+            return previous;
+        } finally { bump(day); l.unlock(); fire(Collections.singletonList(day)); }
+    }
+
+    Map<String, DaySchedule<String>> replaceDays(Map<String, DaySchedule<String>> next, Runnable atMoment) { return replaceDays(next, null, atMoment); }
+
+    // Swaps several days under one lock acquisition; returns the detached previous days, or null (nothing swapped)
+    // if any day's version no longer matches the expected one.
+    Map<String, DaySchedule<String>> replaceDays(Map<String, DaySchedule<String>> next, Map<String, Long> expected, Runnable atMoment) {
+        Map<String, DaySchedule<String>> previous = new LinkedHashMap<>();
+        boolean[] stale = new boolean[1];
+        editDays(next.keySet(), w -> {
+            if (expected != null) for (Map.Entry<String, Long> e : expected.entrySet()) if (version(e.getKey()) != e.getValue()) { stale[0] = true; return; }
+            for (Map.Entry<String, DaySchedule<String>> e : next.entrySet()) { requireDay(e.getKey()); previous.put(e.getKey(), w.put(e.getKey(), e.getValue())); }
+            if (atMoment != null) atMoment.run();
+        });
+        return stale[0] ? null : previous;
+    }
+
+    Map<String, DaySchedule<String>> replaceAll(Map<String, DaySchedule<String>> incoming) { return replaceAll(incoming, null); }
+
+    // Atomic whole-week swap; unknown days are dropped and missing ones are created empty. Returns the detached week.
+    Map<String, DaySchedule<String>> replaceAll(Map<String, DaySchedule<String>> incoming, Runnable atMoment) {
+        Map<String, DaySchedule<String>> next = normalize(incoming);
+        for (ReentrantReadWriteLock s : stripes) s.writeLock().lock();
+        try {
+            Map<String, DaySchedule<String>> previous = week; week = next; snapshots.clear();
+            if (atMoment != null) atMoment.run();
+            return previous;
+        }
+        finally {
+            for (String d : days) bump(d);
+            for (int i = STRIPES - 1; i >= 0; i--) stripes[i].writeLock().unlock();
+            fire(Arrays.asList(days));
+        }
+    }
+
+    // Consistent point-in-time copy of the whole week. Callers must treat the returned days as read-only.
+    Map<String, DaySchedule<String>> snapshot() { return snapshot(null); }
+
+    // As snapshot(), running atMoment while no day can change (e.g. to capture a journal position).
+    Map<String, DaySchedule<String>> snapshot(Runnable atMoment) {
+        for (ReentrantReadWriteLock s : stripes) s.readLock().lock();
+        try {
+            if (atMoment != null) atMoment.run();
+            Map<String, DaySchedule<String>> out = new LinkedHashMap<>();
+            for (String d : days) {
+                long v = version(d);
+                Snapshot cached = snapshots.get(d);
+                if (cached == null || cached.version != v) {
+                    cached = new Snapshot(v, week.get(d).copy());
+                    snapshots.put(d, cached);
+                }
+                out.put(d, cached.day);
+            }
+            return Collections.unmodifiableMap(out);
+        } finally {
+            for (int i = STRIPES - 1; i >= 0; i--) stripes[i].readLock().unlock();
+        }
+    }
+
+    private DaySchedule<String> requireDay(String day) {
+        DaySchedule<String> s = week.get(day);
+        if (s == null) throw new IllegalArgumentException("Unknown day: " + day);
+        return s;
+    }
+    private void fire(Collection<String> changed) {
+        for (ChangeListener l : listeners) {
+            try { l.daysChanged(this, changed); }
+            catch (RuntimeException ex) { Log.UI.log(Level.WARNING, "Schedule listener failed", ex); }
+        }
+    }
+    private void bump(String day) { AtomicLong v = versions.get(day); if (v != null) v.incrementAndGet(); }
+    private ReentrantReadWriteLock stripe(String day) { return stripes[stripeIndex(day)]; }
+    private static int stripeIndex(String day) { return (day.hashCode() & 0x7fffffff) % STRIPES; }
+    private static int[] stripeIndexes(Collection<String> targetDays) {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (String d : targetDays) set.add(stripeIndex(d));
+        int[] out = new int[set.size()]; int i = 0;
+        for (int v : set) out[i++] = v;
+        return out;
+    }
+}
+
+// ---------------- Shared File Access ----------------
+// Several instances (two windows, a window and a script) may rewrite the same file. Each shared file has a sibling
+// "<name>.lock" holding its version and size/mtime stamp. Writers prepare their content in a temp file without any
+// lock, then commit it only if the version they read is still current (compare-and-swap); the FileChannel lock is
+// held just for that check and the rename. A writer that lost re-reads, merges its change and tries again; one that
+// keeps losing finally does its read-merge-commit while holding the lock (exclusive()), so it cannot starve.
+final class SharedFile {
+    interface Loader<T> { T load(File file) throws IOException; }
+    interface Action { void run() throws IOException; }
+
+    static final class Versioned<T> {
+        final long version; final T value;
+        Versioned(long version, T value) { this.version = version; this.value = value; }
+    }
+
+    private interface Locked { long run(FileChannel ch) throws IOException; }
+
+    // FileChannel locks belong to the whole JVM, so threads of one process queue up here first.
+    private static final class PathLock extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+        transient FileChannel held;   // while exclusive() runs, the channel its owner already locked
+    }
+    private static final Map<String, PathLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final File file, lockFile;
+    private final PathLock processLock;
+
+    SharedFile(File file) {
+        this.file = file.getAbsoluteFile();
+        this.lockFile = new File(this.file.getPath() + ".lock");
+        this.processLock = PROCESS_LOCKS.computeIfAbsent(lockFile.getPath(), k -> new PathLock());
+    }
+
+    File getFile() { return file; }
+
+    long version() throws IOException { return locked(this::current); }
+
+    // Loads the file with the version it was read at; the parse runs unlocked and is repeated if a commit slipped in.
+    <T> Versioned<T> read(Loader<T> loader) throws IOException {
+        while (true) {
+            long before = version();
+            T value = loader.load(file);
+            if (version() == before) return new Versioned<>(before, value);
+        }
+    }
+
+    static final int MAX_ATTEMPTS = 8;
+
+    // Randomised pause before a writer that lost retries, so two instances do not keep colliding in step.
+    static void backoff(int attempt) throws IOException {
+        try { Thread.sleep(ThreadLocalRandom.current().nextInt(1 << Math.min(attempt, 6))); }
+        catch (InterruptedException ex) { Thread.currentThread().interrupt(); throw new InterruptedIOException("Interrupted while retrying a write"); }
+    }
+
+    File newTemp() throws IOException { return newTemp(file); }
+    File newTemp(File target) throws IOException { return File.createTempFile(target.getName() + ".", ".tmp", target.getParentFile()); }
+
+    long commit(long expected, File tmp) throws IOException { return commit(expected, Collections.singletonMap(tmp, file)); }
+
+    // Moves each prepared temp file over its target if the file is still at the expected version and returns the
+    // new version; returns -1 (and deletes the temp files) if another writer committed first.
+    long commit(long expected, Map<File, File> prepared) throws IOException {
+        long v = locked(ch -> {
+            long current = current(ch);
+            if (current != expected) return -1;
+            for (Map.Entry<File, File> e : prepared.entrySet())
+                Files.move(e.getKey().toPath(), e.getValue().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stampVersion(ch, current + 1);
+            return current + 1;
+        });
+        if (v < 0) for (File tmp : prepared.keySet()) tmp.delete();
+        return v;
+    }
+
+    // A rewrite outside this protocol (an editor, a sync tool) counts as one more version, recorded with its stamp
+    // right away so that the next outside rewrite is yet another version. Caller holds the lock.
+    private long current(FileChannel ch) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(16);
+        while (b.hasRemaining() && ch.read(b, b.position()) > 0) {}
+        long version = b.position() == 16 ? b.getLong(0) : 0, stamp = b.position() == 16 ? b.getLong(8) : 0;
+        if (ScheduleEngine.stamp(file) == stamp) return version;
+        stampVersion(ch, version + 1);
+        return version + 1;
+    }
+
+    private void stampVersion(FileChannel ch, long version) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(16);
+        b.putLong(version).putLong(ScheduleEngine.stamp(file)).flip();
+        while (b.hasRemaining()) ch.write(b, b.position());
+    }
+
+    // Runs the action with the lock held throughout; reads and commits inside it cannot be overtaken.
+    void exclusive(Action action) throws IOException {
+        locked(ch -> {
+            processLock.held = ch;
+            try { action.run(); } finally { processLock.held = null; }
+            return 0;
+        });
+    }
+
+    @SuppressWarnings("try")   // the FileLock is only held, never referenced
+    private long locked(Locked body) throws IOException {
+        if (processLock.isHeldByCurrentThread() && processLock.held != null) return body.run(processLock.held);
+        processLock.lock();
+        try (FileChannel ch = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock l = ch.lock()) {
+            return body.run(ch);
+        } finally { processLock.unlock(); }
+    }
+}
+
+// ---------------- Storage Backends ----------------
+// The routine, templates and history can live in a key-value backend instead of their JSON files, so a change writes
+// only the keys it touched: "days/Monday", "templates/<name>", "history/2026-10", "rollups/M2026-10". Values are
+// UTF-8 JSON. Every key has a version (that of the batch that last wrote it, 0 while absent); a batch commits
+// atomically and only if the keys named in expected still have those versions, SharedFile's compare-and-swap per key.
+interface StorageBackend extends Closeable {
+    final class Entry {
+        final long version; final byte[] value;
+        Entry(long version, byte[] value) { this.version = version; this.value = value; }
+        String text() { return new String(value, StandardCharsets.UTF_8); }
+    }
+
+    // null if the key is absent.
+    Entry get(String key) throws IOException;
+    // Versions of the keys starting with prefix, in key order.
+    SortedMap<String, Long> versions(String prefix) throws IOException;
+    // Puts (a null value deletes) as one batch and returns its version; -1, with nothing written, if an expected
+    // version (null: no expectations) no longer matches.
+    long apply(Map<String, byte[]> batch, Map<String, Long> expected) throws IOException;
+    // Version of the last batch any writer committed; while it stays the same, nothing changed.
+    long version() throws IOException;
+    // File that changes whenever another process writes, for FileWatcher; null if there is none.
+    File watchFile();
+}
+
+// Picks the backend named by -Dweekly.storage: unset or "files" keeps the JSON files, "kv" or "kv:<path>" the embedded
+// LogStore (default ~/weekly_routine.kv), anything else is taken as the name of a StorageBackend class with a public
+// (String) constructor, which receives the text after the first ':' if there is one.
+final class Storage {
+    static final String DAYS = "days/", TEMPLATES = "templates/", HISTORY = "history/", ROLLUPS = "rollups/";
+    static final String JOURNAL_SEQ = "meta/journalSeq";
+
+    private Storage() {}
+
+    static StorageBackend fromConfig() throws IOException {
+        StorageBackend s = open(System.getProperty("weekly.storage", "files"));
+        File home = new File(System.getProperty("user.home"));
+        // first start on a new store: bring the existing files along
+        if (s != null && s.version() == 0)
+            importFiles(s, new File(home, "weekly_routine_autosave.json"), new File(home, "weekly_routine_templates.json"), new File(home, "weekly_routine_history.json"));
+        return s;
+    }
+
+    static StorageBackend open(String spec) throws IOException {
+        if (spec.isEmpty() || spec.equals("files")) return null;
+        if (spec.equals("kv")) return new LogStore(new File(System.getProperty("user.home"), "weekly_routine.kv"));
+        if (spec.startsWith("kv:")) return new LogStore(new File(spec.substring(3)));
+        int colon = spec.indexOf(':');
+        try {
+            Class<?> c = Class.forName(colon < 0 ? spec : spec.substring(0, colon));
+            return (StorageBackend) c.getConstructor(String.class).newInstance(colon < 0 ? "" : spec.substring(colon + 1));
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            throw new IOException("Unknown storage backend: " + spec, ex);
+        }
+    }
+
+    static byte[] utf8(CharSequence s) { return s.toString().getBytes(StandardCharsets.UTF_8); }
+
+    // Copies whichever of the JSON files exist into the backend: the routine (with its journal position), every
+    // template, and the history month by month with its rollups. Returns the number of keys written.
+    static int importFiles(StorageBackend to, File routine, File templates, File history) throws IOException {
+        int keys = 0;
+        if (routine.exists()) {
+            DataPersistence p = new DataPersistence();
+            Map<String, byte[]> batch = new LinkedHashMap<>();
+            for (Map.Entry<String, DaySchedule<String>> e : p.load(routine, DataPersistence.formatFromFile(routine)).entrySet())
+                batch.put(DAYS + e.getKey(), p.encodeDay(e.getKey(), e.getValue()));
+            batch.put(JOURNAL_SEQ, utf8(Long.toString(DataPersistence.journalSeq(routine))));
+            to.apply(batch, null); keys += batch.size();
+        }
+        if (templates.exists()) keys += new RecurringTasks.TemplateManager(templates).copyTo(to);
+        if (history.exists()) keys += new TaskCompletionTracking(history, 0).copyTo(to);
+        Log.PERSIST.info("Imported " + keys + " key(s) into storage");
+        return keys;
+    }
+}
+
+// Embedded log-structured store. Each batch is appended to one file as a checksummed record and an in-memory index
+// maps every key to its latest value, so a write costs what it changed and a read is one positioned read. Other
+// processes' appends are picked up by reading on from where this instance stopped; a torn record left by a crash is
+// ignored by readers and cut off by the next writer, while a damaged record with more data after it is reported and
+// stops all writes rather than being cut off with what follows. Once dead values outweigh live ones the log is
+// rewritten into a new file that atomically replaces it (keeping every key's version). Writers lock the sidecar
+// "<file>.lock", which also counts those rewrites, so other instances notice one and rebuild their index even where
+// the file system has no file keys.
+//
+// File: "WRKV", format, base version (long); then records of [length, CRC32, payload] where the payload is the batch
+// version, an entry count and per entry: op (1 put, 0 delete), key length, key, and for puts value length and value.
+// Lock file: the rewrite generation (long).
+final class LogStore implements StorageBackend {
+    private static final int MAGIC = 0x57524b56, FORMAT = 1, HEADER = 16;
+    private static final byte PUT = 1, DELETE = 0;
+    private static final long COMPACT_MIN = Long.getLong("weekly.storage.compactBytes", 4 << 20);
+
+    private static final class Slot {
+        final long version, pos; final int len;
+        Slot(long version, long pos, int len) { this.version = version; this.pos = pos; this.len = len; }
+    }
+
+    // FileChannel locks belong to the whole JVM, so instances of one process on the same file queue up here first.
+    private static final Map<String, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final ReentrantLock processLock;
+    private final FileChannel lockCh;
+    private final TreeMap<String, Slot> index = new TreeMap<>();
+    private FileChannel ch;
+    private Object fileKey;
+    private long generation;                // of the file ch has open
+    private long end, version, liveBytes;   // end: just past the last complete record read
+    private long corruptAt = -1;            // offset of a damaged record that is not the tail, or -1
+    private boolean holding;                // this instance holds the file lock
+
+    LogStore(File file) throws IOException {
+        this.file = file.getAbsoluteFile();
+        this.processLock = PROCESS_LOCKS.computeIfAbsent(this.file.getPath(), k -> new ReentrantLock());
+        this.lockCh = FileChannel.open(new File(this.file.getPath() + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try { open(); } catch (IOException | RuntimeException ex) { lockCh.close(); throw ex; }
+    }
+
+    File getFile() { return file; }
+    @Override public File watchFile() { return file; }
+
+    @Override public synchronized Entry get(String key) throws IOException {
+        catchUp();
+        Slot s = index.get(key);
+        return s == null ? null : new Entry(s.version, read(s.pos, s.len).array());
+    }
+
+    @Override public synchronized SortedMap<String, Long> versions(String prefix) throws IOException {
+        catchUp();
+        SortedMap<String, Long> out = new TreeMap<>();
+        for (Map.Entry<String, Slot> e : index.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) out.put(e.getKey(), e.getValue().version);
+        return out;
+    }
+
+    @Override public synchronized long version() throws IOException { catchUp(); return version; }
+
+    @Override public synchronized long apply(Map<String, byte[]> batch, Map<String, Long> expected) throws IOException {
+        return locked(() -> {
+            catchUp();
+            if (expected != null)
+                for (Map.Entry<String, Long> e : expected.entrySet()) {
+                    Slot s = index.get(e.getKey());
+                    if ((s == null ? 0 : s.version) != e.getValue()) return -1L;
+                }
+            if (batch.isEmpty()) return version;
+            checkIntact();
+            if (ch.size() > end) ch.truncate(end);   // torn tail of a writer that crashed
+            long v = version + 1;
+            ByteBuffer rec = record(v, batch);
+            while (rec.hasRemaining()) ch.write(rec, end + rec.position());
+            ch.force(false);
+            catchUp();
+            if (end - HEADER > COMPACT_MIN && end - HEADER > 2 * liveBytes) rewrite();
+            return v;
+        });
+    }
+
+    // Rewrites the log with only the live values.
+    synchronized void compact() throws IOException { locked(() -> { catchUp(); checkIntact(); rewrite(); return 0L; }); }
+
+    synchronized long fileBytes() throws IOException { catchUp(); return end; }
+    synchronized long liveBytes() throws IOException { catchUp(); return liveBytes; }
+
+    @Override public synchronized void close() throws IOException {
+        try { ch.close(); } finally { lockCh.close(); }
+    }
+
+    private interface Body { long run() throws IOException; }
+
+    // Runs body holding this process's lock and the file lock, on the file currently at the path (a compaction by
+    // another instance may have replaced the one this channel has open).
+    @SuppressWarnings("try")   // the FileLock is only held, never referenced
+    private long locked(Body body) throws IOException {
+        processLock.lock();
+        try (FileLock l = lockCh.lock()) {
+            holding = true;
+            if (!sameFile()) reopen();
+            return body.run();
+        } finally { holding = false; processLock.unlock(); }
+    }
+
+    private void open() throws IOException {
+        generation = generation();   // read first: a rewrite after it then shows as a change instead of going unseen
+        ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fileKey = fileKey();
+        index.clear(); liveBytes = 0; corruptAt = -1;
+        if (ch.size() == 0) {
+            Body init = () -> { if (ch.size() == 0) { ByteBuffer h = header(0); while (h.hasRemaining()) ch.write(h, h.position()); } return 0L; };
+            if (holding) init.run(); else locked(init);
+        }
+        ByteBuffer h = read(0, HEADER);
+        if (h.getInt() != MAGIC || h.getInt() != FORMAT) throw new IOException("Not a routine store: " + file);
+        version = h.getLong(); end = HEADER;
+        catchUp();
+    }
+
+    private void reopen() throws IOException {
+        try { ch.close(); } catch (IOException ignore) {}
+        open();
+    }
+
+    // Applies records appended since the last call; stops at the first incomplete or corrupt one.
+    private void catchUp() throws IOException {
+        if (!sameFile()) { reopen(); return; }
+        long size = ch.size();
+        while (end + 8 <= size) {
+            ByteBuffer h = read(end, 8);
+            int len = h.getInt(), crc = h.getInt();
+            ByteBuffer p = len >= 12 && end + 8 + len <= size ? read(end + 8, len) : null;
+            if (p != null) { CRC32 c = new CRC32(); c.update(p.array(), 0, len); if ((int) c.getValue() != crc) p = null; }
+            if (p == null) {
+                boolean torn = tornTail(len, size);
+                if (!torn && corruptAt != end) Log.PERSIST.warning("Corrupt record at byte " + end + " of " + file + "; the records after it are not read");
+                corruptAt = torn ? -1 : end;
+                return;
+            }
+            long v = p.getLong(), base = end + 8;
+            for (int n = p.getInt(); n > 0; n--) {
+                byte op = p.get();
+                byte[] k = new byte[p.getInt()]; p.get(k);
+                String key = new String(k, StandardCharsets.UTF_8);
+                Slot old;
+                if (op == PUT) {
+                    int vl = p.getInt();
+                    old = index.put(key, new Slot(v, base + p.position(), vl));
+                    p.position(p.position() + vl);
+                    liveBytes += vl + k.length + 9;
+                } else old = index.remove(key);
+                if (old != null) liveBytes -= old.len + k.length + 9;
+            }
+            version = Math.max(version, v);
+            end += 8 + len;
+        }
+        corruptAt = -1;
+    }
+
+    // What an interrupted append leaves: a record running past the end of the file, a last record failing its
+    // checksum, or only zeros (space the file system allocated but never filled).
+    private boolean tornTail(int len, long size) throws IOException {
+        if (len >= 12 && end + 8 + len >= size) return true;
+        for (long pos = end; pos < size; pos += 64 * 1024) {
+            ByteBuffer b = read(pos, (int) Math.min(64 * 1024, size - pos));
+            while (b.hasRemaining()) if (b.get() != 0) return false;
+        }
+        return true;
+    }
+
+    private void checkIntact() throws IOException {
+        if (corruptAt >= 0) throw new IOException("Corrupt record at byte " + corruptAt + " of " + file + "; not writing after it (kv export still reads the records before it)");
+    }
+
+    // Writes every live value, with its version, to a new file and moves it over the log. Caller holds the lock.
+    private void rewrite() throws IOException {
+        File tmp = new File(file.getPath() + ".compact");
+        long before = end;
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer h = header(version);
+            long pos = 0;
+            while (h.hasRemaining()) pos += out.write(h, pos);
+            for (Map.Entry<String, Slot> e : index.entrySet()) {
+                Slot s = e.getValue();
+                ByteBuffer rec = record(s.version, Collections.singletonMap(e.getKey(), read(s.pos, s.len).array()));
+                while (rec.hasRemaining()) pos += out.write(rec, pos);
+            }
+            out.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ByteBuffer g = ByteBuffer.allocate(8);
+        g.putLong(generation() + 1).flip();
+        while (g.hasRemaining()) lockCh.write(g, g.position());
+        Log.PERSIST.info("Compacted " + file.getName() + ": " + before / 1024 + " KB -> " + file.length() / 1024 + " KB");
+        reopen();
+    }
+
+    private static ByteBuffer header(long baseVersion) {
+        ByteBuffer h = ByteBuffer.allocate(HEADER);
+        h.putInt(MAGIC).putInt(FORMAT).putLong(baseVersion).flip();
+        return h;
+    }
+
+    private static ByteBuffer record(long v, Map<String, byte[]> batch) {
+        int len = 12;
+        List<byte[]> keys = new ArrayList<>(batch.size());
+        for (Map.Entry<String, byte[]> e : batch.entrySet()) {
+            byte[] k = e.getKey().getBytes(StandardCharsets.UTF_8);
+            keys.add(k);
+            len += 5 + k.length + (e.getValue() == null ? 0 : 4 + e.getValue().length);
+        }
+        ByteBuffer b = ByteBuffer.allocate(8 + len);
+        b.putInt(len).putInt(0).putLong(v).putInt(batch.size());
+        int i = 0;
+        for (byte[] value : batch.values()) {
+            byte[] k = keys.get(i++);
+            b.put(value == null ? DELETE : PUT).putInt(k.length).put(k);
+            if (value != null) b.putInt(value.length).put(value);
+        }
+        CRC32 c = new CRC32(); c.update(b.array(), 8, len);
+        b.putInt(4, (int) c.getValue()).flip();
+        return b;
+    }
+
+    private ByteBuffer read(long pos, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(len);
+        while (b.hasRemaining()) if (ch.read(b, pos + b.position()) < 0) throw new EOFException("Truncated " + file);
+        b.flip();
+        return b;
+    }
+
+    private boolean sameFile() throws IOException {
+        if (generation() != generation) return false;
+        Object k = fileKey();
+        return k == null ? file.exists() : k.equals(fileKey);
+    }
+
+    private long generation() throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(8);
+        while (b.hasRemaining() && lockCh.read(b, b.position()) > 0) {}
+        return b.position() == 8 ? b.getLong(0) : 0;
+    }
+
+    private Object fileKey() throws IOException {
+        try { return Files.readAttributes(file.toPath(), java.nio.file.attribute.BasicFileAttributes.class).fileKey(); }
+        catch (NoSuchFileException gone) { return "gone"; }
+    }
+}
+
+// ---------------- Persistence (uses JsonUtil) ----------------
+class DataPersistence {
+    enum Format { JSON, XML, SERIALIZED, ICS }
+
+    private static final int STREAM_BUFFER = 64 * 1024;
+    private static final String SER_DAYS = "weekly-routine/days";   // leads serialized files written day by day
+
+    // Any format can be GZIP-compressed by adding ".gz" to the file name (routine.json.gz, routine.xml.gz).
+    // Either way the document is streamed through fixed-size buffers and never held whole in memory.
+    public void save(Map<String, DaySchedule<String>> data, File file, Format format) throws IOException {
+        try {
+            switch (format) {
+                case JSON:
+                    Log.PERSIST.info("Saving JSON to " + file);
+                    try (Writer w = openWriter(file)) { writeJson(data, w); }
+                    break;
+                case XML:
+                    Log.PERSIST.info("Saving XML to " + file);
+                    try (Writer w = openWriter(file)) { writeXml(data, w); }
+                    break;
+                case SERIALIZED:
+                    Log.PERSIST.info("Saving serialized to " + file);
+                    // One (name, day) pair at a time with a stream reset after each, so the reader can drop a day's
+                    // objects once it has packed them; files holding a single map are still read.
+                    try (ObjectOutputStream oos = new ObjectOutputStream(openOutput(file))) {
+                        oos.writeObject(SER_DAYS);
+                        for (Map.Entry<String, DaySchedule<String>> e : data.entrySet()) { oos.writeObject(e.getKey()); oos.writeObject(e.getValue()); oos.reset(); }
+                        oos.writeObject(null);
+                    }
+                    break;
+                case ICS:
+                    Log.PERSIST.info("Saving iCalendar to " + file);
+                    try (Writer w = openWriter(file)) { writeIcs(data, w); }
+                    break;
+            }
+        } catch (IOException ex) {
+            Log.PERSIST.log(Level.SEVERE, "Save failed", ex);
+            throw ex;
+        }
+    }
+
+    public Map<String, DaySchedule<String>> load(File file, Format format) throws IOException {
+        return load(file, format, new TaskValidator.Report(file.getName()));
+    }
+
+    // Tasks that fail TaskValidator (no name, times that are not HH:MM) are left out and listed in the report.
+    // The rest are packed day by day as they are read (see PackedDay), so a loaded routine holds no Task objects
+    // until its tasks are read or edited.
+    public Map<String, DaySchedule<String>> load(File file, Format format, TaskValidator.Report report) throws IOException {
+        Map<String, DaySchedule<String>> data;
+        Intake intake = new Intake(report);
+        try {
+            switch (format) {
+                case JSON:
+                    Log.PERSIST.info("Loading JSON from " + file);
+                    try (Reader r = openReader(file)) { data = readJson(r, intake); }
+                    break;
+                case XML:
+                    Log.PERSIST.info("Loading XML from " + file);
+                    try (Reader r = openReader(file)) { data = readXml(r, intake); }
+                    break;
+                case SERIALIZED:
+                    Log.PERSIST.info("Loading serialized from " + file);
+                    try (ObjectInputStream ois = new ObjectInputStream(openInput(file))) {
+                        data = new LinkedHashMap<>();
+                        Object first = ois.readObject();
+                        if (SER_DAYS.equals(first)) {
+                            for (Object key; (key = ois.readObject()) != null; ) {
+                                @SuppressWarnings("unchecked") DaySchedule<String> day = (DaySchedule<String>) ois.readObject();
+                                data.put((String) key, intake.pack((String) key, day));
+                            }
+                        } else {
+                            @SuppressWarnings("unchecked") Map<String, DaySchedule<String>> m = (Map<String, DaySchedule<String>>) first;
+                            for (Map.Entry<String, DaySchedule<String>> e : m.entrySet()) data.put(e.getKey(), intake.pack(e.getKey(), e.getValue()));
+                        }
+                    } catch (ClassNotFoundException e) {
+                        throw new IOException("Serialized data incompatible", e);
+                    }
+                    break;
+                case ICS:
+                    Log.PERSIST.info("Loading iCalendar from " + file);
+                    try (Reader r = openReader(file)) { data = readIcs(r, intake); }
+                    break;
+                default:
+                    throw new IOException("Unsupported format");
+            }
+        } catch (IOException ex) {
+            Log.PERSIST.log(Level.SEVERE, "Load failed", ex);
+            throw ex;
+        }
+        if (!report.isClean()) Log.PERSIST.warning(report.details());
+        return data;
+    }
+
+    // The routine as kept in a storage backend, one "days/<day>" key per day.
+    public Map<String, DaySchedule<String>> load(StorageBackend storage, TaskValidator.Report report) throws IOException {
+        Map<String, DaySchedule<String>> data = new LinkedHashMap<>();
+        for (String key : storage.versions(Storage.DAYS).keySet()) {
+            StorageBackend.Entry e = storage.get(key);
+            if (e != null) data.put(key.substring(Storage.DAYS.length()), decodeDay(e.value, report));
+        }
+        if (!report.isClean()) Log.PERSIST.warning(report.details());
+        return data;
+    }
+
+    // Writes every day in one batch; stored days missing from data are removed.
+    public void save(Map<String, DaySchedule<String>> data, StorageBackend storage) throws IOException {
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        for (String key : storage.versions(Storage.DAYS).keySet()) batch.put(key, null);
+        for (Map.Entry<String, DaySchedule<String>> e : data.entrySet()) batch.put(Storage.DAYS + e.getKey(), encodeDay(e.getKey(), e.getValue()));
+        storage.apply(batch, null);
+    }
+
+    // One day as a storage value: the object a JSON routine holds in its "days" array.
+    byte[] encodeDay(String dayName, DaySchedule<String> schedule) { return Storage.utf8(JsonUtil.stringify(serializeDay(dayName, schedule))); }
+
+    DaySchedule<String> decodeDay(byte[] value, TaskValidator.Report report) throws IOException {
+        Map<String, DaySchedule<String>> out = new LinkedHashMap<>();
+        JsonUtil.Parser p = new JsonUtil.Parser(new InputStreamReader(new ByteArrayInputStream(value), StandardCharsets.UTF_8));
+        readJsonDay(out, p, new Intake(report));
+        p.end();
+        return out.values().iterator().next();
+    }
+
+    // Where each loaded task goes: validated (rejects are reported), given a fresh id if an earlier task of the
+    // same load had its id (hand-edited or concatenated files), then packed into its day.
+    private static final class Intake {
+        final TaskValidator.Report report;
+        final LongIntMap seen = new LongIntMap();
+        Intake(TaskValidator.Report report) { this.report = report; }
+        void add(String day, Task<String> t, PackedDay.Builder into) {
+            if (!TaskValidator.admit(day, t, report)) return;
+            if (seen.containsKey(t.getId())) t.setId(Task.newId());
+            seen.put(t.getId(), 1);
+            into.add(t);
+        }
+        DaySchedule<String> pack(String key, DaySchedule<String> day) {
+            PackedDay.Builder b = new PackedDay.Builder();
+            for (Task<String> t : day.getTasks()) add(key, t, b);
+            return DaySchedule.packed(day.getDayName(), b.build());
+        }
+    }
+
+    static boolean isCompressed(File f) { return f.getName().toLowerCase(Locale.ROOT).endsWith(".gz"); }
+
+    static OutputStream openOutput(File file) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        return isCompressed(file) ? new GZIPOutputStream(os, STREAM_BUFFER) : new BufferedOutputStream(os, STREAM_BUFFER);
+    }
+
+    static Writer openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(openOutput(file), StandardCharsets.UTF_8), STREAM_BUFFER);
+    }
+
+    // Compressed input is recognised by the GZIP magic bytes, so a renamed file still loads.
+    static InputStream openInput(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER);
+        in.mark(2);
+        int b0 = in.read(), b1 = in.read();
+        in.reset();
+        return b0 == 0x1f && b1 == 0x8b ? new GZIPInputStream(in, STREAM_BUFFER) : in;
+    }
+
+    static Reader openReader(File file) throws IOException { return new InputStreamReader(openInput(file), StandardCharsets.UTF_8); }
+
+    // Recovery checkpoint: JSON routine tagged with the last journal entry it contains. Written to the given
+    // (temporary) file; the caller commits it over the real checkpoint.
+    public void writeCheckpoint(Map<String, DaySchedule<String>> data, File out, long journalSeq) throws IOException {
+        try (Writer w = JsonUtil.newWriter(out)) {
+            w.write("{\"journalSeq\":" + journalSeq + ",");
+            writeJsonDays(data, w);
+        }
+        Log.PERSIST.fine("Checkpoint " + journalSeq + " written to " + out);
+    }
+
+    // journalSeq of a checkpoint file, or 0 for files written without one. Only the first bytes are read.
+    public static long journalSeq(File file) {
+        try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            char[] buf = new char[64]; int n = r.read(buf);
+            String head = n > 0 ? new String(buf, 0, n) : "";
+            String key = "{\"journalSeq\":";
+            if (!head.startsWith(key)) return 0;
+            int end = key.length();
+            while (end < head.length() && Character.isDigit(head.charAt(end))) end++;
+            return Long.parseLong(head.substring(key.length(), end));
+        } catch (IOException | NumberFormatException ex) { return 0; }
+    }
+
+    // JSON model: { "days":[ { "day":"Monday", "tasks":[ {...}, ... ] }, ... ] }
+    // Written one day object at a time so only a single day's tree is alive while saving.
+    private void writeJson(Map<String, DaySchedule<String>> data, Writer w) throws IOException {
+        w.write('{');
+        writeJsonDays(data, w);
+    }
+
+    private void writeJsonDays(Map<String, DaySchedule<String>> data, Writer w) throws IOException {
+        w.write("\"days\":[");
+        boolean first = true;
+        for (Map.Entry<String, DaySchedule<String>> e : data.entrySet()) {
+            if (!first) w.write(',');
+            first = false;
+            JsonUtil.write(serializeDay(e.getKey(), e.getValue()), w);
+        }
+        w.write("]}");
+    }
+
+    Map<String, Object> serializeDay(String dayName, DaySchedule<String> schedule) {
+        List<Object> tasks = new ArrayList<>();
+        for (Task<String> t : schedule.getTasks()) tasks.add(taskToJson(t));
+        Map<String, Object> dayObj = new LinkedHashMap<>();
+        dayObj.put("day", dayName);
+        dayObj.put("tasks", tasks);
+        return dayObj;
+    }
+
+    // The reading side of writeJson: the "days" array is walked one task object at a time, so a huge day is never
+    // held as a tree; other top-level keys (a checkpoint's journalSeq) are skipped.
+    private Map<String, DaySchedule<String>> readJson(Reader r, Intake intake) throws IOException {
+        Map<String, DaySchedule<String>> out = new LinkedHashMap<>();
+        JsonUtil.Parser p = new JsonUtil.Parser(r);
+        p.expect('{');
+        if (!p.consume('}')) {
+            do {
+                String key = p.readString();
+                p.expect(':');
+                if (key.equals("days") && p.consume('[')) {
+                    if (p.consume(']')) continue;
+                    do readJsonDay(out, p, intake); while (p.consume(','));
+                    p.expect(']');
+                } else p.readValue();
+            } while (p.consume(','));
+            p.expect('}');
+        }
+        p.end();
+        return out;
+    }
+
+    private static void readJsonDay(Map<String, DaySchedule<String>> out, JsonUtil.Parser p, Intake intake) throws IOException {
+        Object dayName = null;
+        PackedDay.Builder tasks = new PackedDay.Builder();
+        p.expect('{');
+        if (!p.consume('}')) {
+            do {
+                String key = p.readString();
+                p.expect(':');
+                if (key.equals("day")) dayName = p.readValue();
+                else if (key.equals("tasks") && p.consume('[')) {
+                    if (p.consume(']')) continue;
+                    do intake.add(String.valueOf(dayName), taskFromJson(JsonUtil.obj(p.readValue())), tasks); while (p.consume(','));
+                    p.expect(']');
+                } else p.readValue();
+            } while (p.consume(','));
+            p.expect('}');
+        }
+        DaySchedule<String> schedule = DaySchedule.packed(String.valueOf(dayName), tasks.build());
+        out.put(schedule.getDayName(), schedule);
+    }
+
+    // Shared by routine files, templates and the edit journal.
+    static Map<String, Object> taskToJson(Task<String> t) {
+        Map<String, Object> to = new LinkedHashMap<>();
+        to.put("id", t.getId());
+        to.put("time", t.getTime());
+        to.put("endTime", t.getEndTime());
+        to.put("taskName", t.getTaskName());
+        to.put("priority", String.valueOf(t.getPriority()));
+        to.put("category", t.getCategory());
+        to.put("completed", t.isCompleted());
+        return to;
+    }
+
+    static Task<String> taskFromJson(Map<String, Object> m) {
+        String time = String.valueOf(m.get("time"));
+        Object endObj = m.get("endTime");
+        String endTime = endObj == null ? time : String.valueOf(endObj);
+        Object name = m.get("taskName");   // left null when missing, so validation rejects it instead of naming it "null"
+        Task<String> t = new Task<>(name == null ? null : String.valueOf(name), time, endTime, String.valueOf(m.get("priority")), String.valueOf(m.get("category")));
+        t.setCompleted(Boolean.TRUE.equals(m.get("completed")));
+        if (m.get("id") instanceof Number && ((Number) m.get("id")).longValue() != 0) t.setId(((Number) m.get("id")).longValue());
+        return t;
+    }
+
+    // XML
+    private static String escXml(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;").replace("'", "&apos;");
+    }
+    private void writeXml(Map<String, DaySchedule<String>> data, Appendable sb) throws IOException {
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<weeklyRoutine>\n");
+        for (Map.Entry<String, DaySchedule<String>> e : data.entrySet()) {
+            sb.append("  <day name=\"").append(escXml(e.getKey())).append("\">\n");
+            for (Task<String> t : e.getValue().getTasks()) {
+                sb.append("    <task id=\"").append(String.valueOf(t.getId())).append("\" completed=\"").append(String.valueOf(t.isCompleted())).append("\">\n");
+                sb.append("      <time>").append(escXml(t.getTime())).append("</time>\n");
+                sb.append("      <endTime>").append(escXml(t.getEndTime())).append("</endTime>\n");
+                sb.append("      <name>").append(escXml(t.getTaskName())).append("</name>\n");
+                sb.append("      <priority>").append(escXml(String.valueOf(t.getPriority()))).append("</priority>\n");
+                sb.append("      <category>").append(escXml(t.getCategory())).append("</category>\n");
+                sb.append("    </task>\n");
+            }
+            sb.append("  </day>\n");
+        }
+        sb.append("</weeklyRoutine>\n");
+    }
+    // Reads the document in chunks and parses each <task> element as soon as its closing tag has arrived, so only
+    // one task's markup is buffered at a time however large a day is.
+    private Map<String, DaySchedule<String>> readXml(Reader r, Intake intake) throws IOException {
+        Map<String, DaySchedule<String>> map = new LinkedHashMap<>();
+        StringBuilder pending = new StringBuilder();
+        char[] chunk = new char[8192];
+        String dayName = null;
+        PackedDay.Builder tasks = null;
+        while (true) {
+            if (dayName == null) {
+                int dayStart = pending.indexOf("<day");
+                int nameAttr = dayStart < 0 ? -1 : pending.indexOf("name=\"", dayStart);
+                int nameEnd = nameAttr < 0 ? -1 : pending.indexOf("\"", nameAttr + 6);
+                int open = nameEnd < 0 ? -1 : pending.indexOf(">", nameEnd);
+                if (open >= 0) {
+                    dayName = unescXml(pending.substring(nameAttr + 6, nameEnd)); tasks = new PackedDay.Builder();
+                    pending.delete(0, open + 1);
+                    continue;
+                }
+                if (dayStart < 0 && pending.length() > 4) pending.delete(0, pending.length() - 4);   // keep a split "<day"
+            } else {
+                int taskEnd = pending.indexOf("</task>"), dayEnd = pending.indexOf("</day>");
+                if (dayEnd >= 0 && (taskEnd < 0 || dayEnd < taskEnd)) {
+                    map.put(dayName, DaySchedule.packed(dayName, tasks.build()));
+                    pending.delete(0, dayEnd + 6); dayName = null; tasks = null;
+                    continue;
+                }
+                if (taskEnd >= 0) {
+                    int taskStart = pending.lastIndexOf("<task", taskEnd);
+                    if (taskStart >= 0) { Task<String> t = taskFromXml(pending.substring(taskStart, taskEnd)); if (t != null) intake.add(dayName, t, tasks); }
+                    pending.delete(0, taskEnd + 7);
+                    continue;
+                }
+            }
+            int n = r.read(chunk);
+            if (n < 0) break;
+            pending.append(chunk, 0, n);
+        }
+        return map;
+    }
+    // One "<task ...>...": everything up to (not including) its closing tag; null if it lacks a time or name.
+    private static Task<String> taskFromXml(String taskXml) {
+        int gt = taskXml.indexOf(">");
+        if (gt < 0) return null;
+        String taskTag = taskXml.substring(0, gt), txml = taskXml.substring(gt + 1);
+        String time = extractTag(txml, "time");
+        String endTime = extractTag(txml, "endTime");
+        String name = extractTag(txml, "name");
+        String priority = extractTag(txml, "priority");
+        String category = extractTag(txml, "category");
+        if (time == null || name == null) return null;
+        if (endTime == null) endTime = time;
+        Task<String> t = new Task<>(name, time, endTime, priority != null ? priority : "Low", category != null ? category : "Other");
+        t.setCompleted(taskTag.contains("completed=\"true\""));
+        long id = idAttr(taskTag); if (id != 0) t.setId(id);
+        return t;
+    }
+    private static long idAttr(String taskTag) {
+        int s = taskTag.indexOf(" id=\""); if (s < 0) return 0;
+        int e = taskTag.indexOf('"', s + 5); if (e < 0) return 0;
+        try { return Long.parseLong(taskTag.substring(s + 5, e)); } catch (NumberFormatException ex) { return 0; }
+    }
+    private static String extractTag(String xml, String tag) {
+        int s = xml.indexOf("<" + tag + ">"); if (s < 0) return null;
+        int e = xml.indexOf("</" + tag + ">", s); if (e < 0) return null;
+        return unescXml(xml.substring(s + tag.length() + 2, e));
+    }
+    private static String unescXml(String s) {
+        return s.indexOf('&') < 0 ? s : s.replace("&lt;","<").replace("&gt;",">").replace("&quot;","\"").replace("&apos;","'").replace("&amp;","&");
+    }
+
+    // iCalendar (RFC 5545). A routine is one week that repeats, so every group of tasks with the same name, times,
+    // priority and category becomes a single VEVENT in the current week with RRULE:FREQ=WEEKLY;BYDAY=<its days>
+    // (FREQ=DAILY when it is on all seven) instead of one event per day. Task ids and per-day completion travel in
+    // X-WEEKLY-* properties that other calendar tools ignore.
+    private static final String[] BYDAY = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+
+    private static final class IcsGroup {
+        final Task<String> first; int days; long doneDays; final long[] ids = new long[7];
+        IcsGroup(Task<String> first) { this.first = first; }
+    }
+
+    private void writeIcs(Map<String, DaySchedule<String>> data, Writer w) throws IOException {
+        List<IcsGroup> groups = new ArrayList<>();
+        Map<List<String>, IcsGroup> open = new HashMap<>();
+        for (Map.Entry<String, DaySchedule<String>> e : data.entrySet()) {
+            int dow = Times.weekday(e.getKey());
+            if (dow < 0) throw new IOException("Day '" + e.getKey() + "' has no calendar weekday");
+            for (Task<String> t : e.getValue().getTasks()) {
+                List<String> key = Arrays.asList(t.getTaskName(), t.getTime(), t.getEndTime(), String.valueOf(t.getPriority()), t.getCategory());
+                IcsGroup g = open.get(key);
+                // A second task with the same fields on the same day cannot share the event; it starts another.
+                if (g == null || (g.days & 1 << dow) != 0) { g = new IcsGroup(t); groups.add(g); open.put(key, g); }
+                g.days |= 1 << dow; g.ids[dow] = t.getId();
+                if (t.isCompleted()) g.doneDays |= 1 << dow;
+            }
+        }
+        LocalDate monday = LocalDate.now().with(DayOfWeek.MONDAY);
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        String stamp = String.format(Locale.ROOT, "%04d%02d%02dT%02d%02d%02dZ", now.getYear(), now.getMonthValue(), now.getDayOfMonth(), now.getHour(), now.getMinute(), now.getSecond());
+        icsLine(w, "BEGIN:VCALENDAR"); icsLine(w, "VERSION:2.0"); icsLine(w, "PRODID:-//Weekly Routine//EN"); icsLine(w, "CALSCALE:GREGORIAN");
+        for (IcsGroup g : groups) {
+            Task<String> t = g.first;
+            int firstDay = Integer.numberOfTrailingZeros(g.days), start = Math.max(0, Times.toMinutes(t.getTime())), end = Times.toMinutes(t.getEndTime());
+            LocalDate date = monday.plusDays(firstDay);
+            icsLine(w, "BEGIN:VEVENT");
+            icsLine(w, "UID:" + t.getId() + "@weekly-routine");
+            icsLine(w, "DTSTAMP:" + stamp);
+            icsLine(w, "DTSTART:" + icsDateTime(date, start));
+            if (end >= 0 && end != start) icsLine(w, "DTEND:" + icsDateTime(end < start ? date.plusDays(1) : date, end));
+            if (g.days == 0x7f) icsLine(w, "RRULE:FREQ=DAILY");
+            else icsLine(w, "RRULE:FREQ=WEEKLY;BYDAY=" + icsDays(g.days));
+            icsLine(w, "SUMMARY:" + icsText(t.getTaskName()));
+            icsLine(w, "CATEGORIES:" + icsText(t.getCategory()));
+            String priority = String.valueOf(t.getPriority());
+            icsLine(w, "PRIORITY:" + ("High".equals(priority) ? 1 : "Medium".equals(priority) ? 5 : "Low".equals(priority) ? 9 : 0));
+            icsLine(w, "X-WEEKLY-PRIORITY:" + icsText(priority));
+            StringBuilder ids = new StringBuilder();
+            for (int d = 0; d < 7; d++) if ((g.days & 1 << d) != 0) ids.append(ids.length() == 0 ? "" : ",").append(BYDAY[d]).append('=').append(g.ids[d]);
+            icsLine(w, "X-WEEKLY-IDS:" + ids);
+            if (g.doneDays != 0) icsLine(w, "X-WEEKLY-DONE:" + icsDays((int) g.doneDays));
+            icsLine(w, "END:VEVENT");
+        }
+        icsLine(w, "END:VCALENDAR");
+    }
+
+    // The reading side: lines are unfolded as they stream in and only the current event's properties are held.
+    // RRULE BYDAY picks the days (FREQ=DAILY without it: every day); anything else lands on DTSTART's weekday.
+    // INTERVAL, COUNT and UNTIL have no meaning for a single repeating week and are ignored.
+    private Map<String, DaySchedule<String>> readIcs(Reader r, Intake intake) throws IOException {
+        BufferedReader in = r instanceof BufferedReader ? (BufferedReader) r : new BufferedReader(r, STREAM_BUFFER);
+        List<PackedDay.Builder> byDay = new ArrayList<>();
+        for (int d = 0; d < 7; d++) byDay.add(new PackedDay.Builder());
+        Map<String, String> event = null;
+        int lineNo = 0, eventLine = 0;
+        String line = in.readLine(), next;
+        for (; line != null; line = next) {
+            lineNo++;
+            StringBuilder unfolded = null;
+            while ((next = in.readLine()) != null && !next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+                if (unfolded == null) unfolded = new StringBuilder(line);
+                unfolded.append(next, 1, next.length()); lineNo++;
+            }
+            if (unfolded != null) line = unfolded.toString();
+            if (line.equalsIgnoreCase("BEGIN:VEVENT")) { event = new HashMap<>(); eventLine = lineNo; continue; }
+            if (line.equalsIgnoreCase("END:VEVENT")) {
+                if (event != null) addIcsEvent(event, byDay, eventLine, intake);
+                event = null; continue;
+            }
+            if (event == null) continue;
+            int colon = icsColon(line);
+            if (colon < 0) continue;
+            int semi = line.indexOf(';');
+            String name = line.substring(0, semi >= 0 && semi < colon ? semi : colon).toUpperCase(Locale.ROOT);
+            String value = line.substring(colon + 1);
+            // A DATE value (all-day event) has no "T" part, with or without the VALUE=DATE parameter.
+            if ((name.equals("DTSTART") || name.equals("DTEND")) && value.indexOf('T') < 0) event.putIfAbsent(name + ";DATE", "true");
+            if ((name.equals("DTSTART") || name.equals("DTEND")) && semi >= 0 && semi < colon) {
+                String tzid = icsParam(line.substring(semi + 1, colon), "TZID");
+                if (tzid != null) event.putIfAbsent(name + ";TZID", tzid);
+            }
+            event.putIfAbsent(name, value);
+        }
+        Map<String, DaySchedule<String>> out = new LinkedHashMap<>();
+        for (int d = 0; d < 7; d++) {
+            String dayName = DayOfWeek.of(d + 1).getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+            out.put(dayName, DaySchedule.packed(dayName, byDay.get(d).build()));
+        }
+        return out;
+    }
+
+    private static void addIcsEvent(Map<String, String> ev, List<PackedDay.Builder> byDay, int lineNo, Intake intake) throws IOException {
+        String dtStart = ev.get("DTSTART");
+        if (dtStart == null) throw new IOException("VEVENT at line " + lineNo + " has no DTSTART");
+        LocalDate written = icsDate(dtStart, lineNo), date = written;
+        boolean allDay = "true".equals(ev.get("DTSTART;DATE"));
+        int start = 0, end;
+        if (!allDay) {
+            LocalDateTime at = icsLocal(dtStart, ev.get("DTSTART;TZID"), lineNo);
+            date = at.toLocalDate(); start = at.getHour() * 60 + at.getMinute();
+        }
+        end = start;
+        if (allDay) end = ScheduleOptimizer.LAST_MINUTE;
+        else if (ev.containsKey("DTEND") && !"true".equals(ev.get("DTEND;DATE"))) {
+            LocalDateTime at = icsLocal(ev.get("DTEND"), ev.get("DTEND;TZID"), lineNo);
+            end = at.getHour() * 60 + at.getMinute();
+        }
+        else if (ev.containsKey("DURATION")) end = (start + icsDuration(ev.get("DURATION"), lineNo)) % (24 * 60);
+        // BYDAY names weekdays in the event's own zone; converting the start may have moved it to a neighbouring day.
+        int shift = (int) (date.toEpochDay() - written.toEpochDay());
+        int days = 1 << (date.getDayOfWeek().getValue() - 1);
+        String rrule = ev.get("RRULE");
+        if (rrule != null) {
+            String freq = null, weekdays = null;
+            for (String part : rrule.split(";")) {
+                int eq = part.indexOf('=');
+                if (eq < 0) continue;
+                String k = part.substring(0, eq).trim().toUpperCase(Locale.ROOT);
+                if (k.equals("FREQ")) freq = part.substring(eq + 1).trim().toUpperCase(Locale.ROOT);
+                else if (k.equals("BYDAY")) weekdays = part.substring(eq + 1);
+            }
+            if (weekdays != null && ("DAILY".equals(freq) || "WEEKLY".equals(freq))) days = icsShiftDays(icsDayMask(weekdays), shift);
+            else if ("DAILY".equals(freq)) days = 0x7f;
+            if (days == 0) days = 1 << (date.getDayOfWeek().getValue() - 1);
+        }
+        String summary = ev.containsKey("SUMMARY") ? icsUnescape(ev.get("SUMMARY")) : "(untitled)";
+        String category = ev.containsKey("CATEGORIES") ? icsUnescape(icsFirst(ev.get("CATEGORIES"))) : "Other";
+        String priority = ev.containsKey("X-WEEKLY-PRIORITY") ? icsUnescape(ev.get("X-WEEKLY-PRIORITY")) : icsPriority(ev.get("PRIORITY"));
+        int done = ev.containsKey("X-WEEKLY-DONE") ? icsDayMask(ev.get("X-WEEKLY-DONE")) : 0;
+        long[] ids = new long[7];
+        if (ev.containsKey("X-WEEKLY-IDS"))
+            for (String part : ev.get("X-WEEKLY-IDS").split(",")) {
+                int eq = part.indexOf('='), d = eq < 0 ? -1 : icsDayIndex(part.substring(0, eq).trim());
+                if (d >= 0) try { ids[d] = Long.parseLong(part.substring(eq + 1).trim()); } catch (NumberFormatException ex) { /* fresh id */ }
+            }
+        for (int d = 0; d < 7; d++) {
+            if ((days & 1 << d) == 0) continue;
+            Task<String> t = new Task<>(summary, Times.format(start), Times.format(end), priority, category);
+            t.setCompleted((done & 1 << d) != 0);
+            if (ids[d] > 0) t.setId(ids[d]);
+            intake.add(ScheduleEngine.DEFAULT_DAYS[d], t, byDay.get(d));
+        }
+    }
+
+    private static int icsDayIndex(String code) {
+        // BYDAY entries may carry an ordinal ("1MO", "-1FR"); only the weekday matters here.
+        String c = code.trim().toUpperCase(Locale.ROOT);
+        if (c.length() > 2) c = c.substring(c.length() - 2);
+        for (int d = 0; d < 7; d++) if (BYDAY[d].equals(c)) return d;
+        return -1;
+    }
+
+    private static int icsDayMask(String list) {
+        int mask = 0;
+        for (String code : list.split(",")) { int d = icsDayIndex(code); if (d >= 0) mask |= 1 << d; }
+        return mask;
+    }
+
+    // The weekday mask moved by shift days (Sunday wraps to Monday and back).
+    private static int icsShiftDays(int mask, int shift) {
+        shift = Math.floorMod(shift, 7);
+        return shift == 0 ? mask : (mask << shift | mask >>> (7 - shift)) & 0x7f;
+    }
+
+    private static String icsDays(int mask) {
+        StringBuilder sb = new StringBuilder();
+        for (int d = 0; d < 7; d++) if ((mask & 1 << d) != 0) sb.append(sb.length() == 0 ? "" : ",").append(BYDAY[d]);
+        return sb.toString();
+    }
+
+    // YYYYMMDDTHHMM00, local (floating) time. Built by hand: String.format dominated writing large calendars.
+    private static String icsDateTime(LocalDate date, int minute) {
+        int ymd = date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth(), hm = minute / 60 * 100 + minute % 60;
+        return ymd + (hm < 10 ? "T000" : hm < 100 ? "T00" : hm < 1000 ? "T0" : "T") + hm + "00";
+    }
+
+    // Date part of a DATE or DATE-TIME value (YYYYMMDD[THHMMSS[Z]]), as written.
+    private static LocalDate icsDate(String v, int lineNo) throws IOException {
+        try { return LocalDate.of(Integer.parseInt(v.substring(0, 4)), Integer.parseInt(v.substring(4, 6)), Integer.parseInt(v.substring(6, 8))); }
+        catch (RuntimeException ex) { throw new IOException("Bad date '" + v + "' in VEVENT at line " + lineNo); }
+    }
+
+    // A DATE-TIME in this machine's zone: UTC ("Z") values and ones with a TZID Java knows are converted; floating
+    // times, and TZIDs it does not know (Windows names, custom VTIMEZONEs), are taken as wall-clock time.
+    private static LocalDateTime icsLocal(String v, String tzid, int lineNo) throws IOException {
+        int minute = icsMinute(v, lineNo);
+        LocalDateTime at = icsDate(v, lineNo).atTime(minute / 60, minute % 60);
+        ZoneId zone = null;
+        if (v.endsWith("Z") || v.endsWith("z")) zone = ZoneOffset.UTC;
+        else if (tzid != null) try { zone = ZoneId.of(tzid); } catch (java.time.DateTimeException ex) { Log.PERSIST.fine("Unknown TZID " + tzid + ", using wall-clock time"); }
+        return zone == null ? at : at.atZone(zone).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+    }
+
+    private static int icsMinute(String v, int lineNo) throws IOException {
+        if (v.length() < 13 || v.charAt(8) != 'T') throw new IOException("Bad time '" + v + "' in VEVENT at line " + lineNo);
+        try {
+            int h = Integer.parseInt(v.substring(9, 11)), m = Integer.parseInt(v.substring(11, 13));
+            if (h > 23 || m > 59) throw new NumberFormatException();
+            return h * 60 + m;
+        } catch (NumberFormatException ex) { throw new IOException("Bad time '" + v + "' in VEVENT at line " + lineNo); }
+    }
+
+    // P[nW][nD][T[nH][nM][nS]] in minutes.
+    private static int icsDuration(String v, int lineNo) throws IOException {
+        int minutes = 0, n = 0; boolean digits = false;
+        for (int i = v.startsWith("+") ? 1 : 0; i < v.length(); i++) {
+            char c = Character.toUpperCase(v.charAt(i));
+            if (c >= '0' && c <= '9') { n = n * 10 + (c - '0'); digits = true; continue; }
+            switch (c) {
+                case 'P': case 'T': break;
+                case 'W': minutes += n * 7 * 24 * 60; break;
+                case 'D': minutes += n * 24 * 60; break;
+                case 'H': minutes += n * 60; break;
+                case 'M': minutes += n; break;
+                case 'S': break;
+                default: throw new IOException("Bad duration '" + v + "' in VEVENT at line " + lineNo);
+            }
+            n = 0;
+        }
+        if (!digits || v.startsWith("-")) throw new IOException("Bad duration '" + v + "' in VEVENT at line " + lineNo);
+        return Math.min(minutes, 24 * 60 - 1);
+    }
+
+    private static String icsPriority(String v) {
+        int p;
+        try { p = v == null ? 0 : Integer.parseInt(v.trim()); } catch (NumberFormatException ex) { p = 0; }
+        return p >= 1 && p <= 4 ? "High" : p == 5 ? "Medium" : "Low";
+    }
+
+    // First value of a comma-separated list, honouring escaped commas.
+    private static String icsFirst(String list) {
+        for (int i = 0; i < list.length(); i++) {
+            if (list.charAt(i) == '\\') i++;
+            else if (list.charAt(i) == ',') return list.substring(0, i);
+        }
+        return list;
+    }
+
+    // Value of one parameter in "A=x;B=\"y\"" (quotes removed), or null.
+    private static String icsParam(String params, String key) {
+        for (String p : params.split(";")) {
+            int eq = p.indexOf('=');
+            if (eq < 0 || !p.substring(0, eq).trim().equalsIgnoreCase(key)) continue;
+            String v = p.substring(eq + 1).trim();
+            return v.length() > 1 && v.startsWith("\"") && v.endsWith("\"") ? v.substring(1, v.length() - 1) : v;
+        }
+        return null;
+    }
+
+    // The colon ending the property name and parameters; colons inside quoted parameter values do not count.
+    private static int icsColon(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') quoted = !quoted;
+            else if (c == ':' && !quoted) return i;
+        }
+        return -1;
+    }
+
+    private static String icsText(String s) {
+        if (s == null) return "";
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case ';': sb.append("\\;"); break;
+                case ',': sb.append("\\,"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String icsUnescape(String s) {
+        if (s.indexOf('\\') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) { char n = s.charAt(++i); sb.append(n == 'n' || n == 'N' ? '\n' : n); }
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    // CRLF-terminated, folded so no physical line exceeds 75 UTF-8 octets (never inside a surrogate pair).
+    private static void icsLine(Writer w, String line) throws IOException {
+        int octets = 0, from = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            int len = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isHighSurrogate(c) ? 4 : Character.isLowSurrogate(c) ? 0 : 3;
+            if (octets + len > 75) { w.write(line, from, i - from); w.write("\r\n "); from = i; octets = 1; }
+            octets += len;
+        }
+        w.write(line, from, line.length() - from);
+        w.write("\r\n");
+    }
+
+    public static DataPersistence.Format formatFromFile(File f) {
+        String name = f.getName().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) name = name.substring(0, name.length() - 3);
+        if (name.endsWith(".json")) return Format.JSON;
+        if (name.endsWith(".xml")) return Format.XML;
+        if (name.endsWith(".ser")) return Format.SERIALIZED;
+        if (name.endsWith(".ics")) return Format.ICS;
+        return Format.JSON;
+    }
+}
+
+// ---------------- Recurrence & Templates ----------------
+class RecurringTasks {
+    public enum Recurrence { NONE, DAILY, WEEKLY, WEEKDAYS }
+    public static void applyRecurrence(Map<String, DaySchedule<String>> weekSchedule, String[] daysOfWeek, String currentDay, Task<String> task, Recurrence recurrence) {
+        for (Map.Entry<String, Task<String>> e : expand(daysOfWeek, currentDay, task, recurrence).entrySet()) weekSchedule.get(e.getKey()).addTask(e.getValue());
+    }
+    // Day -> task instance to add: the task itself for a single day, independent clones when it recurs.
+    public static Map<String, Task<String>> expand(String[] daysOfWeek, String currentDay, Task<String> task, Recurrence recurrence) {
+        Map<String, Task<String>> out = new LinkedHashMap<>();
+        switch (recurrence) {
+            case NONE: case WEEKLY: out.put(currentDay, task); break;
+            case DAILY: for (String d : daysOfWeek) out.put(d, cloneTask(task)); break;
+            case WEEKDAYS: for (String d : daysOfWeek) if (!d.equalsIgnoreCase("Saturday") && !d.equalsIgnoreCase("Sunday")) out.put(d, cloneTask(task)); break;
+        }
+        return out;
+    }
+    public static void applyToDays(Map<String, DaySchedule<String>> weekSchedule, Collection<String> targetDays, Task<String> task) {
+        for (String d : targetDays) { DaySchedule<String> s = weekSchedule.get(d); if (s != null) s.addTask(cloneTask(task)); }
+    }
+    private static Task<String> cloneTask(Task<String> t) { return t.duplicate(); }
+
+    static class TemplateManager {
+        private final Map<String, List<Task<String>>> dayTemplates = new LinkedHashMap<>();
+        private final File templatesFile;
+        private final SharedFile shared;
+        private long version;   // of the file when we last read or committed it
+        // With a storage backend each template is its own "templates/<name>" key, written alone when it changes.
+        private final StorageBackend storage;
+        private final Map<String, Long> keyVersions = new HashMap<>();
+        TemplateManager() { this(new File(System.getProperty("user.home"), "weekly_routine_templates.json")); }
+        TemplateManager(File templatesFile) { this.templatesFile = templatesFile; this.shared = new SharedFile(templatesFile); this.storage = null; load(); }
+        TemplateManager(StorageBackend storage) { this.templatesFile = storage.watchFile(); this.shared = null; this.storage = storage; load(); }
+        File getFile() { return templatesFile; }
+        synchronized Set<String> getTemplateNames() { return new LinkedHashSet<>(dayTemplates.keySet()); }
+        synchronized void saveDayTemplate(String name, List<Task<String>> tasks) {
+            List<Task<String>> copy = new ArrayList<>(); for (Task<String> t : tasks) copy.add(cloneTask(t));
+            if (storage != null) store(name, copy); else update(m -> m.put(name, copy));
+        }
+        synchronized void deleteTemplate(String name) { if (storage != null) store(name, null); else update(m -> m.remove(name)); }
+        // Writes one template key (null tasks: delete); the latest write of a template wins, as with the file.
+        private void store(String name, List<Task<String>> tasks) {
+            try {
+                long v = storage.apply(Collections.singletonMap(Storage.TEMPLATES + name, tasks == null ? null : encode(name, tasks)), null);
+                if (tasks == null) { dayTemplates.remove(name); keyVersions.remove(Storage.TEMPLATES + name); }
+                else { dayTemplates.put(name, tasks); keyVersions.put(Storage.TEMPLATES + name, v); }
+            } catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Template save failed", ex); }
+        }
+        // Copies every template into a storage backend; returns how many.
+        synchronized int copyTo(StorageBackend to) throws IOException {
+            Map<String, byte[]> batch = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Task<String>>> e : dayTemplates.entrySet()) batch.put(Storage.TEMPLATES + e.getKey(), encode(e.getKey(), e.getValue()));
+            to.apply(batch, null);
+            return batch.size();
+        }
+        synchronized List<Task<String>> getTemplate(String name) {
+            List<Task<String>> src = dayTemplates.get(name); if (src == null) return null;
+            List<Task<String>> copy = new ArrayList<>(); for (Task<String> t : src) copy.add(cloneTask(t)); return copy;
+        }
+        private void load() {
+            if (storage != null) {
+                try { reloadStored(); } catch (Exception ex) { Log.PERSIST.log(Level.WARNING, "Template load failed", ex); }
+                return;
+            }
+            try {
+                SharedFile.Versioned<Map<String, List<Task<String>>>> v = shared.read(f -> f.exists() ? read(f) : null);
+                version = v.version;
+                if (v.value != null) { dayTemplates.clear(); dayTemplates.putAll(v.value); }
+            } catch (Exception ex) { Log.PERSIST.log(Level.WARNING, "Template load failed", ex); }
+        }
+        // Picks up edits made by another process; only templates whose content differs are replaced.
+        synchronized boolean reload() throws IOException {
+            if (storage != null) return reloadStored();
+            if (shared.version() == version) return false;
+            SharedFile.Versioned<Map<String, List<Task<String>>>> v = shared.read(f -> f.exists() ? read(f) : null);
+            version = v.version;
+            if (v.value == null) return false;
+            Map<String, List<Task<String>>> fresh = v.value;
+            boolean changed = !fresh.keySet().equals(dayTemplates.keySet());
+            dayTemplates.keySet().retainAll(fresh.keySet());
+            for (Map.Entry<String, List<Task<String>>> e : fresh.entrySet()) {
+                List<Task<String>> mine = dayTemplates.get(e.getKey());
+                if (mine != null && tasksJson(mine).equals(tasksJson(e.getValue()))) continue;
+                dayTemplates.put(e.getKey(), e.getValue()); changed = true;
+            }
+            if (changed) Log.PERSIST.info("Templates reloaded from " + templatesFile);
+            return changed;
+        }
+        // Applies the edit and commits the file; if another process committed first, its templates are read back
+        // and the edit is applied again on top of them.
+        private void update(Consumer<Map<String, List<Task<String>>>> edit) {
+            try {
+                for (int attempt = 1; attempt < SharedFile.MAX_ATTEMPTS; attempt++) {
+                    if (tryCommit(edit)) return;
+                    reload();
+                    SharedFile.backoff(attempt);
+                }
+                shared.exclusive(() -> { reload(); tryCommit(edit); });
+            } catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Template save failed", ex); }
+        }
+        private boolean tryCommit(Consumer<Map<String, List<Task<String>>>> edit) throws IOException {
+            edit.accept(dayTemplates);
+            File tmp = shared.newTemp();
+            write(tmp);
+            long v = shared.commit(version, tmp);
+            if (v < 0) return false;
+            version = v;
+            return true;
+        }
+        private static Map<String, List<Task<String>>> read(File file) throws IOException {
+            Map<String,Object> obj = JsonUtil.obj(JsonUtil.parse(JsonUtil.readString(file)));
+            Map<String, List<Task<String>>> out = new LinkedHashMap<>();
+            TaskValidator.Report report = new TaskValidator.Report(file.getName());
+            for (Object o : JsonUtil.arr(obj.get("templates"))) {
+                Map<String,Object> to = JsonUtil.obj(o);
+                List<Task<String>> tasks = new ArrayList<>();
+                for (Object tt : JsonUtil.arr(to.get("tasks"))) tasks.add(DataPersistence.taskFromJson(JsonUtil.obj(tt)));
+                TaskValidator.clean("template '" + to.get("name") + "'", tasks, report);
+                out.put(String.valueOf(to.get("name")), tasks);
+            }
+            if (!report.isClean()) Log.PERSIST.warning(report.details());
+            return out;
+        }
+        // Reads the template keys whose version differs from the one last seen, and drops the deleted ones.
+        private boolean reloadStored() throws IOException {
+            SortedMap<String, Long> current = storage.versions(Storage.TEMPLATES);
+            boolean changed = keyVersions.keySet().retainAll(current.keySet());
+            dayTemplates.keySet().removeIf(name -> !current.containsKey(Storage.TEMPLATES + name));
+            TaskValidator.Report report = new TaskValidator.Report("stored templates");
+            for (Map.Entry<String, Long> e : current.entrySet()) {
+                if (e.getValue().equals(keyVersions.get(e.getKey()))) continue;
+                StorageBackend.Entry v = storage.get(e.getKey());
+                if (v == null) continue;
+                Map<String,Object> to = JsonUtil.obj(JsonUtil.parse(v.text()));
+                List<Task<String>> tasks = new ArrayList<>();
+                for (Object tt : JsonUtil.arr(to.get("tasks"))) tasks.add(DataPersistence.taskFromJson(JsonUtil.obj(tt)));
+                TaskValidator.clean("template '" + to.get("name") + "'", tasks, report);
+                dayTemplates.put(e.getKey().substring(Storage.TEMPLATES.length()), tasks);
+                keyVersions.put(e.getKey(), v.version);
+                changed = true;
+            }
+            if (!report.isClean()) Log.PERSIST.warning(report.details());
+            return changed;
+        }
+        private static byte[] encode(String name, List<Task<String>> tasks) {
+            Map<String,Object> to = new LinkedHashMap<>();
+            to.put("name", name); to.put("tasks", tasksJson(tasks));
+            return Storage.utf8(JsonUtil.stringify(to));
+        }
+        private static List<Object> tasksJson(List<Task<String>> tasks) {
+            List<Object> tl = new ArrayList<>(); for (Task<String> t : tasks) tl.add(DataPersistence.taskToJson(t)); return tl;
+        }
+        private void write(File out) throws IOException {
+            List<Object> arr = new ArrayList<>();
+            for (Map.Entry<String,List<Task<String>>> e : dayTemplates.entrySet()) {
+                Map<String,Object> to = new LinkedHashMap<>();
+                to.put("name", e.getKey());
+                to.put("tasks", tasksJson(e.getValue())); arr.add(to);
+            }
+            Map<String,Object> root = new LinkedHashMap<>(); root.put("templates", arr);
+            JsonUtil.writeString(out, JsonUtil.stringify(root));
+        }
+    }
+}
+
+// ---------------- Tracking ----------------
+// Completion history in compact form: tasks are dictionary-encoded by their stable id (with the last name seen),
+// each (date, day) record keeps the roster of dictionary slots toggled there plus a bitset of the completed ones,
+// and a roster is written as a delta against the previous record for the same day. Also reads the older name-keyed
+// layouts; their entries get negative placeholder ids and are adopted by the real task on its next toggle.
+class HistoryChunk {
+    static final int FORMAT = 3;
+
+    static final class Record {
+        int[] roster = new int[0];
+        BitSet done = new BitSet();
+        int indexOf(int id) { for (int i = 0; i < roster.length; i++) if (roster[i] == id) return i; return -1; }
+    }
+
+    // dictionary: slot -> task id / name, task id -> slot
+    long[] taskIds = new long[16];
+    final List<String> names = new ArrayList<>();
+    private final LongIntMap slots = new LongIntMap();
+    // date -> day name -> record
+    final TreeMap<LocalDate, Map<String, Record>> days = new TreeMap<>();
+    boolean legacy;   // read from an older layout, not yet rewritten
+
+    int slot(long taskId, String name) {
+        int i = slots.get(taskId, -1);
+        if (i >= 0) { names.set(i, name); return i; }
+        i = names.size();
+        if (i == taskIds.length) taskIds = Arrays.copyOf(taskIds, i * 2);
+        taskIds[i] = taskId; names.add(name); slots.put(taskId, i);
+        return i;
+    }
+
+    // Returns -1 if the entry is new, otherwise its previous state (0/1).
+    int put(LocalDate date, String day, long taskId, String name, boolean completed) {
+        Record r = days.computeIfAbsent(date, k -> new LinkedHashMap<>()).computeIfAbsent(day, k -> new Record());
+        int slot = slot(taskId, name), i = r.indexOf(slot);
+        if (i < 0 && taskId > 0) {
+            // a same-named placeholder from name-keyed history becomes this task
+            for (int j = 0; j < r.roster.length && i < 0; j++) if (taskIds[r.roster[j]] < 0 && names.get(r.roster[j]).equals(name)) { i = j; r.roster[j] = slot; }
+        }
+        int previous = i < 0 ? -1 : r.done.get(i) ? 1 : 0;
+        if (i < 0) { i = r.roster.length; r.roster = Arrays.copyOf(r.roster, i + 1); r.roster[i] = slot; }
+        r.done.set(i, completed);
+        return previous;
+    }
+
+    void addAll(HistoryChunk from) { for (Map.Entry<LocalDate, Map<String, Record>> e : from.days.entrySet()) addAll(from, e.getKey(), e.getValue()); }
+
+    // Moves every record of the month into a new chunk.
+    HistoryChunk extract(YearMonth month) {
+        HistoryChunk out = copyOf(month);
+        days.subMap(month.atDay(1), true, month.atEndOfMonth(), true).clear();
+        return out;
+    }
+
+    // The month's records in a new chunk (with a dictionary of just the tasks they use).
+    HistoryChunk copyOf(YearMonth month) {
+        HistoryChunk out = new HistoryChunk();
+        for (Map.Entry<LocalDate, Map<String, Record>> e : days.subMap(month.atDay(1), true, month.atEndOfMonth(), true).entrySet()) out.addAll(this, e.getKey(), e.getValue());
+        return out;
+    }
+
+    // Adds the date's {completed, total} into the array; false if nothing was recorded that day.
+    boolean totals(LocalDate date, int[] into) {
+        Map<String, Record> perDay = days.get(date);
+        if (perDay == null) return false;
+        for (Record r : perDay.values()) { into[0] += r.done.cardinality(); into[1] += r.roster.length; }
+        return true;
+    }
+
+    private void addAll(HistoryChunk from, LocalDate date, Map<String, Record> perDay) {
+        for (Map.Entry<String, Record> e : perDay.entrySet()) {
+            Record r = e.getValue();
+            for (int i = 0; i < r.roster.length; i++) put(date, e.getKey(), from.taskIds[r.roster[i]], from.names.get(r.roster[i]), r.done.get(i));
+        }
+    }
+
+    void write(Appendable out) throws IOException {
+        Map<String, int[]> previous = new HashMap<>();
+        List<Object> records = new ArrayList<>();
+        for (Map.Entry<LocalDate, Map<String, Record>> e : days.entrySet()) {
+            for (Map.Entry<String, Record> de : e.getValue().entrySet()) {
+                Record r = de.getValue();
+                int[] base = previous.getOrDefault(de.getKey(), new int[0]);
+                // decoded roster order is: survivors of the previous roster, then the added ids
+                int[] order = new int[r.roster.length]; int n = 0;
+                List<Object> drop = new ArrayList<>(), add = new ArrayList<>();
+                for (int id : base) { if (r.indexOf(id) >= 0) order[n++] = id; else drop.add(id); }
+                for (int id : r.roster) if (!contains(base, id)) { order[n++] = id; add.add(id); }
+                BitSet bits = new BitSet(n);
+                for (int i = 0; i < n; i++) if (r.done.get(r.indexOf(order[i]))) bits.set(i);
+                previous.put(de.getKey(), order);
+                Map<String, Object> rec = new LinkedHashMap<>();
+                rec.put("date", e.getKey().toString()); rec.put("day", de.getKey());
+                if (!drop.isEmpty()) rec.put("drop", drop);
+                if (!add.isEmpty()) rec.put("add", add);
+                if (!bits.isEmpty()) rec.put("done", hex(bits.toByteArray()));
+                records.add(rec);
+            }
+        }
+        Map<String, Object> root = new LinkedHashMap<>();
+        List<Object> tasks = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) tasks.add(Arrays.asList(taskIds[i], names.get(i)));
+        root.put("format", FORMAT); root.put("tasks", tasks); root.put("days", records);
+        JsonUtil.write(root, out);
+    }
+
+    // Returns a chunk for either layout; the legacy one is recognised by "days" being an object.
+    static HistoryChunk read(Map<String, Object> root) {
+        HistoryChunk c = new HistoryChunk();
+        Object daysObj = root.get("days");
+        if (daysObj instanceof Map) {
+            c.legacy = true;
+            for (Map.Entry<String, Object> e : JsonUtil.obj(daysObj).entrySet()) {
+                LocalDate date = LocalDate.parse(e.getKey());
+                for (Map.Entry<String, Object> de : JsonUtil.obj(e.getValue()).entrySet())
+                    for (Map.Entry<String, Object> t : JsonUtil.obj(de.getValue()).entrySet())
+                        c.put(date, de.getKey(), placeholderId(t.getKey()), t.getKey(), Boolean.TRUE.equals(t.getValue()));
+            }
+            return c;
+        }
+        if (daysObj == null) return c;
+        if (root.containsKey("names")) {   // format 2: name dictionary only
+            c.legacy = true;
+            for (Object n : JsonUtil.arr(root.get("names"))) c.slot(placeholderId(String.valueOf(n)), String.valueOf(n));
+        } else {
+            for (Object o : JsonUtil.arr(root.get("tasks"))) { List<Object> t = JsonUtil.arr(o); c.slot(((Number) t.get(0)).longValue(), String.valueOf(t.get(1))); }
+        }
+        Map<String, int[]> previous = new HashMap<>();
+        for (Object o : JsonUtil.arr(daysObj)) {
+            Map<String, Object> rec = JsonUtil.obj(o);
+            String day = String.valueOf(rec.get("day"));
+            int[] base = previous.getOrDefault(day, new int[0]);
+            int[] drop = ints(rec.get("drop")), add = ints(rec.get("add"));
+            int[] roster = new int[base.length - drop.length + add.length]; int n = 0;
+            for (int id : base) if (!contains(drop, id)) roster[n++] = id;
+            for (int id : add) roster[n++] = id;
+            Record r = new Record();
+            r.roster = roster;
+            if (rec.containsKey("done")) r.done = BitSet.valueOf(unhex(String.valueOf(rec.get("done"))));
+            c.days.computeIfAbsent(LocalDate.parse(String.valueOf(rec.get("date"))), k -> new LinkedHashMap<>()).put(day, r);
+            previous.put(day, roster);
+        }
+        return c;
+    }
+
+    // Reads a history file, plain or GZIP-compressed (segments), streaming it into the parser.
+    static HistoryChunk read(File file) throws IOException {
+        try (Reader r = DataPersistence.openReader(file)) { return read(JsonUtil.obj(JsonUtil.parse(r))); }
+    }
+
+    // Written to a temporary file first, so a crash never leaves a half-written history behind.
+    void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        write(tmp, file.getName().endsWith(".gz"));
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void write(File out, boolean gzip) throws IOException {
+        OutputStream os = new FileOutputStream(out);
+        if (gzip) os = new GZIPOutputStream(os, 64 * 1024);
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 64 * 1024)) { write(w); }
+    }
+
+    // Negative, and the same for a name in every file, so rolled segments and the hot file agree.
+    static long placeholderId(String name) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) { h ^= name.charAt(i); h *= 0x100000001b3L; }
+        return -1L - (h & Long.MAX_VALUE);
+    }
+
+    private static int[] ints(Object list) {
+        if (list == null) return new int[0];
+        List<Object> l = JsonUtil.arr(list);
+        int[] out = new int[l.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ((Number) l.get(i)).intValue();
+        return out;
+    }
+
+    private static boolean contains(int[] a, int v) { for (int x : a) if (x == v) return true; return false; }
+
+    private static String hex(byte[] b) {
+        StringBuilder sb = new StringBuilder(b.length * 2);
+        for (byte x : b) sb.append(Character.forDigit((x >> 4) & 0xf, 16)).append(Character.forDigit(x & 0xf, 16));
+        return sb.toString();
+    }
+
+    private static byte[] unhex(String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        return b;
+    }
+}
+
+// Completion counts per day, week (keyed by its Monday), month and year, each split by category and priority.
+// Updated on every recorded toggle and persisted next to the history, so stats read one bucket instead of rescanning.
+class CompletionRollups {
+    enum Period { DAY, WEEK, MONTH, YEAR }
+    static final int FORMAT = 1;
+    // History recorded before rollups existed carries no category or priority.
+    static final String UNKNOWN = "Unknown";
+
+    static final class Bucket {
+        int completed, total;
+        final Map<String, int[]> byCategory = new TreeMap<>(), byPriority = new TreeMap<>();
+        Bucket copy() {
+            Bucket b = new Bucket(); b.completed = completed; b.total = total;
+            for (Map.Entry<String, int[]> e : byCategory.entrySet()) b.byCategory.put(e.getKey(), e.getValue().clone());
+            for (Map.Entry<String, int[]> e : byPriority.entrySet()) b.byPriority.put(e.getKey(), e.getValue().clone());
+            return b;
+        }
+    }
+
+    private static final Period[] PERIODS = Period.values();
+    // One primitive-keyed table per period, so lookups neither box nor build key strings.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final IntObjectMap<Bucket>[] buckets = new IntObjectMap[PERIODS.length];
+    { for (int i = 0; i < buckets.length; i++) buckets[i] = new IntObjectMap<>(); }
+
+    // DAY and WEEK: epoch day (of the Monday for weeks); MONTH: year * 12 + month - 1; YEAR: the year.
+    static int key(Period p, LocalDate d) {
+        switch (p) {
+            case DAY: return (int) d.toEpochDay();
+            case WEEK: { long e = d.toEpochDay(); return (int) (e - Math.floorMod(e + 3, 7)); }
+            case MONTH: return d.getYear() * 12 + d.getMonthValue() - 1;
+            default: return d.getYear();
+        }
+    }
+
+    // First day of the period a key stands for.
+    static LocalDate start(Period p, int key) {
+        switch (p) {
+            case DAY: case WEEK: return LocalDate.ofEpochDay(key);
+            case MONTH: return LocalDate.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1, 1);
+            default: return LocalDate.of(key, 1, 1);
+        }
+    }
+
+    // File keys stay readable: D2026-10-19, W2026-10-19, M2026-10, Y2026.
+    static String fileKey(Period p, int key) {
+        switch (p) {
+            case DAY: return "D" + LocalDate.ofEpochDay(key);
+            case WEEK: return "W" + LocalDate.ofEpochDay(key);
+            case MONTH: return "M" + YearMonth.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1);
+            default: return "Y" + key;
+        }
+    }
+
+    private static int parseKey(Period p, String s) {
+        switch (p) {
+            case DAY: case WEEK: return (int) LocalDate.parse(s).toEpochDay();
+            case MONTH: { YearMonth ym = YearMonth.parse(s); return ym.getYear() * 12 + ym.getMonthValue() - 1; }
+            default: return Integer.parseInt(s);
+        }
+    }
+
+    // previous is -1 for a newly recorded entry, else its earlier state (0/1). A flip is credited to the category and
+    // priority given now, which are the task's current ones.
+    void apply(LocalDate date, String category, String priority, int previous, boolean completed) {
+        add(date, category, priority, (completed ? 1 : 0) - (previous == 1 ? 1 : 0), previous < 0 ? 1 : 0);
+    }
+
+    void add(LocalDate date, String category, String priority, int dDone, int dTotal) {
+        if (dTotal == 0 && dDone == 0) return;
+        String cat = category == null ? UNKNOWN : category, prio = priority == null ? UNKNOWN : priority;
+        for (Period p : PERIODS) {
+            IntObjectMap<Bucket> table = buckets[p.ordinal()];
+            int key = key(p, date);
+            Bucket b = table.get(key);
+            if (b == null) { b = new Bucket(); table.put(key, b); }
+            b.completed += dDone; b.total += dTotal;
+            int[] c = b.byCategory.computeIfAbsent(cat, k -> new int[2]); c[0] += dDone; c[1] += dTotal;
+            int[] q = b.byPriority.computeIfAbsent(prio, k -> new int[2]); q[0] += dDone; q[1] += dTotal;
+        }
+    }
+
+    // The live bucket, or null if nothing was recorded in that period.
+    Bucket get(Period p, LocalDate d) { return buckets[p.ordinal()].get(key(p, d)); }
+    // Day bucket by epoch day, for walks over many days without creating dates.
+    Bucket day(int epochDay) { return buckets[Period.DAY.ordinal()].get(epochDay); }
+    Bucket get(Period p, int key) { return buckets[p.ordinal()].get(key); }
+    void put(Period p, int key, Bucket b) { buckets[p.ordinal()].put(key, b); }
+    // By file key, as the rollups file and storage keys name buckets.
+    void put(String fileKey, Bucket b) {
+        Period p = PERIODS["DWMY".indexOf(fileKey.charAt(0))];
+        put(p, parseKey(p, fileKey.substring(1)), b);
+    }
+
+    // The period's bucket keys in ascending (chronological) order.
+    int[] keys(Period p) { int[] k = buckets[p.ordinal()].keys(); Arrays.sort(k); return k; }
+
+    // Rebuilds the counts from raw history; categories and priorities are unknown there.
+    static CompletionRollups rebuild(Collection<HistoryChunk> chunks) {
+        CompletionRollups r = new CompletionRollups();
+        for (HistoryChunk c : chunks)
+            for (Map.Entry<LocalDate, Map<String, HistoryChunk.Record>> e : c.days.entrySet())
+                for (HistoryChunk.Record rec : e.getValue().values()) r.add(e.getKey(), null, null, rec.done.cardinality(), rec.roster.length);
+        return r;
+    }
+
+    // {"format":1,"buckets":{"M2026-10":[completed,total,{"Work":[c,t]},{"High":[c,t]}],...}}
+    void write(File out) throws IOException {
+        Map<String, Object> all = new TreeMap<>();
+        for (Period p : PERIODS) {
+            IntObjectMap<Bucket> table = buckets[p.ordinal()];
+            for (int k : table.keys()) all.put(fileKey(p, k), toJson(table.get(k)));
+        }
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("format", FORMAT); root.put("buckets", all);
+        try (Writer w = JsonUtil.newWriter(out)) { JsonUtil.write(root, w); }
+    }
+
+    static CompletionRollups load(File file) throws IOException {
+        CompletionRollups r = new CompletionRollups();
+        Map<String, Object> root = JsonUtil.obj(JsonUtil.parse(JsonUtil.readString(file)));
+        for (Map.Entry<String, Object> e : JsonUtil.obj(root.get("buckets")).entrySet()) r.put(e.getKey(), fromJson(e.getValue()));
+        return r;
+    }
+
+    // [completed, total, {category: [c, t]}, {priority: [c, t]}]
+    static List<Object> toJson(Bucket b) { return Arrays.asList(b.completed, b.total, pairs(b.byCategory), pairs(b.byPriority)); }
+
+    static Bucket fromJson(Object o) {
+        List<Object> v = JsonUtil.arr(o);
+        Bucket b = new Bucket();
+        b.completed = ((Number) v.get(0)).intValue(); b.total = ((Number) v.get(1)).intValue();
+        readPairs(v.get(2), b.byCategory); readPairs(v.get(3), b.byPriority);
+        return b;
+    }
+
+    private static Map<String, Object> pairs(Map<String, int[]> m) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (Map.Entry<String, int[]> e : m.entrySet()) out.put(e.getKey(), Arrays.asList(e.getValue()[0], e.getValue()[1]));
+        return out;
+    }
+
+    private static void readPairs(Object o, Map<String, int[]> into) {
+        for (Map.Entry<String, Object> e : JsonUtil.obj(o).entrySet()) {
+            List<Object> p = JsonUtil.arr(e.getValue());
+            into.put(e.getKey(), new int[] {((Number) p.get(0)).intValue(), ((Number) p.get(1)).intValue()});
+        }
+    }
+}
+
+// The current and previous month stay in the history file; older months are rolled into per-month GZIP segments
+// beside it (weekly_routine_history-2026-01.json.gz) and deleted after weekly.history.retentionMonths (default 24,
+// 0 keeps everything). Rollups live in weekly_routine_history-rollups.json and are never expired.
+// With a storage backend there is no hot file or segments: each month is a "history/2026-10" key (a GZIP-compressed
+// chunk, like a segment) and each rollup bucket a "rollups/<key>" one, so a toggle writes its month and four buckets.
+class TaskCompletionTracking {
+    private final File historyFile;
+    private final int retentionMonths;
+    private final SharedFile shared;   // one version covers the hot file and the rollups
+    private HistoryChunk hot;
+    private CompletionRollups rollups;
+    private long loadedVersion;
+    private final StorageBackend storage;
+    private final Map<String, Long> rollupVersions = new HashMap<>();
+    private long storedVersion = -1;
+
+    TaskCompletionTracking() { this(new File(System.getProperty("user.home"), "weekly_routine_history.json")); }
+    TaskCompletionTracking(File historyFile) { this(historyFile, Integer.getInteger("weekly.history.retentionMonths", 24)); }
+    TaskCompletionTracking(File historyFile, int retentionMonths) {
+        this.historyFile = historyFile; this.retentionMonths = retentionMonths; this.shared = new SharedFile(historyFile); this.storage = null;
+    }
+    TaskCompletionTracking(StorageBackend storage) { this(storage, Integer.getInteger("weekly.history.retentionMonths", 24)); }
+    TaskCompletionTracking(StorageBackend storage, int retentionMonths) {
+        this.historyFile = storage.watchFile(); this.retentionMonths = retentionMonths; this.shared = null; this.storage = storage;
+    }
+
+    public synchronized void recordToggle(String uiDayName, long taskId, String taskName, String category, String priority, boolean completed, LocalDate date) {
+        try {
+            if (storage != null) { storedToggle(uiDayName, taskId, taskName, category, priority, completed, date); return; }
+            for (int attempt = 1; attempt < SharedFile.MAX_ATTEMPTS; attempt++) {
+                if (applyToggle(uiDayName, taskId, taskName, category, priority, completed, date)) return;
+                hot = null; rollups = null;   // another instance committed first: re-read its history and apply the toggle on top
+                SharedFile.backoff(attempt);
+            }
+            shared.exclusive(() -> { hot = null; rollups = null; applyToggle(uiDayName, taskId, taskName, category, priority, completed, date); });
+        } catch (IOException ex) { Log.TRACK.log(Level.WARNING, "recordToggle failed", ex); }
+    }
+    private boolean applyToggle(String uiDayName, long taskId, String taskName, String category, String priority, boolean completed, LocalDate date) throws IOException {
+        ensureLoaded();
+        int previous = hot.put(date, uiDayName, taskId, taskName, completed);
+        rollups.apply(date, category, priority, previous, completed);
+        roll();
+        return commit();
+    }
+    public int dailyCompletionPercent(DaySchedule<String> schedule) {
+        List<Task<String>> tasks = schedule.getTasks(); if (tasks.isEmpty()) return 0;
+        int done = 0; for (Task<String> t : tasks) if (t.isCompleted()) done++; return (int)Math.round(100.0*done/tasks.size());
+    }
+    public synchronized Stats computeStats() {
+        try {
+            ensureLoaded();
+            CompletionRollups r = rollups;
+            LocalDate today = LocalDate.now();
+            CompletionRollups.Bucket w = r.get(CompletionRollups.Period.WEEK, today), m = r.get(CompletionRollups.Period.MONTH, today), y = r.get(CompletionRollups.Period.YEAR, today);
+            return new Stats(w == null ? 0 : w.completed, w == null ? 0 : w.total, m == null ? 0 : m.completed, m == null ? 0 : m.total,
+                    y == null ? 0 : y.completed, y == null ? 0 : y.total, computeStreak(r));
+        } catch (Exception ex) {
+            Log.TRACK.log(Level.WARNING, "computeStats failed", ex);
+            return new Stats(0,0,0,0,0,0,0);
+        }
+    }
+    // A copy of the rollup bucket for the period containing the date, or null if nothing was recorded then.
+    public synchronized CompletionRollups.Bucket rollup(CompletionRollups.Period period, LocalDate date) {
+        try { ensureLoaded(); CompletionRollups.Bucket b = rollups.get(period, date); return b == null ? null : b.copy(); }
+        catch (IOException ex) { Log.TRACK.log(Level.WARNING, "rollup failed", ex); return null; }
+    }
+    // Sorted bucket keys of a period; with CompletionRollups.start and rollup() a report walks them one copy at a time.
+    public synchronized int[] rollupKeys(CompletionRollups.Period period) {
+        try { ensureLoaded(); return rollups.keys(period); }
+        catch (IOException ex) { Log.TRACK.log(Level.WARNING, "rollupKeys failed", ex); return new int[0]; }
+    }
+    interface DayVisitor { void day(LocalDate date, int completed, int total) throws IOException; }
+    // Per-date totals in date order over the segments and the history file (either bound may be null). Segments are
+    // read one month at a time and outside the lock, so a walk over years holds one month and never stalls toggles.
+    public void forEachDay(LocalDate from, LocalDate to, DayVisitor visitor) throws IOException {
+        if (storage != null) { storedDays(from, to, visitor); return; }
+        TreeMap<LocalDate, int[]> recent = hotTotals();
+        YearMonth first = from == null ? null : YearMonth.from(from), last = to == null ? null : YearMonth.from(to);
+        int[] counts = new int[2];
+        for (Map.Entry<YearMonth, File> e : segmentFiles().entrySet()) {
+            if (first != null && e.getKey().isBefore(first) || last != null && e.getKey().isAfter(last)) continue;
+            HistoryChunk month;
+            try { month = HistoryChunk.read(e.getValue()); } catch (FileNotFoundException expired) { continue; }
+            for (LocalDate d : month.days.keySet()) {
+                visitAll(recent.headMap(d, false), from, to, visitor);
+                counts[0] = 0; counts[1] = 0; month.totals(d, counts);
+                int[] more = recent.remove(d);   // a day rolled while another instance still had it in its hot file
+                if (more != null) { counts[0] += more[0]; counts[1] += more[1]; }
+                visit(d, counts, from, to, visitor);
+            }
+        }
+        visitAll(recent, from, to, visitor);
+    }
+    private static void visitAll(SortedMap<LocalDate, int[]> days, LocalDate from, LocalDate to, DayVisitor visitor) throws IOException {
+        for (Map.Entry<LocalDate, int[]> e : days.entrySet()) visit(e.getKey(), e.getValue(), from, to, visitor);
+        days.clear();
+    }
+    private static void visit(LocalDate d, int[] counts, LocalDate from, LocalDate to, DayVisitor visitor) throws IOException {
+        if ((from == null || !d.isBefore(from)) && (to == null || !d.isAfter(to))) visitor.day(d, counts[0], counts[1]);
+    }
+    // Totals of the hot file's days (about two months), taken under the lock so toggles can continue meanwhile.
+    private synchronized TreeMap<LocalDate, int[]> hotTotals() throws IOException {
+        HistoryChunk c = hot != null ? hot : historyFile.exists() ? HistoryChunk.read(historyFile) : new HistoryChunk();
+        TreeMap<LocalDate, int[]> out = new TreeMap<>();
+        for (LocalDate d : c.days.keySet()) { int[] t = new int[2]; c.totals(d, t); out.put(d, t); }
+        return out;
+    }
+    private int computeStreak(CompletionRollups r) {
+        int streak=0; int day = (int) LocalDate.now().toEpochDay();
+        while (true) {
+            CompletionRollups.Bucket b = r.day(day);
+            if (b == null || b.total==0) break;
+            int pct = (int)Math.round(100.0*b.completed/b.total);
+            if (pct >= 80) { streak++; day--; } else break;
+        }
+        return streak;
+    }
+    public static class Stats {
+        public final int weekCompleted, weekTotal, monthCompleted, monthTotal, yearCompleted, yearTotal, streakDays;
+        public Stats(int wc,int wt,int mc,int mt,int yc,int yt,int s){ weekCompleted=wc; weekTotal=wt; monthCompleted=mc; monthTotal=mt; yearCompleted=yc; yearTotal=yt; streakDays=s; }
+    }
+    // Whole-history totals across the history file and its segments; read-only, nothing is migrated or rolled.
+    public synchronized Summary summarize() throws IOException {
+        if (storage != null) {
+            LocalDate[] range = new LocalDate[2]; int[] n = new int[3];
+            storedDays(null, null, (d, c, t) -> { if (range[0] == null) range[0] = d; range[1] = d; n[0]++; n[1] += c; n[2] += t; });
+            return new Summary(range[0] == null ? null : range[0].toString(), range[1] == null ? null : range[1].toString(), n[0], n[1], n[2]);
+        }
+        List<HistoryChunk> chunks = new ArrayList<>();
+        if (hot != null) chunks.add(hot); else if (historyFile.exists()) chunks.add(HistoryChunk.read(historyFile));
+        for (File f : segmentFiles().values()) chunks.add(HistoryChunk.read(f));
+        LocalDate first = null, last = null; int dayCount = 0; int[] counts = new int[2];
+        for (HistoryChunk c : chunks) {
+            if (c.days.isEmpty()) continue;
+            if (first == null || c.days.firstKey().isBefore(first)) first = c.days.firstKey();
+            if (last == null || c.days.lastKey().isAfter(last)) last = c.days.lastKey();
+            for (LocalDate d : c.days.keySet()) { dayCount++; c.totals(d, counts); }
+        }
+        return new Summary(first == null ? null : first.toString(), last == null ? null : last.toString(), dayCount, counts[0], counts[1]);
+    }
+    public static class Summary {
+        public final String firstDate, lastDate; public final int days, completed, total;
+        public Summary(String f,String l,int d,int c,int t){ firstDate=f; lastDate=l; days=d; completed=c; total=t; }
+    }
+    File getHistoryFile() { return historyFile; }
+    File getRollupsFile() { return rollupsFile(); }
+    // Drops the cached history and rollups if another process committed since we loaded them; both reload on next use.
+    public synchronized boolean reloadIfChanged() {
+        if (storage != null) {
+            if (rollups == null) return false;
+            try { return refreshStored(); }
+            catch (IOException ex) { Log.TRACK.log(Level.WARNING, "History reload failed", ex); return false; }
+        }
+        if (hot == null) return false;
+        try { if (shared.version() == loadedVersion) return false; }
+        catch (IOException ex) { Log.TRACK.log(Level.WARNING, "History version check failed", ex); return false; }
+        Log.TRACK.info("History changed on disk, reloading");
+        hot = null; rollups = null;
+        return true;
+    }
+    private static final class Loaded {
+        final HistoryChunk hot; final CompletionRollups rollups;
+        Loaded(HistoryChunk hot, CompletionRollups rollups) { this.hot = hot; this.rollups = rollups; }
+    }
+    // Loads the hot file and rollups at one version. A legacy file is converted, old months are rolled and missing
+    // rollups are rebuilt from the full history (hot file and segments); such changes are committed right away.
+    private void ensureLoaded() throws IOException {
+        if (storage != null) {
+            boolean first = rollups == null;
+            refreshStored();
+            if (first) expireStored();
+            return;
+        }
+        for (int attempt = 1; hot == null; attempt++) {
+            File rf = rollupsFile();
+            SharedFile.Versioned<Loaded> v = shared.read(f -> new Loaded(f.exists() ? HistoryChunk.read(f) : new HistoryChunk(), rf.exists() ? CompletionRollups.load(rf) : null));
+            hot = v.value.hot; rollups = v.value.rollups; loadedVersion = v.version;
+            boolean dirty = hot.legacy;
+            dirty |= roll();
+            if (rollups == null) {
+                List<HistoryChunk> chunks = new ArrayList<>();
+                chunks.add(hot);
+                for (File seg : segmentFiles().values()) chunks.add(HistoryChunk.read(seg));
+                rollups = CompletionRollups.rebuild(chunks);
+                dirty |= historyFile.exists();
+            }
+            if (!dirty || commit()) return;
+            hot = null; rollups = null;
+            if (attempt == SharedFile.MAX_ATTEMPTS) shared.exclusive(this::ensureLoaded);
+            else SharedFile.backoff(attempt);
+        }
+    }
+    // Writes the hot file and rollups as one versioned commit; false if another writer committed first.
+    private boolean commit() throws IOException {
+        File rf = rollupsFile(), rt = shared.newTemp(rf), ht = shared.newTemp();
+        rollups.write(rt); hot.write(ht, false);
+        Map<File, File> prepared = new LinkedHashMap<>();
+        prepared.put(rt, rf); prepared.put(ht, historyFile);
+        long v = shared.commit(loadedVersion, prepared);
+        if (v < 0) return false;
+        loadedVersion = v;
+        return true;
+    }
+    // Copies the history, one key per month, and the rollups into a storage backend; returns the number of keys.
+    synchronized int copyTo(StorageBackend to) throws IOException {
+        ensureLoaded();
+        int keys = 0;
+        for (File f : segmentFiles().values()) keys += copyDays(HistoryChunk.read(f), to);
+        keys += copyDays(hot, to);
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        for (CompletionRollups.Period p : CompletionRollups.Period.values())
+            for (int k : rollups.keys(p)) batch.put(Storage.ROLLUPS + CompletionRollups.fileKey(p, k), Storage.utf8(JsonUtil.stringify(CompletionRollups.toJson(rollups.get(p, k)))));
+        to.apply(batch, null);
+        return keys + batch.size();
+    }
+    private static int copyDays(HistoryChunk chunk, StorageBackend to) throws IOException {
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        for (LocalDate d : chunk.days.keySet()) {
+            String key = Storage.HISTORY + YearMonth.from(d);
+            if (!batch.containsKey(key)) batch.put(key, encode(chunk.copyOf(YearMonth.from(d))));
+        }
+        to.apply(batch, null);
+        return batch.size();
+    }
+    // Values are compressed like the segments; plain JSON values are read as well.
+    private static byte[] encode(HistoryChunk c) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer w = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) { c.write(w); }
+        return bytes.toByteArray();
+    }
+    private static HistoryChunk decode(StorageBackend.Entry e) throws IOException {
+        InputStream in = new ByteArrayInputStream(e.value);
+        if (e.value.length > 1 && e.value[0] == (byte) 0x1f && e.value[1] == (byte) 0x8b) in = new GZIPInputStream(in);
+        try (Reader r = new InputStreamReader(in, StandardCharsets.UTF_8)) { return HistoryChunk.read(JsonUtil.obj(JsonUtil.parse(r))); }
+    }
+    // The month's key and the date's four rollup buckets in one batch, each expected at the version last seen; if another
+    // writer got there first its buckets are read back and the toggle is applied again on top.
+    private void storedToggle(String day, long taskId, String name, String category, String priority, boolean completed, LocalDate date) throws IOException {
+        String hk = Storage.HISTORY + YearMonth.from(date);
+        for (int attempt = 1; ; attempt++) {
+            ensureLoaded();
+            StorageBackend.Entry e = storage.get(hk);
+            HistoryChunk c = e == null ? new HistoryChunk() : decode(e);
+            int previous = c.put(date, day, taskId, name, completed);
+            CompletionRollups next = new CompletionRollups();
+            for (CompletionRollups.Period p : CompletionRollups.Period.values()) {
+                CompletionRollups.Bucket b = rollups.get(p, date);
+                if (b != null) next.put(p, CompletionRollups.key(p, date), b.copy());
+            }
+            next.apply(date, category, priority, previous, completed);
+            Map<String, byte[]> batch = new LinkedHashMap<>(); Map<String, Long> expected = new HashMap<>();
+            batch.put(hk, encode(c)); expected.put(hk, e == null ? 0L : e.version);
+            for (CompletionRollups.Period p : CompletionRollups.Period.values()) {
+                CompletionRollups.Bucket b = next.get(p, date);
+                if (b == null) continue;
+                String rk = Storage.ROLLUPS + CompletionRollups.fileKey(p, CompletionRollups.key(p, date));
+                batch.put(rk, Storage.utf8(JsonUtil.stringify(CompletionRollups.toJson(b)))); expected.put(rk, rollupVersions.getOrDefault(rk, 0L));
+            }
+            long v = storage.apply(batch, expected);
+            if (v >= 0) {
+                for (CompletionRollups.Period p : CompletionRollups.Period.values()) {
+                    CompletionRollups.Bucket b = next.get(p, date);
+                    if (b == null) continue;
+                    rollups.put(p, CompletionRollups.key(p, date), b);
+                    rollupVersions.put(Storage.ROLLUPS + CompletionRollups.fileKey(p, CompletionRollups.key(p, date)), v);
+                }
+                if (v == storedVersion + 1) storedVersion = v;   // nobody else wrote in between
+                return;
+            }
+            if (attempt == SharedFile.MAX_ATTEMPTS) throw new IOException("History kept changing during toggle");
+            SharedFile.backoff(attempt);
+        }
+    }
+    // Reads the rollup buckets whose version moved since they were last seen; true if any did.
+    private boolean refreshStored() throws IOException {
+        long v = storage.version();
+        if (rollups != null && v == storedVersion) return false;
+        if (rollups == null) rollups = new CompletionRollups();
+        boolean changed = false;
+        for (Map.Entry<String, Long> e : storage.versions(Storage.ROLLUPS).entrySet()) {
+            if (e.getValue().equals(rollupVersions.get(e.getKey()))) continue;
+            StorageBackend.Entry b = storage.get(e.getKey());
+            if (b == null) continue;
+            rollups.put(e.getKey().substring(Storage.ROLLUPS.length()), CompletionRollups.fromJson(JsonUtil.parse(b.text())));
+            rollupVersions.put(e.getKey(), b.version);
+            changed = true;
+        }
+        storedVersion = v;
+        return changed;
+    }
+    private void expireStored() throws IOException {
+        if (retentionMonths <= 0) return;
+        String cutoff = Storage.HISTORY + YearMonth.now().minusMonths(retentionMonths);
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        for (String k : storage.versions(Storage.HISTORY).headMap(cutoff).keySet()) batch.put(k, null);
+        if (batch.isEmpty()) return;
+        storage.apply(batch, null);
+        Log.TRACK.info("Deleted " + batch.size() + " expired history month(s)");
+    }
+    // Month keys sort chronologically, so the walk is in date order and holds one month at a time.
+    private void storedDays(LocalDate from, LocalDate to, DayVisitor visitor) throws IOException {
+        SortedMap<String, Long> keys = storage.versions(Storage.HISTORY);
+        if (from != null) keys = keys.tailMap(Storage.HISTORY + YearMonth.from(from));
+        if (to != null) keys = keys.headMap(Storage.HISTORY + YearMonth.from(to).plusMonths(1));
+        int[] counts = new int[2];
+        for (String k : keys.keySet()) {
+            StorageBackend.Entry e = storage.get(k);
+            if (e == null) continue;   // expired meanwhile
+            HistoryChunk c = decode(e);
+            for (LocalDate d : c.days.keySet()) { counts[0] = 0; counts[1] = 0; c.totals(d, counts); visit(d, counts, from, to, visitor); }
+        }
+    }
+    private File rollupsFile() { return new File(historyFile.getAbsoluteFile().getParentFile(), segmentPrefix() + "rollups.json"); }
+    // Moves months older than the previous one into their segments and applies retention; true if the hot set changed.
+    private boolean roll() throws IOException {
+        YearMonth hotFrom = YearMonth.now().minusMonths(1);
+        if (hot.days.isEmpty() || !YearMonth.from(hot.days.firstKey()).isBefore(hotFrom)) { expire(); return false; }
+        while (!hot.days.isEmpty() && YearMonth.from(hot.days.firstKey()).isBefore(hotFrom)) {
+            YearMonth ym = YearMonth.from(hot.days.firstKey());
+            HistoryChunk month = hot.extract(ym);
+            File f = segmentFile(ym);
+            if (f.exists()) { HistoryChunk merged = HistoryChunk.read(f); merged.addAll(month); month = merged; }
+            month.save(f);
+            Log.TRACK.info("Rolled " + ym + " history into " + f.getName());
+        }
+        HistoryChunk compacted = new HistoryChunk(); compacted.addAll(hot); hot = compacted;   // drops names only old months used
+        expire();
+        return true;
+    }
+    private void expire() {
+        if (retentionMonths <= 0) return;
+        YearMonth cutoff = YearMonth.now().minusMonths(retentionMonths);
+        for (Map.Entry<YearMonth, File> e : segmentFiles().entrySet())
+            if (e.getKey().isBefore(cutoff) && e.getValue().delete()) Log.TRACK.info("Deleted expired history " + e.getValue().getName());
+    }
+    private String segmentPrefix() {
+        String n = historyFile.getName();
+        return (n.endsWith(".json") ? n.substring(0, n.length() - 5) : n) + "-";
+    }
+    private File segmentFile(YearMonth ym) { return new File(historyFile.getAbsoluteFile().getParentFile(), segmentPrefix() + ym + ".json.gz"); }
+    private SortedMap<YearMonth, File> segmentFiles() {
+        SortedMap<YearMonth, File> out = new TreeMap<>();
+        String prefix = segmentPrefix();
+        File[] files = historyFile.getAbsoluteFile().getParentFile().listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".json.gz"));
+        if (files != null) for (File f : files) {
+            String ym = f.getName().substring(prefix.length(), f.getName().length() - ".json.gz".length());
+            try { out.put(YearMonth.parse(ym), f); } catch (java.time.format.DateTimeParseException ignore) {}
+        }
+        return out;
+    }
+}
+
+// ---------------- Reports ----------------
+// Completion reports written row by row through a buffered writer: daily totals streamed from the history one month
+// segment at a time, week/month/year rollups split by category and priority, and the current week's schedule.
+// Nothing is collected before it is written, so a report over years of history needs no more memory than one month.
+class RoutineReport {
+    enum Format { CSV, HTML }
+
+    // Tables one after another; CSV gives each its own file, HTML puts them all on one page.
+    interface Sink extends Closeable {
+        void table(String name, String title, String... columns) throws IOException;
+        void row(Object... cells) throws IOException;
+    }
+
+    private static final CompletionRollups.Period[] PERIODS = {CompletionRollups.Period.WEEK, CompletionRollups.Period.MONTH, CompletionRollups.Period.YEAR};
+
+    private final TaskCompletionTracking tracking;
+    private final Map<String, DaySchedule<String>> week;
+    private final LocalDate from, to;
+    private long rows;
+
+    // Either source may be null to leave its tables out; from/to (inclusive, null: open) limit the history tables.
+    RoutineReport(TaskCompletionTracking tracking, Map<String, DaySchedule<String>> week, LocalDate from, LocalDate to) {
+        this.tracking = tracking; this.week = week; this.from = from; this.to = to;
+    }
+
+    // Writes <base>-days.csv, <base>-periods.csv and <base>-week.csv, or <base>.html, into dir; returns the files.
+    List<File> write(Format format, File dir, String base) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        List<File> written = new ArrayList<>();
+        try (Sink sink = format == Format.CSV ? new CsvSink(dir, base, written) : new HtmlSink(new File(dir, base + ".html"), base, written)) { write(sink); }
+        return written;
+    }
+
+    void write(Sink sink) throws IOException {
+        if (tracking != null) { days(sink); periods(sink); }
+        if (week != null) week(sink);
+    }
+
+    long rows() { return rows; }
+
+    private void days(Sink sink) throws IOException {
+        sink.table("days", "Daily completion", "Date", "Weekday", "Completed", "Total", "Percent");
+        tracking.forEachDay(from, to, (date, completed, total) ->
+                row(sink, date, date.getDayOfWeek().getDisplayName(TextStyle.FULL, Locale.ENGLISH), completed, total, percent(completed, total)));
+    }
+
+    // Periods overlapping from/to are reported whole.
+    private void periods(Sink sink) throws IOException {
+        sink.table("periods", "Completion by period, category and priority", "Period", "Start", "Dimension", "Value", "Completed", "Total", "Percent");
+        for (CompletionRollups.Period p : PERIODS) {
+            String period = p.name().toLowerCase(Locale.ROOT);
+            for (int key : tracking.rollupKeys(p)) {
+                LocalDate start = CompletionRollups.start(p, key);
+                if (to != null && start.isAfter(to) || from != null && end(p, start).isBefore(from)) continue;
+                CompletionRollups.Bucket b = tracking.rollup(p, start);
+                if (b == null) continue;
+                row(sink, period, start, "All", "", b.completed, b.total, percent(b.completed, b.total));
+                for (Map.Entry<String, int[]> e : b.byCategory.entrySet()) row(sink, period, start, "Category", e.getKey(), e.getValue()[0], e.getValue()[1], percent(e.getValue()[0], e.getValue()[1]));
+                for (Map.Entry<String, int[]> e : b.byPriority.entrySet()) row(sink, period, start, "Priority", e.getKey(), e.getValue()[0], e.getValue()[1], percent(e.getValue()[0], e.getValue()[1]));
+            }
+        }
+    }
+
+    private void week(Sink sink) throws IOException {
+        sink.table("week", "Current week", "Day", "Dimension", "Value", "Completed", "Total", "Percent");
+        Map<String, int[]> byCategory = new TreeMap<>(), byPriority = new TreeMap<>();
+        for (Map.Entry<String, DaySchedule<String>> e : week.entrySet()) {
+            byCategory.clear(); byPriority.clear();
+            int completed = 0, total = 0;
+            for (Task<String> t : e.getValue().getTasks()) {
+                int done = t.isCompleted() ? 1 : 0;
+                completed += done; total++;
+                count(byCategory, t.getCategory(), done); count(byPriority, t.getPriority(), done);
+            }
+            row(sink, e.getKey(), "All", "", completed, total, percent(completed, total));
+            for (Map.Entry<String, int[]> c : byCategory.entrySet()) row(sink, e.getKey(), "Category", c.getKey(), c.getValue()[0], c.getValue()[1], percent(c.getValue()[0], c.getValue()[1]));
+            for (Map.Entry<String, int[]> c : byPriority.entrySet()) row(sink, e.getKey(), "Priority", c.getKey(), c.getValue()[0], c.getValue()[1], percent(c.getValue()[0], c.getValue()[1]));
+        }
+    }
+
+    private void row(Sink sink, Object... cells) throws IOException { sink.row(cells); rows++; }
+
+    private static void count(Map<String, int[]> into, String key, int done) {
+        int[] c = into.computeIfAbsent(key == null ? CompletionRollups.UNKNOWN : key, k -> new int[2]);
+        c[0] += done; c[1]++;
+    }
+
+    private static int percent(int completed, int total) { return total == 0 ? 0 : (int) Math.round(100.0 * completed / total); }
+
+    private static LocalDate end(CompletionRollups.Period p, LocalDate start) {
+        switch (p) {
+            case WEEK: return start.plusDays(6);
+            case MONTH: return start.with(TemporalAdjusters.lastDayOfMonth());
+            case YEAR: return start.with(TemporalAdjusters.lastDayOfYear());
+            default: return start;
+        }
+    }
+
+    // RFC 4180 fields: quoted only when they hold a comma, quote or line break.
+    static final class CsvSink implements Sink {
+        private final File dir; private final String base; private final List<File> written;
+        private Writer out;
+        CsvSink(File dir, String base, List<File> written) { this.dir = dir; this.base = base; this.written = written; }
+
+        public void table(String name, String title, String... columns) throws IOException {
+            close();
+            File f = new File(dir, base + "-" + name + ".csv");
+            out = JsonUtil.newWriter(f); written.add(f);
+            row((Object[]) columns);
+        }
+        public void row(Object... cells) throws IOException {
+            for (int i = 0; i < cells.length; i++) {
+                if (i > 0) out.write(',');
+                String s = String.valueOf(cells[i]);
+                if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) { out.write(s); continue; }
+                out.write('"'); out.write(s.replace("\"", "\"\"")); out.write('"');
+            }
+            out.write('\n');
+        }
+        public void close() throws IOException { if (out != null) { out.close(); out = null; } }
+    }
+
+    // A self-contained page; numbers are right-aligned and percentages carry a small bar.
+    static final class HtmlSink implements Sink {
+        private final Writer out;
+        private String[] columns = new String[0];
+        private boolean open;
+
+        HtmlSink(File file, String title, List<File> written) throws IOException {
+            out = JsonUtil.newWriter(file); written.add(file);
+            out.write("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>"); out.write(esc(title)); out.write("</title>\n<style>"
+                    + "body{font:14px sans-serif;margin:24px}table{border-collapse:collapse;margin-bottom:24px}"
+                    + "th,td{border:1px solid #ccc;padding:3px 8px}th{background:#eee;text-align:left}td.n{text-align:right}"
+                    + ".bar{display:inline-block;height:8px;background:#4a8;margin-right:6px;vertical-align:middle}</style></head><body>\n<h1>");
+            out.write(esc(title)); out.write("</h1>\n<p>Generated "); out.write(esc(LocalDateTime.now().withNano(0).toString())); out.write("</p>\n");
+        }
+
+        public void table(String name, String title, String... columns) throws IOException {
+            endTable();
+            this.columns = columns;
+            out.write("<h2 id=\""); out.write(esc(name)); out.write("\">"); out.write(esc(title)); out.write("</h2>\n<table><tr>");
+            for (String c : columns) { out.write("<th>"); out.write(esc(c)); out.write("</th>"); }
+            out.write("</tr>\n");
+            open = true;
+        }
+        public void row(Object... cells) throws IOException {
+            out.write("<tr>");
+            for (int i = 0; i < cells.length; i++) {
+                Object c = cells[i];
+                if (!(c instanceof Number)) { out.write("<td>"); out.write(esc(String.valueOf(c))); out.write("</td>"); continue; }
+                out.write("<td class=\"n\">");
+                if (i < columns.length && columns[i].equals("Percent")) { out.write("<span class=\"bar\" style=\"width:"); out.write(String.valueOf(((Number) c).intValue() / 2)); out.write("px\"></span>"); }
+                out.write(c.toString()); out.write("</td>");
+            }
+            out.write("</tr>\n");
+        }
+        public void close() throws IOException { try { endTable(); out.write("</body></html>\n"); } finally { out.close(); } }
+
+        private void endTable() throws IOException { if (open) { out.write("</table>\n"); open = false; } }
+
+        private static String esc(String s) {
+            StringBuilder b = null;
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                String r = ch == '&' ? "&amp;" : ch == '<' ? "&lt;" : ch == '>' ? "&gt;" : ch == '"' ? "&quot;" : null;
+                if (r == null) { if (b != null) b.append(ch); continue; }
+                if (b == null) b = new StringBuilder(s.length() + 16).append(s, 0, i);
+                b.append(r);
+            }
+            return b == null ? s : b.toString();
+        }
+    }
+}
+
+// ---------------- Search Index ----------------
+// Inverted index over task-name tokens with secondary indexes on category, priority, completion and start time.
+// The live week is kept current through ScheduleStore change events; archived weeks are indexed from loaded files.
+class TaskSearchIndex implements ScheduleStore.ChangeListener {
+    static final String CURRENT_WEEK = "current";
+
+    static class Query {
+        String text, category, priority, week;
+        Boolean completed;
+        int fromMinute = -1, toMinute = -1;
+        int limit = 500;
+    }
+
+    static final class Hit {
+        final String week, day; final Task<String> task;
+        Hit(String week, String day, Task<String> task) { this.week = week; this.day = day; this.task = task; }
+    }
+
+    private static final class Entry {
+        final String week, day; final long id; final int order;
+        String name, category, priority; boolean completed; int start, end; List<String> tokens;
+        Entry(String week, String day, long id, int order) { this.week = week; this.day = day; this.id = id; this.order = order; }
+        boolean matches(Task<String> t) {
+            return name.equals(t.getTaskName()) && Objects.equals(category, t.getCategory()) && Objects.equals(priority, String.valueOf(t.getPriority()))
+                    && completed == t.isCompleted() && start == Times.toMinutes(t.getTime()) && end == Times.toMinutes(t.getEndTime());
+        }
+    }
+
+    private final TreeMap<String, Set<Entry>> tokens = new TreeMap<>();
+    private final Map<String, Set<Entry>> byCategory = new HashMap<>();
+    private final Map<String, Set<Entry>> byPriority = new HashMap<>();
+    private final Set<Entry> done = new HashSet<>(), open = new HashSet<>();
+    private final TreeMap<Integer, Set<Entry>> byStart = new TreeMap<>();
+    // Entries of one indexed day, found by task id.
+    private static final class DayEntries {
+        final LongIntMap slots = new LongIntMap();
+        final List<Entry> entries = new ArrayList<>();
+        Entry get(long id) { int i = slots.get(id, -1); return i < 0 ? null : entries.get(i); }
+        void put(Entry en) {
+            int i = slots.get(en.id, -1);
+            if (i >= 0) entries.set(i, en); else { slots.put(en.id, entries.size()); entries.add(en); }
+        }
+        void remove(long id) {
+            int i = slots.remove(id, -1); if (i < 0) return;
+            Entry last = entries.remove(entries.size() - 1);
+            if (i < entries.size()) { entries.set(i, last); slots.put(last.id, i); }
+        }
+    }
+
+    // week -> day -> entries
+    private final Map<String, Map<String, DayEntries>> byDay = new HashMap<>();
+    private final List<String> weekOrder = new ArrayList<>();
+    private final Map<String, Integer> dayOrder = new HashMap<>();
+
+    TaskSearchIndex(String[] days) {
+        for (int i = 0; i < days.length; i++) dayOrder.put(days[i], i);
+        weekOrder.add(CURRENT_WEEK);
+    }
+
+    @Override public void daysChanged(ScheduleStore store, Collection<String> days) {
+        for (String d : days) store.read(d, s -> { reindexDay(CURRENT_WEEK, d, s.getTasks()); return null; });
+    }
+
+    // Archived weeks hold their own copies, so later edits to the source map are not seen.
+    synchronized void indexWeek(String week, Map<String, DaySchedule<String>> schedule) {
+        removeWeek(week);
+        if (!weekOrder.contains(week)) weekOrder.add(week);
+        for (Map.Entry<String, DaySchedule<String>> e : schedule.entrySet()) reindexDay(week, e.getKey(), e.getValue().copy().getTasks());
+    }
+
+    synchronized void removeWeek(String week) {
+        Map<String, DayEntries> days = byDay.remove(week);
+        if (days != null) for (DayEntries d : days.values()) for (Entry en : d.entries) unlink(en);
+        if (!CURRENT_WEEK.equals(week)) weekOrder.remove(week);
+    }
+
+    synchronized List<String> weeks() { return new ArrayList<>(weekOrder); }
+
+    synchronized int size() { int n = 0; for (Map<String, DayEntries> w : byDay.values()) for (DayEntries d : w.values()) n += d.entries.size(); return n; }
+
+    // Only tasks that were added, removed or changed since the last pass touch the index structures.
+    synchronized void reindexDay(String week, String day, List<Task<String>> tasks) {
+        DayEntries indexed = byDay.computeIfAbsent(week, k -> new HashMap<>()).computeIfAbsent(day, k -> new DayEntries());
+        LongIntMap present = new LongIntMap(tasks.size());
+        for (Task<String> t : tasks) {
+            present.put(t.getId(), 1);
+            Entry en = indexed.get(t.getId());
+            if (en != null && en.matches(t)) continue;
+            if (en != null) unlink(en);
+            en = new Entry(week, day, t.getId(), indexed.entries.size());
+            link(en, t);
+            indexed.put(en);
+        }
+        for (int i = indexed.entries.size() - 1; i >= 0; i--) {
+            Entry en = indexed.entries.get(i);
+            if (!present.containsKey(en.id)) { unlink(en); indexed.remove(en.id); }
+        }
+    }
+
+    // Exact posting sets are intersected smallest-first; the prefix word and time range are checked per candidate
+    // and only materialized when nothing narrower is available.
+    synchronized List<Hit> search(Query q) {
+        List<Set<Entry>> exact = new ArrayList<>();
+        String prefix = null;
+        if (q.text != null && !q.text.trim().isEmpty()) {
+            List<String> words = tokenize(q.text);
+            for (int i = 0; i < words.size() - 1; i++) exact.add(tokens.getOrDefault(words.get(i), Collections.emptySet()));
+            // The last word matches as a prefix so results update while typing.
+            if (!words.isEmpty()) prefix = words.get(words.size() - 1);
+        }
+        if (q.category != null) exact.add(byCategory.getOrDefault(q.category, Collections.emptySet()));
+        if (q.priority != null) exact.add(byPriority.getOrDefault(q.priority, Collections.emptySet()));
+        if (q.completed != null) exact.add(q.completed ? done : open);
+        boolean timed = q.fromMinute >= 0 || q.toMinute >= 0;
+        int from = q.fromMinute < 0 ? 0 : q.fromMinute, to = q.toMinute < 0 ? 24 * 60 : q.toMinute;
+
+        Collection<Entry> seed;
+        if (!exact.isEmpty()) { exact.sort(Comparator.comparingInt(Set::size)); seed = exact.remove(0); }
+        else if (prefix != null) { seed = prefixMatches(prefix); prefix = null; }
+        else if (timed) { seed = overlapping(from, to); timed = false; }
+        else {
+            seed = new ArrayList<>();
+            for (Map<String, DayEntries> w : byDay.values()) for (DayEntries d : w.values()) seed.addAll(d.entries);
+        }
+        List<Entry> sorted = new ArrayList<>();
+        outer:
+        for (Entry en : seed) {
+            if (q.week != null && !q.week.equals(en.week)) continue;
+            for (Set<Entry> s : exact) if (!s.contains(en)) continue outer;
+            if (prefix != null && !hasPrefix(en, prefix)) continue;
+            if (timed && !overlaps(en, from, to)) continue;
+            sorted.add(en);
+        }
+        sorted.sort(Comparator.<Entry>comparingInt(en -> weekOrder.indexOf(en.week))
+                .thenComparingInt(en -> dayOrder.getOrDefault(en.day, Integer.MAX_VALUE))
+                .thenComparingInt(en -> en.start).thenComparingInt(en -> en.order));
+        List<Hit> hits = new ArrayList<>();
+        for (Entry en : sorted) {
+            if (hits.size() >= q.limit) break;
+            Task<String> t = new Task<>(en.name, Times.format(Math.max(en.start, 0)), Times.format(Math.max(en.end, 0)), en.priority, en.category);
+            t.setCompleted(en.completed); t.setId(en.id);
+            hits.add(new Hit(en.week, en.day, t));
+        }
+        return hits;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) start = i;
+            else if (!word && start >= 0) { out.add(text.substring(start, i).toLowerCase(Locale.ROOT)); start = -1; }
+        }
+        return out;
+    }
+
+    private Set<Entry> prefixMatches(String prefix) {
+        SortedMap<String, Set<Entry>> range = tokens.subMap(prefix, prefix + Character.MAX_VALUE);
+        if (range.size() == 1) return range.values().iterator().next();
+        Set<Entry> out = new HashSet<>();
+        for (Set<Entry> s : range.values()) out.addAll(s);
+        return out;
+    }
+
+    private Set<Entry> overlapping(int from, int to) {
+        Set<Entry> out = new HashSet<>();
+        for (Set<Entry> s : byStart.headMap(to, true).values())
+            for (Entry en : s) if (overlaps(en, from, to)) out.add(en);
+        return out;
+    }
+
+    private static boolean overlaps(Entry en, int from, int to) {
+        return en.start <= to && (en.end > from || (en.end == en.start && en.start >= from));
+    }
+
+    private static boolean hasPrefix(Entry en, String prefix) {
+        for (String tok : en.tokens) if (tok.startsWith(prefix)) return true;
+        return false;
+    }
+
+    private void link(Entry en, Task<String> t) {
+        en.name = t.getTaskName(); en.category = t.getCategory(); en.priority = String.valueOf(t.getPriority());
+        en.completed = t.isCompleted(); en.start = Times.toMinutes(t.getTime()); en.end = Times.toMinutes(t.getEndTime());
+        en.tokens = tokenize(en.name);
+        for (String tok : en.tokens) tokens.computeIfAbsent(tok, k -> new HashSet<>()).add(en);
+        byCategory.computeIfAbsent(en.category, k -> new HashSet<>()).add(en);
+        byPriority.computeIfAbsent(en.priority, k -> new HashSet<>()).add(en);
+        (en.completed ? done : open).add(en);
+        byStart.computeIfAbsent(en.start, k -> new HashSet<>()).add(en);
+    }
+
+    private void unlink(Entry en) {
+        for (String tok : en.tokens) removeFrom(tokens, tok, en);
+        removeFrom(byCategory, en.category, en);
+        removeFrom(byPriority, en.priority, en);
+        done.remove(en); open.remove(en);
+        removeFrom(byStart, en.start, en);
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Entry>> map, K key, Entry en) {
+        Set<Entry> s = map.get(key);
+        if (s != null && s.remove(en) && s.isEmpty()) map.remove(key);
+    }
+}
+
+// ---------------- Free/Busy Index ----------------
+// Per-day minute occupancy kept current through ScheduleStore change events: how many tasks cover each minute, and a
+// 1440-bit bitmap of the minutes any task covers. Only tasks added, removed or retimed since the last event touch
+// the counts, and queries work a 64-minute word at a time.
+class FreeBusyIndex implements ScheduleStore.ChangeListener {
+    private static final class Day {
+        LongIntMap spans = new LongIntMap();   // task id -> MinuteBitmap.span
+        boolean recount;                       // spans do not match the counts (ids were shared at the last update)
+        final int[] cover = new int[MinuteBitmap.MINUTES];
+        final long[] bits = new long[MinuteBitmap.WORDS];
+    }
+
+    private final Map<String, Day> byDay = new HashMap<>();
+
+    FreeBusyIndex(String[] days) { for (String d : days) byDay.put(d, new Day()); }
+
+    @Override public void daysChanged(ScheduleStore store, Collection<String> days) {
+        for (String d : days) store.read(d, s -> { update(d, s.getTasks()); return null; });
+    }
+
+    synchronized void update(String day, List<Task<String>> tasks) {
+        Day dd = byDay.computeIfAbsent(day, k -> new Day());
+        LongIntMap next = new LongIntMap(tasks.size());
+        boolean shared = false;
+        for (Task<String> t : tasks) {
+            int span = MinuteBitmap.span(t);
+            if (span < 0) continue;
+            if (next.containsKey(t.getId())) shared = true;
+            next.put(t.getId(), span);
+        }
+        if (shared || dd.recount) {
+            // Two tasks with one id (hand-edited files), now or last time: the per-id diff cannot tell them apart, so
+            // recount the day, and keep doing so until the ids are unique again.
+            Arrays.fill(dd.cover, 0); Arrays.fill(dd.bits, 0);
+            for (Task<String> t : tasks) { int span = MinuteBitmap.span(t); if (span >= 0) cover(dd, span, 1); }
+        } else {
+            for (long id : dd.spans.keys()) { int old = dd.spans.get(id, -1); if (next.get(id, -1) != old) cover(dd, old, -1); }
+            for (long id : next.keys()) { int span = next.get(id, -1); if (dd.spans.get(id, -1) != span) cover(dd, span, 1); }
+        }
+        dd.spans = next; dd.recount = shared;
+    }
+
+    // True if no task covers any minute of [start, end); an empty range checks the single minute at start.
+    synchronized boolean isFree(String day, int start, int end) {
+        Day dd = byDay.get(day);
+        return dd == null || !MinuteBitmap.anySet(dd.bits, start, Math.max(end, start + 1));
+    }
+
+    // As isFree, but not counting the task with the given id (the one being edited).
+    synchronized boolean conflicts(String day, int start, int end, long ignoreId) {
+        Day dd = byDay.get(day);
+        if (dd == null) return false;
+        end = Math.min(MinuteBitmap.MINUTES, Math.max(end, start + 1));
+        int own = dd.spans.get(ignoreId, -1);
+        int os = own < 0 ? 0 : MinuteBitmap.start(own), oe = own < 0 ? 0 : MinuteBitmap.end(own);
+        if (oe <= start || os >= end) return MinuteBitmap.anySet(dd.bits, start, end);
+        for (int m = MinuteBitmap.nextSet(dd.bits, start, end); m < end; m = MinuteBitmap.nextSet(dd.bits, m + 1, end))
+            if (dd.cover[m] > (m >= os && m < oe ? 1 : 0)) return true;
+        return false;
+    }
+
+    // Days among the given ones where [start, end) would overlap a task other than ignoreId (0: none).
+    synchronized List<String> conflictingDays(Collection<String> days, int start, int end, long ignoreId) {
+        List<String> out = new ArrayList<>();
+        for (String d : days) if (conflicts(d, start, end, ignoreId)) out.add(d);
+        return out;
+    }
+
+    // Earliest start at or after from of a free run of the given length within [from, to), or -1.
+    synchronized int nextFreeGap(String day, int from, int to, int minutes) {
+        Day dd = byDay.get(day);
+        return dd == null ? (from + minutes <= to ? from : -1) : MinuteBitmap.nextGap(dd.bits, from, to, minutes);
+    }
+
+    // Earliest start of a run free on every given day (the OR of their bitmaps), or -1.
+    synchronized int commonFreeGap(Collection<String> days, int from, int to, int minutes) {
+        long[] any = new long[MinuteBitmap.WORDS];
+        for (String d : days) { Day dd = byDay.get(d); if (dd != null) for (int i = 0; i < any.length; i++) any[i] |= dd.bits[i]; }
+        return MinuteBitmap.nextGap(any, from, to, minutes);
+    }
+
+    // Free runs of at least minMinutes within [from, to), as {start, end} pairs.
+    synchronized List<int[]> freeGaps(String day, int from, int to, int minMinutes) {
+        List<int[]> out = new ArrayList<>();
+        Day dd = byDay.get(day);
+        long[] b = dd == null ? new long[MinuteBitmap.WORDS] : dd.bits;
+        for (int s = MinuteBitmap.nextClear(b, from, to); s < to; ) {
+            int e = MinuteBitmap.nextSet(b, s, to);
+            if (e - s >= Math.max(1, minMinutes)) out.add(new int[]{s, e});
+            s = MinuteBitmap.nextClear(b, e, to);
+        }
+        return out;
+    }
+
+    synchronized int freeMinutes(String day, int from, int to) {
+        Day dd = byDay.get(day);
+        return dd == null ? to - from : to - from - MinuteBitmap.count(dd.bits, from, to);
+    }
+
+    // Copy of a day's bitmap, for callers that run their own word-parallel scans.
+    synchronized long[] busyBits(String day) {
+        Day dd = byDay.get(day);
+        return dd == null ? new long[MinuteBitmap.WORDS] : dd.bits.clone();
+    }
+
+    private static void cover(Day dd, int span, int delta) {
+        int s = MinuteBitmap.start(span), e = MinuteBitmap.end(span);
+        for (int m = s; m < e; m++) {
+            int c = dd.cover[m] += delta;
+            if (c == 0) dd.bits[m >>> 6] &= ~(1L << m); else if (c == 1 && delta > 0) dd.bits[m >>> 6] |= 1L << m;
+        }
+    }
+}
+
+// ---------------- Undo / Redo & Edit Journal ----------------
+// Commands keep only what they touched: the tasks they added or removed, the old and new field values of an edit,
+// or the detached day/week objects a replacement displaced (those are not copied, just no longer referenced by the store).
+class UndoLog {
+    interface Command {
+        String label();
+        boolean redo();   // false if the command no longer applies (e.g. its task is gone)
+        void undo();
+    }
+
+    private final Deque<Command> undo = new ArrayDeque<>(), redo = new ArrayDeque<>();
+    private int maxDepth;
+
+    UndoLog(int maxDepth) { this.maxDepth = maxDepth; }
+
+    synchronized void setMaxDepth(int maxDepth) { this.maxDepth = maxDepth; trim(); }
+    synchronized void clear() { undo.clear(); redo.clear(); }
+    synchronized String undoLabel() { return undo.isEmpty() ? null : undo.peek().label(); }
+    synchronized String redoLabel() { return redo.isEmpty() ? null : redo.peek().label(); }
+
+    synchronized void push(Command c) { undo.push(c); redo.clear(); trim(); }
+
+    boolean undo() {
+        Command c; synchronized (this) { c = undo.poll(); }
+        if (c == null) return false;
+        c.undo();
+        synchronized (this) { redo.push(c); }
+        return true;
+    }
+
+    boolean redo() {
+        Command c; synchronized (this) { c = redo.poll(); }
+        if (c == null) return false;
+        c.redo();
+        synchronized (this) { undo.push(c); trim(); }
+        return true;
+    }
+
+    private void trim() { while (undo.size() > maxDepth) undo.removeLast(); }
+}
+
+// Append-only JSON-lines log of applied edits. Each line carries a sequence number; a checkpoint records the last
+// number it includes, so recovery replays exactly the entries written after it.
+class OpJournal implements Closeable {
+    private static final String SEQ_PREFIX = "{\"seq\":";
+    private final File file;
+    private final FileChannel lockChannel;
+    private long seq;
+    private Writer out;
+
+    // Each journal belongs to one instance at a time: its "<name>.lock" stays locked until close().
+    OpJournal(File file, long minSeq) throws IOException {
+        this.file = file;
+        lockChannel = FileChannel.open(new File(file.getPath() + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try { lock = lockChannel.tryLock(); } catch (OverlappingFileLockException ex) { lock = null; }
+        if (lock == null) { lockChannel.close(); throw new IOException(file + " is in use by another instance"); }
+        long last = 0;
+        if (file.exists()) for (String line : readLines()) { long n = seqOf(line); if (n > last) last = n; }
+        seq = Math.max(last, minSeq);
+        out = openAppender();
+    }
+
+    synchronized long append(Map<String, Object> op) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("seq", ++seq);
+        entry.putAll(op);
+        try { JsonUtil.write(entry, out); out.write('\n'); out.flush(); }
+        catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Journal append failed", ex); }
+        return seq;
+    }
+
+    synchronized long lastSeq() { return seq; }
+
+    // Entries after the given sequence number; a torn last line (crash mid-write) ends the replay.
+    synchronized List<Map<String, Object>> readAfter(long after) throws IOException {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (String line : readLines()) {
+            if (seqOf(line) <= after) continue;
+            try { out.add(JsonUtil.obj(JsonUtil.parse(line))); }
+            catch (IOException ex) { Log.PERSIST.warning("Journal truncated at: " + line); break; }
+        }
+        return out;
+    }
+
+    // Drops every entry up to and including the given sequence number.
+    synchronized void compact(long upTo) throws IOException {
+        out.close();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer w = JsonUtil.newWriter(tmp)) {
+            for (String line : readLines()) if (seqOf(line) > upTo) { w.write(line); w.write('\n'); }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        out = openAppender();
+    }
+
+    @Override public synchronized void close() throws IOException { try { out.close(); } finally { lockChannel.close(); } }
+
+    private Writer openAppender() throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    private List<String> readLines() throws IOException {
+        if (!file.exists()) return Collections.emptyList();
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static long seqOf(String line) {
+        if (!line.startsWith(SEQ_PREFIX)) return -1;
+        int end = SEQ_PREFIX.length();
+        while (end < line.length() && Character.isDigit(line.charAt(end))) end++;
+        try { return Long.parseLong(line.substring(SEQ_PREFIX.length(), end)); } catch (NumberFormatException ex) { return -1; }
+    }
+}
+
+// ---------------- Auto-Pack ----------------
+// Places unscheduled tasks into the free time of a week. Each day's occupancy is a 1440-bit minute bitmap plus an
+// owner array (the request holding each minute, or FIXED for existing tasks). A greedy best-fit pass places the most
+// valuable and least flexible requests first; a time-boxed local search then inserts leftovers by relocating a
+// single blocking request elsewhere, or evicting it when the leftover is worth more.
+final class ScheduleOptimizer {
+    static final int LAST_MINUTE = 23 * 60 + 59;   // latest end time a task can show ("23:59")
+    private static final int FREE = -1, FIXED = -2, MAX_BLOCKERS = 4;
+
+    // A task to place: duration in minutes, plus optional constraints (a window it must lie in, weekdays only,
+    // a single day). Requests never overlap existing tasks or each other.
+    static final class Request {
+        final String name, priority, category; final int duration;
+        int earliest = 0, latest = LAST_MINUTE;
+        boolean weekdaysOnly;
+        String day;
+        Request(String name, int duration, String priority, String category) {
+            this.name = name; this.duration = duration; this.priority = priority; this.category = category;
+        }
+        Request window(int earliest, int latest) { this.earliest = earliest; this.latest = latest; return this; }
+        Request weekdaysOnly() { weekdaysOnly = true; return this; }
+        Request on(String day) { this.day = day; return this; }
+    }
+
+    static final class Placement {
+        final Request request; final String day; final int start;
+        Placement(Request request, String day, int start) { this.request = request; this.day = day; this.start = start; }
+        Task<String> toTask() { return new Task<>(request.name, Times.format(start), Times.format(start + request.duration), request.priority, request.category); }
+    }
+
+    static final class Result {
+        final List<Placement> placed; final List<Request> unplaced;
+        final long score, greedyScore;   // summed priority weights of the placed requests, finally and after the greedy pass
+        final double bound;              // no packing can score more (see upperBound)
+        final long nanos; final int moves;
+        Result(List<Placement> placed, List<Request> unplaced, long score, long greedyScore, double bound, long nanos, int moves) {
+            this.placed = placed; this.unplaced = unplaced; this.score = score; this.greedyScore = greedyScore; this.bound = bound; this.nanos = nanos; this.moves = moves;
+        }
+    }
+
+    private final String[] days;
+    private final int from, to;   // planning horizon within each day, minutes
+
+    ScheduleOptimizer(String[] days) { this(days, 0, LAST_MINUTE); }
+    ScheduleOptimizer(String[] days, int from, int to) { this.days = days.clone(); this.from = Math.max(0, from); this.to = Math.min(LAST_MINUTE, to); }
+
+    static int weight(String priority) { return "High".equals(priority) ? 100 : "Medium".equals(priority) ? 30 : 10; }
+
+    static boolean isWeekday(String day) { return !day.equalsIgnoreCase("Saturday") && !day.equalsIgnoreCase("Sunday"); }
+
+    // Greedy pass, then local search until nothing improves or the budget runs out (0: greedy only).
+    Result pack(Map<String, DaySchedule<String>> week, List<Request> requests, long budgetNanos, long seed) {
+        if (requests.size() >= 1 << 17) throw new IllegalArgumentException("At most " + ((1 << 17) - 1) + " requests per run");
+        long t0 = System.nanoTime();
+        Solver s = new Solver(week, requests);
+        s.greedy();
+        long greedyScore = s.score;
+        int moves = budgetNanos > 0 ? s.improve(t0 + budgetNanos, new SplittableRandom(seed)) : 0;
+        List<Placement> placed = new ArrayList<>(); List<Request> unplaced = new ArrayList<>();
+        for (int r = 0; r < s.n; r++) {
+            if (s.placedDay[r] >= 0) placed.add(new Placement(requests.get(r), days[s.placedDay[r]], s.placedStart[r]));
+            else unplaced.add(requests.get(r));
+        }
+        return new Result(placed, unplaced, s.score, greedyScore, s.upperBound(), System.nanoTime() - t0, moves);
+    }
+
+    // All state in primitive arrays indexed by request and day.
+    private final class Solver {
+        final int n, dayCount = days.length;
+        final int[] dur, lo, hi, w, allowed, placedDay, placedStart;   // hi: latest start; allowed: day bitmask
+        final long[][] bits = new long[dayCount][MinuteBitmap.WORDS];
+        final int[][] owner = new int[dayCount][24 * 60];
+        final int[] load = new int[dayCount];
+        final int[] blockers = new int[MAX_BLOCKERS], blockerDay = new int[MAX_BLOCKERS], blockerStart = new int[MAX_BLOCKERS];
+        long score;
+
+        Solver(Map<String, DaySchedule<String>> week, List<Request> requests) {
+            for (int[] o : owner) Arrays.fill(o, FREE);
+            for (int d = 0; d < dayCount; d++) {
+                DaySchedule<String> s = week.get(days[d]); if (s == null) continue;
+                for (Task<String> t : s.getTasks()) {
+                    int span = MinuteBitmap.span(t);
+                    if (span >= 0) occupy(d, MinuteBitmap.start(span), MinuteBitmap.end(span) - MinuteBitmap.start(span), FIXED);
+                }
+            }
+            n = requests.size();
+            dur = new int[n]; lo = new int[n]; hi = new int[n]; w = new int[n]; allowed = new int[n];
+            placedDay = new int[n]; placedStart = new int[n];
+            Arrays.fill(placedDay, -1);
+            for (int r = 0; r < n; r++) {
+                Request q = requests.get(r);
+                dur[r] = Math.max(1, q.duration); w[r] = weight(q.priority);
+                lo[r] = Math.max(from, q.earliest); hi[r] = Math.min(to, q.latest) - dur[r];
+                for (int d = 0; d < dayCount && d < 31; d++)
+                    if ((q.day == null || q.day.equals(days[d])) && (!q.weekdaysOnly || isWeekday(days[d]))) allowed[r] |= 1 << d;
+            }
+        }
+
+        // Fractional knapsack over all free minutes in the horizon, ignoring windows and day limits: requests by
+        // weight per minute, the last one cut to fit.
+        double upperBound() {
+            long[] order = new long[n];
+            for (int r = 0; r < n; r++) order[r] = (Double.doubleToLongBits((double) w[r] / dur[r]) >>> 20) << 17 | r;   // positive doubles sort as their bits
+            Arrays.sort(order);
+            long free = 0;
+            for (int[] o : owner) for (int m = from; m < to; m++) if (o[m] != FIXED) free++;
+            double bound = 0;
+            for (int i = n - 1; i >= 0 && free > 0; i--) {
+                int r = (int) (order[i] & 0x1ffff);
+                if (hi[r] < lo[r] || allowed[r] == 0) continue;
+                long take = Math.min(free, dur[r]);
+                bound += (double) w[r] * take / dur[r]; free -= take;
+            }
+            return bound;
+        }
+
+        // Most valuable first; within a priority the shortest first (more of them fit), then the least room to move
+        // (start range times allowed days).
+        void greedy() {
+            long[] order = new long[n];
+            for (int r = 0; r < n; r++) {
+                long flex = Math.max(0, hi[r] - lo[r] + 1) * (long) Integer.bitCount(allowed[r]);
+                order[r] = (long) (1000 - w[r]) << 52 | (long) Math.min(dur[r], 2047) << 41 | Math.min(flex, (1L << 24) - 1) << 17 | r;
+            }
+            Arrays.sort(order);
+            for (long k : order) insert((int) (k & 0x1ffff));
+        }
+
+        // Tries the leftovers (most valuable first, random order within a weight) until a full round changes nothing.
+        int improve(long deadline, SplittableRandom rnd) {
+            int moves = 0;
+            int[] left = new int[n];
+            for (boolean changed = true; changed; ) {
+                changed = false;
+                int m = 0;
+                for (int r = 0; r < n; r++) if (placedDay[r] < 0 && hi[r] >= lo[r] && allowed[r] != 0) left[m++] = r;
+                for (int i = m - 1; i > 0; i--) { int j = rnd.nextInt(i + 1), x = left[i]; left[i] = left[j]; left[j] = x; }
+                sortByWeight(left, m);
+                for (int i = 0; i < m; i++) {
+                    if ((i & 15) == 0 && System.nanoTime() > deadline) return moves;
+                    int r = left[i];
+                    if (placedDay[r] >= 0) continue;
+                    if (insert(r) || eject(r, rnd)) { moves++; changed = true; }
+                }
+            }
+            return moves;
+        }
+
+        private void sortByWeight(int[] a, int m) {   // stable insertion sort by descending weight; few distinct weights
+            for (int i = 1; i < m; i++) { int x = a[i], j = i - 1; while (j >= 0 && w[a[j]] < w[x]) { a[j + 1] = a[j]; j--; } a[j + 1] = x; }
+        }
+
+        // Best fit over every allowed day: the free gap that leaves the least slack, ties to the lighter day.
+        boolean insert(int r) {
+            int bestDay = -1, bestStart = 0, bestSlack = Integer.MAX_VALUE;
+            for (int d = 0; d < dayCount; d++) {
+                if ((allowed[r] & 1 << d) == 0) continue;
+                long[] b = bits[d];
+                int limit = hi[r] + dur[r];
+                for (int s = MinuteBitmap.nextClear(b, lo[r], limit); s <= hi[r]; ) {
+                    int gapEnd = MinuteBitmap.nextSet(b, s, 24 * 60);
+                    if (Math.min(gapEnd, limit) - s >= dur[r]) {
+                        int slack = gapEnd - s - dur[r];
+                        if (slack < bestSlack || slack == bestSlack && load[d] < load[bestDay]) { bestDay = d; bestStart = s; bestSlack = slack; }
+                    }
+                    s = MinuteBitmap.nextClear(b, gapEnd, limit);
+                }
+            }
+            if (bestDay < 0) return false;
+            place(r, bestDay, bestStart);
+            return true;
+        }
+
+        // Finds a start where r overlaps only placed requests (at most MAX_BLOCKERS of them), puts r there and
+        // re-inserts the blockers elsewhere; kept if the summed weight went up, otherwise undone. Starts are 5 minutes apart.
+        boolean eject(int r, SplittableRandom rnd) {
+            int first = rnd.nextInt(dayCount);
+            for (int k = 0; k < dayCount; k++) {
+                int d = (first + k) % dayCount;
+                if ((allowed[r] & 1 << d) == 0) continue;
+                long[] b = bits[d]; int[] own = owner[d];
+                for (int s = lo[r]; s <= hi[r]; s += 5) {
+                    int end = s + dur[r], count = 0;
+                    for (int p = MinuteBitmap.nextSet(b, s, end); p < end; p = MinuteBitmap.nextSet(b, placedStart[own[p]] + dur[own[p]], end)) {
+                        if (own[p] < 0 || count == MAX_BLOCKERS) { count = -1; break; }   // an existing task, or too many
+                        blockers[count] = own[p]; blockerDay[count] = d; blockerStart[count] = placedStart[own[p]]; count++;
+                    }
+                    if (count <= 0) continue;
+                    long before = score;
+                    for (int i = 0; i < count; i++) unplace(blockers[i]);
+                    place(r, d, s);
+                    for (int i = 0; i < count; i++) insert(blockers[i]);
+                    if (score > before) return true;
+                    for (int i = 0; i < count; i++) if (placedDay[blockers[i]] >= 0) unplace(blockers[i]);
+                    unplace(r);
+                    for (int i = 0; i < count; i++) place(blockers[i], blockerDay[i], blockerStart[i]);
+                }
+            }
+            return false;
+        }
+
+        private void place(int r, int d, int s) { placedDay[r] = d; placedStart[r] = s; occupy(d, s, dur[r], r); load[d] += dur[r]; score += w[r]; }
+
+        private void unplace(int r) {
+            int d = placedDay[r];
+            occupy(d, placedStart[r], dur[r], FREE); load[d] -= dur[r]; score -= w[r];
+            placedDay[r] = -1;
+        }
+
+        private void occupy(int d, int s, int len, int who) {
+            int e = Math.min(24 * 60, s + len);
+            long[] b = bits[d];
+            for (int m = s; m < e; m++) {
+                if (who == FREE) b[m >>> 6] &= ~(1L << m); else b[m >>> 6] |= 1L << m;
+                owner[d][m] = who;
+            }
+        }
+    }
+
+    // One request per line: name, minutes, priority, category[, HH:MM-HH:MM][, weekdays | <day>]
+    static List<Request> parse(String text, String[] days) {
+        List<Request> out = new ArrayList<>();
+        int lineNo = 0;
+        for (String line : text.split("\n")) {
+            lineNo++;
+            if (line.trim().isEmpty() || line.trim().startsWith("#")) continue;
+            String[] f = line.split(",");
+            if (f.length < 4) throw new IllegalArgumentException("Line " + lineNo + ": expected name, minutes, priority, category");
+            int minutes;
+            try { minutes = Integer.parseInt(f[1].trim()); } catch (NumberFormatException ex) { throw new IllegalArgumentException("Line " + lineNo + ": bad minutes '" + f[1].trim() + "'"); }
+            if (minutes <= 0 || minutes > 24 * 60) throw new IllegalArgumentException("Line " + lineNo + ": minutes must be 1-1440");
+            Request q = new Request(f[0].trim(), minutes, f[2].trim(), f[3].trim());
+            for (int i = 4; i < f.length; i++) {
+                String opt = f[i].trim();
+                int dash = opt.indexOf('-');
+                if (dash > 0 && Times.toMinutes(opt.substring(0, dash).trim()) >= 0 && Times.toMinutes(opt.substring(dash + 1).trim()) >= 0)
+                    q.window(Times.toMinutes(opt.substring(0, dash).trim()), Times.toMinutes(opt.substring(dash + 1).trim()));
+                else if (opt.equalsIgnoreCase("weekdays")) q.weekdaysOnly();
+                else {
+                    String day = null;
+                    for (String d : days) if (d.equalsIgnoreCase(opt)) day = d;
+                    if (day == null) throw new IllegalArgumentException("Line " + lineNo + ": unknown option '" + opt + "'");
+                    q.on(day);
+                }
+            }
+            out.add(q);
+        }
+        return out;
+    }
+}
+
+// ---------------- Headless Engine ----------------
+// All schedule operations without any Swing dependency; Base is one client, batch tools and benchmarks are others.
+// Every mutation is an undoable command; with recovery enabled it is also journaled while its day locks are held,
+// so a checkpoint plus the journal tail always reproduces the live schedule.
+class ScheduleEngine {
+    static final String[] DEFAULT_DAYS = {"Monday","Tuesday","Wednesday","Thursday","Friday","Saturday","Sunday"};
+
+    private final String[] days;
+    private final ScheduleStore store;
+    private final DataPersistence persistence;
+    private final RecurringTasks.TemplateManager templates;
+    private final TaskCompletionTracking tracking;
+    private final TaskSearchIndex searchIndex;
+    private final FreeBusyIndex freeBusy;
+    private final UndoLog undoLog = new UndoLog(200);
+    private final Object checkpointLock = new Object();
+    private volatile OpJournal journal;
+    private volatile SharedFile checkpointFile;
+    private volatile boolean journaling = true;
+    // What the checkpoint file held when this engine last wrote or read it (read-only copies), its version there,
+    // and the journal position it carried; the base of the three-way merge with other writers.
+    private final Map<String, DaySchedule<String>> checkpointBase = new ConcurrentHashMap<>();
+    private long checkpointVersion, checkpointSeq;
+    // With a storage backend instead of the checkpoint file: the version each "days/<day>" key had when last read or written.
+    private volatile StorageBackend checkpointStorage;
+    private final Map<String, Long> storedVersions = new HashMap<>();
+
+    ScheduleEngine() { this(DEFAULT_DAYS, new DataPersistence(), new RecurringTasks.TemplateManager(), new TaskCompletionTracking()); }
+    // Templates and history in the backend as well; call enableRecovery(storage, journal) to keep the days there.
+    ScheduleEngine(StorageBackend storage) { this(DEFAULT_DAYS, new DataPersistence(), new RecurringTasks.TemplateManager(storage), new TaskCompletionTracking(storage)); }
+
+    ScheduleEngine(String[] days, DataPersistence persistence, RecurringTasks.TemplateManager templates, TaskCompletionTracking tracking) {
+        this.days = days.clone();
+        this.store = new ScheduleStore(days);
+        this.persistence = persistence;
+        this.templates = templates;
+        this.tracking = tracking;
+        this.searchIndex = new TaskSearchIndex(days);
+        store.addListener(searchIndex);
+        this.freeBusy = new FreeBusyIndex(days);
+        store.addListener(freeBusy);
+    }
+
+    String[] getDays() { return days.clone(); }
+    ScheduleStore getStore() { return store; }
+    DataPersistence getPersistence() { return persistence; }
+    RecurringTasks.TemplateManager getTemplates() { return templates; }
+    TaskCompletionTracking getTracking() { return tracking; }
+    TaskSearchIndex getSearchIndex() { return searchIndex; }
+    FreeBusyIndex getFreeBusy() { return freeBusy; }
+    // Reminders leadMinutes before every task start, kept in step with all later edits until the scheduler is closed.
+    ReminderScheduler startReminders(int leadMinutes, ReminderScheduler.Listener listener) { return new ReminderScheduler(store, leadMinutes, listener); }
+    UndoLog getUndoLog() { return undoLog; }
+    Map<String, DaySchedule<String>> snapshot() { return store.snapshot(); }
+
+    // ---- reads ----
+    List<Task<String>> tasks(String day) {
+        return store.read(day, s -> { List<Task<String>> out = new ArrayList<>(); for (Task<String> t : s.getTasks()) out.add(t.copy()); return out; });
+    }
+    Task<String> taskAt(String day, int row) {
+        return store.read(day, s -> row >= 0 && row < s.getTasks().size() ? s.getTasks().get(row).copy() : null);
+    }
+    int dailyCompletionPercent(String day) { return store.read(day, tracking::dailyCompletionPercent); }
+    TaskCompletionTracking.Stats stats() { return tracking.computeStats(); }
+    CompletionRollups.Bucket rollup(CompletionRollups.Period period, LocalDate date) { return tracking.rollup(period, date); }
+    // History and the current week as a completion report; see RoutineReport.write for the files produced.
+    List<File> writeReport(RoutineReport.Format format, File dir, String base, LocalDate from, LocalDate to) throws IOException {
+        return new RoutineReport(tracking, store.snapshot(), from, to).write(format, dir, base);
+    }
+    List<TaskSearchIndex.Hit> search(TaskSearchIndex.Query q) { return searchIndex.search(q); }
+    // Days among targetDays where HH:MM start-end would overlap an existing task; ignoreId (0: none) is the task being edited.
+    List<String> conflictingDays(Collection<String> targetDays, String start, String end, long ignoreId) {
+        int span = MinuteBitmap.span(start, end);
+        return span < 0 ? Collections.emptyList() : freeBusy.conflictingDays(targetDays, MinuteBitmap.start(span), MinuteBitmap.end(span), ignoreId);
+    }
+    // Makes a saved routine searchable as an archived week under the given label.
+    void indexArchive(String label, File file) throws IOException { searchIndex.indexWeek(label, load(file)); }
+
+    // ---- single edits ----
+    void addTask(String day, Task<String> task, RecurringTasks.Recurrence recurrence) {
+        Map<String, List<Task<String>>> added = new LinkedHashMap<>();
+        for (Map.Entry<String, Task<String>> e : RecurringTasks.expand(days, day, task, recurrence).entrySet())
+            added.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getValue());
+        execute(new AddTasks("Add Task", added));
+    }
+    void addToDays(Collection<String> targetDays, Task<String> task) {
+        Map<String, List<Task<String>>> added = new LinkedHashMap<>();
+        for (String d : targetDays) if (isDay(d)) added.computeIfAbsent(d, k -> new ArrayList<>()).add(task.duplicate());
+        execute(new AddTasks("Add to Days", added));
+    }
+    boolean editTask(String day, int row, String name, String start, String end, String priority, String category) {
+        Task<String> live = liveTask(day, row);
+        if (live == null) return false;
+        Task<String> before = store.read(day, s -> live.copy());
+        return execute(new EditTask(day, live, before, new Task<>(name, start, end, priority, category)));
+    }
+    boolean removeTask(String day, int row) { return removeLive(day, liveTask(day, row)); }
+    // As removeTask, for callers that cannot rely on rows staying put (other clients insert and delete meanwhile).
+    boolean removeTaskById(String day, long id) { return removeLive(day, liveTaskById(day, id)); }
+    private boolean removeLive(String day, Task<String> live) {
+        if (live == null) return false;
+        Map<String, List<Task<String>>> removed = new LinkedHashMap<>();
+        removed.put(day, new ArrayList<>(Collections.singletonList(live)));
+        return execute(new RemoveTasks("Delete Task", removed));
+    }
+    // Marks the task done/undone and records the toggle in history; returns false if the row no longer exists.
+    boolean setCompleted(String day, int row, boolean completed, LocalDate date) {
+        Task<String> live = liveTask(day, row);
+        return live != null && execute(new Toggle(day, live, completed, date));
+    }
+    // Sets the task with this id done/undone, or flips it if completed is null (read and written under the day's
+    // write lock, so concurrent flips do not both write the same value); returns its new state, null if it is gone.
+    Boolean setCompletedById(String day, long id, Boolean completed, LocalDate date) {
+        Task<String> live = liveTaskById(day, id);
+        if (live == null) return null;
+        Toggle toggle = new Toggle(day, live, completed, date);
+        return execute(toggle) ? toggle.after : null;
+    }
+    void clearDay(String day) { execute(new ReplaceDays("Clear " + day, Collections.singletonMap(day, new DaySchedule<>(day)))); }
+    void copyDay(String fromDay, String toDay) { execute(new ReplaceDays("Copy to " + toDay, Collections.singletonMap(toDay, store.read(fromDay, s -> s.copyAs(toDay))))); }
+    void newRoutine() { execute(new ReplaceWeek("New Routine", store.emptyWeek())); }
+    void replaceAll(Map<String, DaySchedule<String>> week) { execute(new ReplaceWeek("Replace Routine", week)); }
+    // Appends copies of every incoming task (completion state is not carried over) to the matching day.
+    void merge(Map<String, DaySchedule<String>> incoming) {
+        Map<String, List<Task<String>>> added = new LinkedHashMap<>();
+        for (String d : days) {
+            DaySchedule<String> inc = incoming.get(d); if (inc == null || inc.getTasks().isEmpty()) continue;
+            List<Task<String>> list = new ArrayList<>();
+            for (Task<String> t : inc.getTasks()) list.add(new Task<>(t.getTaskName(), t.getTime(), t.getEndTime(), t.getPriority(), t.getCategory()));
+            added.put(d, list);
+        }
+        execute(new AddTasks("Merge Routine", added));
+    }
+
+    // ---- undo / redo ----
+    boolean undo() { return undoLog.undo(); }
+    boolean redo() { return undoLog.redo(); }
+    String undoLabel() { return undoLog.undoLabel(); }
+    String redoLabel() { return undoLog.redoLabel(); }
+
+    // ---- templates ----
+    void saveDayAsTemplate(String name, String day) { templates.saveDayTemplate(name, store.read(day, s -> s.copy().getTasks())); }
+    // Returns false if the template is missing or empty.
+    boolean applyTemplate(String name, Collection<String> targetDays) {
+        Map<String, Collection<String>> one = new LinkedHashMap<>(); one.put(name, targetDays);
+        return bulkApplyTemplates(one) > 0;
+    }
+    // A fresh week with the template applied to the given days; the live schedule is replaced atomically.
+    boolean newRoutineFromTemplate(String name, Collection<String> targetDays) {
+        List<Task<String>> tasks = templates.getTemplate(name);
+        if (tasks == null || tasks.isEmpty()) return false;
+        Map<String, DaySchedule<String>> fresh = store.emptyWeek();
+        if (targetDays != null) for (String d : targetDays) {
+            DaySchedule<String> s = fresh.get(d); if (s == null) continue;
+            for (Task<String> t : tasks) s.addTask(new Task<>(t.getTaskName(), t.getTime(), t.getEndTime(), t.getPriority(), t.getCategory()));
+        }
+        return execute(new ReplaceWeek("New From Template", fresh));
+    }
+
+    // ---- batch operations ----
+    // Adds every task to its day under a single lock acquisition; returns the number of tasks added.
+    int bulkAdd(Map<String, ? extends Collection<Task<String>>> tasksByDay) {
+        Map<String, List<Task<String>>> added = new LinkedHashMap<>();
+        int n = 0;
+        for (Map.Entry<String, ? extends Collection<Task<String>>> e : tasksByDay.entrySet()) {
+            if (!isDay(e.getKey()) || e.getValue().isEmpty()) continue;
+            added.put(e.getKey(), new ArrayList<>(e.getValue())); n += e.getValue().size();
+        }
+        execute(new AddTasks("Bulk Add", added));
+        return n;
+    }
+    // Applies each named template to its target days in one pass; returns the number of tasks added.
+    int bulkApplyTemplates(Map<String, ? extends Collection<String>> templateToDays) {
+        Map<String, List<Task<String>>> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, ? extends Collection<String>> e : templateToDays.entrySet()) {
+            List<Task<String>> tasks = templates.getTemplate(e.getKey());
+            if (tasks == null || tasks.isEmpty()) continue;
+            for (String d : e.getValue()) {
+                List<Task<String>> dayTasks = batch.computeIfAbsent(d, k -> new ArrayList<>());
+                for (Task<String> t : tasks) dayTasks.add(new Task<>(t.getTaskName(), t.getTime(), t.getEndTime(), t.getPriority(), t.getCategory()));
+            }
+        }
+        return bulkAdd(batch);
+    }
+    // Places the requests into free time (see ScheduleOptimizer) and adds the placed ones as one undoable edit.
+    ScheduleOptimizer.Result autoPack(ScheduleOptimizer optimizer, List<ScheduleOptimizer.Request> requests, long budgetMillis) {
+        ScheduleOptimizer.Result r = optimizer.pack(store.snapshot(), requests, TimeUnit.MILLISECONDS.toNanos(budgetMillis), System.nanoTime());
+        Map<String, List<Task<String>>> added = new LinkedHashMap<>();
+        for (ScheduleOptimizer.Placement p : r.placed) added.computeIfAbsent(p.day, k -> new ArrayList<>()).add(p.toTask());
+        if (!added.isEmpty()) execute(new AddTasks("Auto-Pack", added));
+        return r;
+    }
+    // Loads every file, then either replaces the schedule with the first and merges the rest, or merges all of them.
+    int bulkImport(List<File> files, boolean replace) throws IOException { return bulkImport(files, replace, null); }
+    // As above; tasks skipped by validation are collected in the report (one for all files) when one is given.
+    int bulkImport(List<File> files, boolean replace, TaskValidator.Report report) throws IOException {
+        int tasks = 0; boolean first = true;
+        for (File f : files) {
+            Map<String, DaySchedule<String>> incoming = report == null ? load(f) : load(f, report);
+            for (DaySchedule<String> s : incoming.values()) tasks += s.getTasks().size();
+            if (replace && first) replaceAll(incoming); else merge(incoming);
+            first = false;
+        }
+        return tasks;
+    }
+
+    // ---- persistence ----
+    Map<String, DaySchedule<String>> load(File file) throws IOException { return persistence.load(file, DataPersistence.formatFromFile(file)); }
+    Map<String, DaySchedule<String>> load(File file, TaskValidator.Report report) throws IOException { return persistence.load(file, DataPersistence.formatFromFile(file), report); }
+    void open(File file) throws IOException { replaceAll(load(file)); }
+    void open(File file, TaskValidator.Report report) throws IOException { replaceAll(load(file, report)); }
+    void save(File file) throws IOException { save(file, DataPersistence.formatFromFile(file)); }
+    void save(File file, DataPersistence.Format format) throws IOException { persistence.save(store.snapshot(), file, format); }
+
+    // ---- crash recovery ----
+    // Loads the checkpoint, replays journal entries written after it and keeps journaling from then on.
+    // Returns the number of entries replayed; the recovered state is not undoable. If another instance owns the
+    // journal this one still checkpoints (merging with it) but has no crash recovery of its own.
+    int enableRecovery(File checkpoint, File journalFile) throws IOException {
+        SharedFile shared = new SharedFile(checkpoint);
+        long[] seq = new long[1];
+        SharedFile.Versioned<Map<String, DaySchedule<String>>> v = shared.read(f -> {
+            if (!f.exists()) return null;
+            seq[0] = DataPersistence.journalSeq(f); return load(f);
+        });
+        if (v.value != null) store.replaceAll(v.value);
+        synchronized (checkpointLock) { rememberCheckpoint(store.snapshot(), v.version, seq[0]); checkpointFile = shared; }
+        return startJournal(journalFile, seq[0]);
+    }
+
+    // As enableRecovery(File, File) with the days kept one key each in the backend, so a checkpoint writes only the
+    // days that changed since the previous one (nothing at all while idle).
+    int enableRecovery(StorageBackend storage, File journalFile) throws IOException {
+        long seq;
+        synchronized (checkpointLock) {
+            Map<String, DaySchedule<String>> stored = readStoredDays(storage, false);
+            StorageBackend.Entry e = storage.get(Storage.JOURNAL_SEQ);
+            seq = e == null ? 0 : Long.parseLong(e.text().trim());
+            if (!stored.isEmpty()) store.replaceAll(stored);
+            rememberCheckpoint(store.snapshot(), 0, seq);
+            checkpointStorage = storage;
+        }
+        return startJournal(journalFile, seq);
+    }
+
+    private int startJournal(File journalFile, long seq) throws IOException {
+        OpJournal j;
+        try { j = new OpJournal(journalFile, seq); }
+        catch (IOException ex) { Log.PERSIST.warning("Crash recovery off: " + ex.getMessage()); return 0; }
+        List<Map<String, Object>> ops = j.readAfter(seq);
+        for (Map<String, Object> op : ops) replay(op);
+        journal = j;
+        if (!ops.isEmpty()) { Log.PERSIST.info("Recovered " + ops.size() + " journaled edit(s)"); checkpoint(); }
+        return ops.size();
+    }
+
+    // Merges in what other writers (another instance, a sync tool) committed to the checkpoint file since this engine
+    // last wrote or read it. Returns the number of days that changed here.
+    int reloadCheckpoint() throws IOException {
+        StorageBackend storage = checkpointStorage;
+        if (storage != null) synchronized (checkpointLock) { return mergeStored(storage); }
+        SharedFile shared = checkpointFile;
+        if (shared == null) return 0;
+        synchronized (checkpointLock) {
+            if (shared.version() == checkpointVersion) return 0;   // our own write, or already merged
+            return mergeCheckpoint(shared);
+        }
+    }
+
+    // Three-way merge, task by task (by id), of the file into the live week against checkpointBase: a change made on
+    // one side only is taken, and a task both sides changed keeps the local version. Caller holds checkpointLock.
+    private int mergeCheckpoint(SharedFile shared) throws IOException {
+        long[] seq = new long[1];
+        SharedFile.Versioned<Map<String, DaySchedule<String>>> v = shared.read(f -> {
+            if (!f.exists()) return null;
+            seq[0] = DataPersistence.journalSeq(f); return store.normalize(load(f));
+        });
+        if (v.value == null) { checkpointVersion = v.version; return 0; }   // deleted: the next checkpoint recreates it
+        int n = mergeIn(v.value);
+        Map<String, DaySchedule<String>> base = new LinkedHashMap<>();
+        for (Map.Entry<String, DaySchedule<String>> e : v.value.entrySet()) base.put(e.getKey(), e.getValue().copy());
+        rememberCheckpoint(base, v.version, seq[0]);
+        return n;
+    }
+
+    // Days another writer stored since this engine last read or wrote them, merged as mergeCheckpoint does.
+    private int mergeStored(StorageBackend storage) throws IOException {
+        Map<String, DaySchedule<String>> theirs = readStoredDays(storage, true);
+        if (theirs.isEmpty()) return 0;
+        int n = mergeIn(theirs);
+        for (Map.Entry<String, DaySchedule<String>> e : theirs.entrySet()) checkpointBase.put(e.getKey(), e.getValue().copy());
+        return n;
+    }
+
+    // The stored days (only those whose key moved past the noted version if onlyChanged), noting their versions.
+    private Map<String, DaySchedule<String>> readStoredDays(StorageBackend storage, boolean onlyChanged) throws IOException {
+        Map<String, DaySchedule<String>> out = new LinkedHashMap<>();
+        TaskValidator.Report report = new TaskValidator.Report("stored days");
+        for (Map.Entry<String, Long> e : storage.versions(Storage.DAYS).entrySet()) {
+            String day = e.getKey().substring(Storage.DAYS.length());
+            if (!isDay(day) || onlyChanged && e.getValue().equals(storedVersions.get(e.getKey()))) continue;
+            StorageBackend.Entry v = storage.get(e.getKey());
+            if (v == null) continue;
+            DaySchedule<String> s = persistence.decodeDay(v.value, report);
+            out.put(day, s.getDayName().equals(day) ? s : DaySchedule.packed(day, PackedDay.of(s.getTasks())));
+            storedVersions.put(e.getKey(), v.version);
+        }
+        if (!report.isClean()) Log.PERSIST.warning(report.details());
+        return out;
+    }
+
+    // Merges each incoming day into the live one against checkpointBase; returns how many live days changed.
+    private int mergeIn(Map<String, DaySchedule<String>> incoming) throws IOException {
+        Map<String, DaySchedule<String>> merged = new LinkedHashMap<>();
+        for (int attempt = 1; ; attempt++) {
+            merged.clear();
+            Map<String, Long> versions = new HashMap<>();
+            for (Map.Entry<String, DaySchedule<String>> e : incoming.entrySet()) {
+                String d = e.getKey(); DaySchedule<String> theirs = e.getValue();
+                DaySchedule<String> base = checkpointBase.getOrDefault(d, new DaySchedule<>(d));
+                if (contentHash(theirs) == contentHash(base)) continue;   // untouched there
+                DaySchedule<String> m = store.read(d, ours -> {
+                    versions.put(d, store.version(d));
+                    DaySchedule<String> r = merge3(base, ours, theirs);
+                    return contentHash(r) == contentHash(ours) ? null : r;
+                });
+                if (m != null) merged.put(d, m);
+            }
+            if (merged.isEmpty() || execute(new ReplaceDays("Merge from Disk", merged, versions))) break;
+            if (attempt == SharedFile.MAX_ATTEMPTS) throw new IOException("Schedule kept changing during merge");   // a local edit raced the merge
+        }
+        if (!merged.isEmpty()) Log.PERSIST.info("Merged " + merged.keySet() + " changed by another writer");
+        return merged.size();
+    }
+
+    private static DaySchedule<String> merge3(DaySchedule<String> base, DaySchedule<String> ours, DaySchedule<String> theirs) {
+        LongIntMap b = indexById(base), o = indexById(ours), t = indexById(theirs);
+        List<Task<String>> out = new ArrayList<>();
+        for (Task<String> mine : ours.getTasks()) {
+            Task<String> was = taskById(base, b, mine.getId()), other = taskById(theirs, t, mine.getId());
+            if (was == null) out.add(mine);                                  // added here
+            else if (other == null) { if (!sameContent(mine, was)) out.add(mine); }   // deleted there, kept if edited here
+            else out.add(sameContent(mine, was) ? other : mine);             // their edit, unless we edited it too
+        }
+        for (Task<String> other : theirs.getTasks()) {
+            if (o.containsKey(other.getId())) continue;
+            Task<String> was = taskById(base, b, other.getId());
+            if (was == null || !sameContent(other, was)) out.add(other);     // added there, or edited there and deleted here
+        }
+        DaySchedule<String> m = new DaySchedule<>(ours.getDayName());
+        m.addTasks(out);
+        return m;
+    }
+
+    private static LongIntMap indexById(DaySchedule<String> day) {
+        LongIntMap m = new LongIntMap(); List<Task<String>> tasks = day.getTasks();
+        for (int i = 0; i < tasks.size(); i++) m.put(tasks.get(i).getId(), i);
+        return m;
+    }
+
+    private static Task<String> taskById(DaySchedule<String> day, LongIntMap index, long id) {
+        int i = index.get(id, -1);
+        return i < 0 ? null : day.getTasks().get(i);
+    }
+
+    private static boolean sameContent(Task<String> a, Task<String> b) {
+        return Objects.equals(a.getTaskName(), b.getTaskName()) && Objects.equals(a.getTime(), b.getTime()) && Objects.equals(a.getEndTime(), b.getEndTime())
+                && Objects.equals(a.getPriority(), b.getPriority()) && Objects.equals(a.getCategory(), b.getCategory()) && a.isCompleted() == b.isCompleted();
+    }
+
+    private void rememberCheckpoint(Map<String, DaySchedule<String>> days, long version, long seq) {
+        checkpointBase.clear(); checkpointBase.putAll(days);
+        checkpointVersion = version; checkpointSeq = seq;
+    }
+
+    static long stamp(File f) { return f.exists() ? f.lastModified() * 31 + f.length() : 0; }
+
+    // Hash of what a day shows (ids excluded, so a file without ids hashes the same every time it is read).
+    static long contentHash(DaySchedule<String> day) {
+        long h = 0xcbf29ce484222325L;
+        for (Task<String> t : day.getTasks()) {
+            h = mix(h, t.getTaskName()); h = mix(h, t.getTime()); h = mix(h, t.getEndTime());
+            h = mix(h, String.valueOf(t.getPriority())); h = mix(h, t.getCategory());
+            h = (h ^ (t.isCompleted() ? 1 : 2)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long mix(long h, String s) {
+        if (s != null) for (int i = 0; i < s.length(); i++) h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        return (h ^ 0xff) * 0x100000001b3L;
+    }
+
+    // While off, edits are not journaled and checkpoint() does nothing; turning it back on writes a fresh checkpoint.
+    void setJournaling(boolean on) throws IOException {
+        boolean was = journaling; journaling = on;
+        if (on && !was) checkpoint();
+    }
+
+    // Writes the current schedule with its journal position, then drops the journal entries it covers. If another
+    // writer committed since our last read, its changes are merged in first and the write is retried.
+    // Without a journal of our own, the position already in the file is carried over for the instance that owns it.
+    // Returns the number of bytes written (0 if there was nothing to write).
+    long checkpoint() throws IOException {
+        OpJournal j = journal; SharedFile shared = checkpointFile; StorageBackend storage = checkpointStorage;
+        if (shared == null && storage == null || !journaling) return 0;
+        synchronized (checkpointLock) {
+            if (storage != null) {
+                long bytes;
+                for (int attempt = 1; (bytes = tryStoreCheckpoint(storage, j)) < 0; attempt++) {
+                    if (attempt == SharedFile.MAX_ATTEMPTS) throw new IOException("Stored days kept changing during checkpoint");
+                    SharedFile.backoff(attempt);
+                    mergeStored(storage);
+                }
+                return bytes;
+            }
+            for (int attempt = 1; attempt < SharedFile.MAX_ATTEMPTS; attempt++) {
+                long bytes = tryCheckpoint(shared, j);
+                if (bytes >= 0) return bytes;
+                SharedFile.backoff(attempt);
+                mergeCheckpoint(shared);
+            }
+            long[] bytes = new long[1];
+            shared.exclusive(() -> { mergeCheckpoint(shared); bytes[0] = tryCheckpoint(shared, j); });
+            return bytes[0];
+        }
+    }
+
+    // Bytes written, or -1 if another writer committed first.
+    private long tryCheckpoint(SharedFile shared, OpJournal j) throws IOException {
+        long[] seq = {checkpointSeq};
+        Map<String, DaySchedule<String>> snap = store.snapshot(() -> { if (j != null) seq[0] = j.lastSeq(); });
+        File tmp = shared.newTemp();
+        persistence.writeCheckpoint(snap, tmp, seq[0]);
+        long bytes = tmp.length();
+        long v = shared.commit(checkpointVersion, tmp);
+        if (v < 0) return -1;
+        rememberCheckpoint(snap, v, seq[0]);
+        if (j != null) j.compact(seq[0]);
+        return bytes;
+    }
+
+    // Writes the days whose snapshot is not the one last written or read (snapshots are shared until a day changes),
+    // each expected at its noted version, plus our journal position; -1 if another writer stored one of them first.
+    private long tryStoreCheckpoint(StorageBackend storage, OpJournal j) throws IOException {
+        long[] seq = {checkpointSeq};
+        Map<String, DaySchedule<String>> snap = store.snapshot(() -> { if (j != null) seq[0] = j.lastSeq(); });
+        Map<String, byte[]> batch = new LinkedHashMap<>(); Map<String, Long> expected = new HashMap<>();
+        for (Map.Entry<String, DaySchedule<String>> e : snap.entrySet()) {
+            if (checkpointBase.get(e.getKey()) == e.getValue()) continue;
+            String key = Storage.DAYS + e.getKey();
+            batch.put(key, persistence.encodeDay(e.getKey(), e.getValue()));
+            expected.put(key, storedVersions.getOrDefault(key, 0L));
+        }
+        if (j != null && seq[0] != checkpointSeq) batch.put(Storage.JOURNAL_SEQ, Storage.utf8(Long.toString(seq[0])));
+        if (batch.isEmpty()) return 0;
+        long v = storage.apply(batch, expected);
+        if (v < 0) return -1;
+        for (String key : expected.keySet()) storedVersions.put(key, v);
+        checkpointBase.putAll(snap); checkpointSeq = seq[0];
+        if (j != null) j.compact(seq[0]);
+        long bytes = 0;
+        for (Map.Entry<String, byte[]> e : batch.entrySet()) bytes += e.getKey().length() + e.getValue().length;
+        return bytes;
+    }
+
+    private void journal(Map<String, Object> op) { OpJournal j = journal; if (j != null && journaling) j.append(op); }
+
+    private static Map<String, Object> op(String type, String day) {
+        Map<String, Object> m = new LinkedHashMap<>(); m.put("op", type); if (day != null) m.put("day", day); return m;
+    }
+
+    private static List<Object> tasksJson(List<Task<String>> tasks) {
+        List<Object> out = new ArrayList<>(); for (Task<String> t : tasks) out.add(DataPersistence.taskToJson(t)); return out;
+    }
+
+    private void replay(Map<String, Object> op) {
+        String type = String.valueOf(op.get("op"));
+        String day = op.get("day") == null ? null : String.valueOf(op.get("day"));
+        if (day != null && !isDay(day)) return;
+        switch (type) {
+            case "add":
+                store.edit(day, s -> { List<Task<String>> l = new ArrayList<>(); for (Object o : JsonUtil.arr(op.get("tasks"))) l.add(DataPersistence.taskFromJson(JsonUtil.obj(o))); s.addTasks(l); return null; });
+                break;
+            case "remove":
+                store.edit(day, s -> {
+                    List<Object> rows = JsonUtil.arr(op.get("rows"));
+                    for (int i = rows.size() - 1; i >= 0; i--) s.removeTask(((Number) rows.get(i)).intValue());
+                    return null;
+                });
+                break;
+            case "edit":
+                store.edit(day, s -> {
+                    int row = ((Number) op.get("row")).intValue();
+                    if (row < s.getTasks().size()) { setFields(s.getTasks().get(row), DataPersistence.taskFromJson(JsonUtil.obj(op.get("task")))); sortDay(s); }
+                    return null;
+                });
+                break;
+            case "toggle":
+                store.edit(day, s -> {
+                    int row = ((Number) op.get("row")).intValue();
+                    if (row < s.getTasks().size()) s.getTasks().get(row).setCompleted(Boolean.TRUE.equals(op.get("completed")));
+                    return null;
+                });
+                break;
+            case "day": {
+                DaySchedule<String> s = new DaySchedule<>(day);
+                for (Object o : JsonUtil.arr(op.get("tasks"))) s.getTasks().add(DataPersistence.taskFromJson(JsonUtil.obj(o)));
+                store.replaceDay(day, s);
+                break;
+            }
+            case "week": {
+                Map<String, DaySchedule<String>> week = new LinkedHashMap<>();
+                for (Object o : JsonUtil.arr(op.get("days"))) {
+                    Map<String, Object> d = JsonUtil.obj(o);
+                    DaySchedule<String> s = new DaySchedule<>(String.valueOf(d.get("day")));
+                    for (Object t : JsonUtil.arr(d.get("tasks"))) s.getTasks().add(DataPersistence.taskFromJson(JsonUtil.obj(t)));
+                    week.put(s.getDayName(), s);
+                }
+                store.replaceAll(week);
+                break;
+            }
+            default: Log.PERSIST.warning("Unknown journal op: " + type);
+        }
+    }
+
+    // ---- command plumbing ----
+    private boolean execute(UndoLog.Command c) {
+        if (!c.redo()) return false;
+        undoLog.push(c);
+        return true;
+    }
+
+    private boolean isDay(String d) { for (String x : days) if (x.equals(d)) return true; return false; }
+
+    // The row's task as a stable object that commands can find again later (promoted out of a packed day).
+    private Task<String> liveTask(String day, int row) {
+        return store.read(day, s -> row >= 0 && row < s.getTasks().size() ? s.editableTask(row) : null);
+    }
+    private Task<String> liveTaskById(String day, long id) {
+        return store.read(day, s -> {
+            List<Task<String>> tasks = s.getTasks();
+            for (int i = 0; i < tasks.size(); i++) if (tasks.get(i).getId() == id) return s.editableTask(i);
+            return null;
+        });
+    }
+
+    // By identity: Task does not override equals.
+    private static int indexOf(DaySchedule<String> s, Task<String> t) { return s.getTasks().indexOf(t); }
+
+    private static void setFields(Task<String> t, Task<String> v) {
+        t.setTaskName(v.getTaskName()); t.setTime(v.getTime()); t.setEndTime(v.getEndTime()); t.setPriority(v.getPriority()); t.setCategory(v.getCategory());
+    }
+
+    private static void sortDay(DaySchedule<String> schedule) { schedule.getTasks().sort(DaySchedule.BY_TIME); }
+
+    private boolean insert(Map<String, List<Task<String>>> byDay) {
+        if (byDay.isEmpty()) return false;
+        store.editDays(byDay.keySet(), week -> {
+            for (Map.Entry<String, List<Task<String>>> e : byDay.entrySet()) {
+                week.get(e.getKey()).addTasks(e.getValue());
+                Map<String, Object> op = op("add", e.getKey()); op.put("tasks", tasksJson(e.getValue())); journal(op);
+            }
+        });
+        return true;
+    }
+
+    private boolean remove(Map<String, List<Task<String>>> byDay) {
+        boolean[] any = {false};
+        store.editDays(byDay.keySet(), week -> {
+            for (Map.Entry<String, List<Task<String>>> e : byDay.entrySet()) {
+                DaySchedule<String> s = week.get(e.getKey());
+                List<Integer> rows = new ArrayList<>();
+                for (Task<String> t : e.getValue()) { int i = indexOf(s, t); if (i >= 0) rows.add(i); }
+                if (rows.isEmpty()) continue;
+                Collections.sort(rows);
+                for (int i = rows.size() - 1; i >= 0; i--) s.getTasks().remove((int) rows.get(i));
+                Map<String, Object> op = op("remove", e.getKey()); op.put("rows", new ArrayList<Object>(rows)); journal(op);
+                any[0] = true;
+            }
+        });
+        return any[0];
+    }
+
+    private final class AddTasks implements UndoLog.Command {
+        final String label; final Map<String, List<Task<String>>> added;
+        AddTasks(String label, Map<String, List<Task<String>>> added) { this.label = label; this.added = added; }
+        public String label() { return label; }
+        public boolean redo() { return insert(added); }
+        public void undo() { remove(added); }
+    }
+
+    private final class RemoveTasks implements UndoLog.Command {
+        final String label; final Map<String, List<Task<String>>> removed;
+        RemoveTasks(String label, Map<String, List<Task<String>>> removed) { this.label = label; this.removed = removed; }
+        public String label() { return label; }
+        public boolean redo() { return remove(removed); }
+        public void undo() { insert(removed); }
+    }
+
+    private final class EditTask implements UndoLog.Command {
+        final String day; final Task<String> target, before, after;
+        EditTask(String day, Task<String> target, Task<String> before, Task<String> after) { this.day = day; this.target = target; this.before = before; this.after = after; }
+        public String label() { return "Edit Task"; }
+        public boolean redo() { return apply(after); }
+        public void undo() { apply(before); }
+        private boolean apply(Task<String> values) {
+            return store.edit(day, s -> {
+                int row = indexOf(s, target);
+                if (row < 0) return false;
+                Map<String, Object> op = op("edit", day); op.put("row", row); op.put("task", DataPersistence.taskToJson(values)); journal(op);
+                setFields(target, values); sortDay(s);
+                return true;
+            });
+        }
+    }
+
+    private final class Toggle implements UndoLog.Command {
+        final String day; final Task<String> target; final LocalDate date;
+        Boolean after; boolean before, ran;   // settled under the write lock on the first run; a null after flips
+        Toggle(String day, Task<String> target, Boolean after, LocalDate date) { this.day = day; this.target = target; this.after = after; this.date = date; }
+        public String label() { return Boolean.TRUE.equals(after) ? "Mark Done" : "Mark Not Done"; }
+        public boolean redo() { return apply(after); }
+        public void undo() { apply(before); }
+        private boolean apply(Boolean value) {
+            Task<String> t = store.edit(day, s -> {
+                int row = indexOf(s, target);
+                if (row < 0) return null;
+                boolean completed = value != null ? value : !target.isCompleted();
+                if (!ran) { ran = true; before = target.isCompleted(); after = completed; }
+                Map<String, Object> op = op("toggle", day); op.put("row", row); op.put("completed", completed); journal(op);
+                target.setCompleted(completed); return target.copy();
+            });
+            if (t != null && tracking != null) tracking.recordToggle(day, t.getId(), t.getTaskName(), t.getCategory(), t.getPriority(), t.isCompleted(), date);
+            return t != null;
+        }
+    }
+
+    private final class ReplaceDays implements UndoLog.Command {
+        final String label; final Map<String, DaySchedule<String>> after; Map<String, DaySchedule<String>> before;
+        Map<String, Long> expected;   // first run only: day versions the replacement was computed from
+        ReplaceDays(String label, Map<String, DaySchedule<String>> after) { this(label, after, null); }
+        ReplaceDays(String label, Map<String, DaySchedule<String>> after, Map<String, Long> expected) { this.label = label; this.after = after; this.expected = expected; }
+        public String label() { return label; }
+        public boolean redo() { before = swap(after, expected); expected = null; return before != null; }
+        public void undo() { swap(before, null); }
+        private Map<String, DaySchedule<String>> swap(Map<String, DaySchedule<String>> next, Map<String, Long> versions) {
+            return store.replaceDays(next, versions, () -> {
+                for (Map.Entry<String, DaySchedule<String>> e : next.entrySet()) {
+                    Map<String, Object> op = op("day", e.getKey()); op.put("tasks", tasksJson(e.getValue().getTasks())); journal(op);
+                }
+            });
+        }
+    }
+
+    private final class ReplaceWeek implements UndoLog.Command {
+        final String label; final Map<String, DaySchedule<String>> after; Map<String, DaySchedule<String>> before;
+        ReplaceWeek(String label, Map<String, DaySchedule<String>> after) { this.label = label; this.after = store.normalize(after); }
+        public String label() { return label; }
+        public boolean redo() { before = swap(after); return true; }
+        public void undo() { swap(before); }
+        private Map<String, DaySchedule<String>> swap(Map<String, DaySchedule<String>> next) {
+            return store.replaceAll(next, () -> {
+                if (journal == null || !journaling) return;
+                List<Object> daysJson = new ArrayList<>();
+                for (Map.Entry<String, DaySchedule<String>> e : next.entrySet()) daysJson.add(persistence.serializeDay(e.getKey(), e.getValue()));
+                Map<String, Object> op = op("week", null); op.put("days", daysJson); journal(op);
+            });
+        }
+    }
+}
+
+// ---------------- File Watching ----------------
+// Watches single files through their directories' WatchService. Bursts of events for a file are coalesced: its
+// handler runs once, on a background thread, after the file has been quiet for the given delay.
+class FileWatcher implements Closeable {
+    interface Handler { void changed() throws Exception; }
+
+    private final WatchService service;
+    private final long quietMillis;
+    private final Map<Path, Handler> handlers = new ConcurrentHashMap<>();
+    private final Map<Path, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+    private final Set<Path> dirs = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService runner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "weekly-reload"); t.setDaemon(true); return t;
+    });
+    private volatile boolean closed;
+
+    FileWatcher(long quietMillis) throws IOException {
+        this.quietMillis = quietMillis;
+        this.service = FileSystems.getDefault().newWatchService();
+        Thread poller = new Thread(this::poll, "weekly-watch"); poller.setDaemon(true); poller.start();
+    }
+
+    void watch(File file, Handler onChange) throws IOException {
+        Path p = file.getAbsoluteFile().toPath();
+        handlers.put(p, onChange);
+        // atomic replacements arrive as CREATE, in-place writes as MODIFY
+        if (dirs.add(p.getParent())) p.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    @Override public void close() throws IOException { closed = true; runner.shutdownNow(); service.close(); }
+
+    private void poll() {
+        while (!closed) {
+            WatchKey key;
+            try { key = service.take(); } catch (InterruptedException | ClosedWatchServiceException ex) { return; }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> ev : key.pollEvents()) {
+                if (ev.kind() == StandardWatchEventKinds.OVERFLOW) {   // events were lost: recheck everything here
+                    for (Path p : handlers.keySet()) if (p.getParent().equals(dir)) schedule(p);
+                } else {
+                    Path p = dir.resolve((Path) ev.context());
+                    if (handlers.containsKey(p)) schedule(p);
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private void schedule(Path p) {
+        if (closed) return;
+        ScheduledFuture<?> old = pending.put(p, runner.schedule(() -> run(p), quietMillis, TimeUnit.MILLISECONDS));
+        if (old != null) old.cancel(false);
+    }
+
+    private void run(Path p) {
+        try { handlers.get(p).changed(); }
+        catch (Exception ex) { Log.PERSIST.log(Level.WARNING, "Reload of " + p.getFileName() + " failed", ex); }
+    }
+}
+
+// ---------------- Reminders ----------------
+// Notifies shortly before each task starts, every week on the task's day. All pending reminders sit in one priority
+// queue ordered by fire time, and a single scheduler thread sleeps until the earliest is due. Store change events
+// replace only the reminders of tasks that were added, removed, renamed or retimed; replaced ones are flagged
+// cancelled and dropped when they reach the head of the queue (or in a sweep once they are the majority).
+class ReminderScheduler implements ScheduleStore.ChangeListener, Closeable {
+    interface Listener { void remind(Reminder r); }
+
+    static final class Reminder {
+        final String day, taskName; final long taskId; final int start; final long fireAt;   // start: minute of day; fireAt: epoch millis
+        boolean cancelled;
+        Reminder(String day, long taskId, String taskName, int start, long fireAt) {
+            this.day = day; this.taskId = taskId; this.taskName = taskName; this.start = start; this.fireAt = fireAt;
+        }
+        String time() { return Times.format(start); }
+    }
+
+    // Pending reminders of one day, found by task id.
+    private static final class DayReminders {
+        final LongIntMap slots = new LongIntMap();
+        final List<Reminder> entries = new ArrayList<>();
+        Reminder get(long id) { int i = slots.get(id, -1); return i < 0 ? null : entries.get(i); }
+        void put(Reminder r) {
+            int i = slots.get(r.taskId, -1);
+            if (i >= 0) entries.set(i, r); else { slots.put(r.taskId, entries.size()); entries.add(r); }
+        }
+        void remove(long id) {
+            int i = slots.remove(id, -1); if (i < 0) return;
+            Reminder last = entries.remove(entries.size() - 1);
+            if (i < entries.size()) { entries.set(i, last); slots.put(last.taskId, i); }
+        }
+    }
+
+    private static final long MAX_SLEEP = 60_000;   // wake at least this often, so suspend and clock changes are noticed
+
+    private final ScheduleStore store;
+    private final Listener listener;
+    private final int leadMinutes;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final PriorityQueue<Reminder> queue = new PriorityQueue<>(Comparator.comparingLong(r -> r.fireAt));
+    private final Map<String, DayReminders> byDay = new HashMap<>();
+    private final ScheduledExecutorService runner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "weekly-remind"); t.setDaemon(true); return t;
+    });
+    private ScheduledFuture<?> wake;
+    private long wakeAt = Long.MAX_VALUE;
+    private int cancelled;
+    private volatile boolean closed;
+
+    // Starts with every day of the store and follows its later changes until closed.
+    ReminderScheduler(ScheduleStore store, int leadMinutes, Listener listener) {
+        this.store = store; this.leadMinutes = Math.max(0, leadMinutes); this.listener = listener;
+        store.addListener(this);
+        daysChanged(store, Arrays.asList(store.getDays()));
+    }
+
+    @Override public void daysChanged(ScheduleStore store, Collection<String> days) {
+        for (String d : days) store.read(d, s -> { update(d, s.getTasks()); return null; });
+    }
+
+    @Override public void close() {
+        closed = true;
+        store.removeListener(this);
+        runner.shutdownNow();
+    }
+
+    synchronized int pending() { return queue.size() - cancelled; }
+
+    // The next reminder to fire, or null.
+    synchronized Reminder next() { dropCancelledHead(); return queue.peek(); }
+
+    // Completed tasks and tasks without a valid start time get no reminder.
+    synchronized void update(String day, List<Task<String>> tasks) {
+        if (closed) return;
+        int dow = Times.weekday(day);
+        DayReminders dr = byDay.computeIfAbsent(day, k -> new DayReminders());
+        LongIntMap present = new LongIntMap(tasks.size());
+        ZonedDateTime now = null;
+        if (dow >= 0) for (Task<String> t : tasks) {
+            int start = t.isCompleted() ? -1 : Times.toMinutes(t.getTime());
+            if (start < 0) continue;
+            present.put(t.getId(), 1);
+            Reminder old = dr.get(t.getId());
+            if (old != null && old.start == start && old.taskName.equals(t.getTaskName())) continue;
+            if (old != null) cancel(old);
+            if (now == null) now = ZonedDateTime.now(zone);
+            Reminder r = new Reminder(day, t.getId(), t.getTaskName(), start, nextFire(now, dow, start));
+            dr.put(r); queue.add(r);
+        }
+        for (int i = dr.entries.size() - 1; i >= 0; i--) {
+            Reminder r = dr.entries.get(i);
+            if (!present.containsKey(r.taskId)) { cancel(r); dr.remove(r.taskId); }
+        }
+        if (cancelled > 64 && cancelled * 2 > queue.size()) {
+            queue.removeIf(r -> r.cancelled); cancelled = 0;
+        }
+        arm();
+    }
+
+    // First time after now that is leadMinutes before the given weekday and minute.
+    private long nextFire(ZonedDateTime now, int dow, int start) {
+        LocalDate date = now.toLocalDate().with(TemporalAdjusters.nextOrSame(DayOfWeek.of(dow + 1)));
+        ZonedDateTime at = ZonedDateTime.of(date, LocalTime.of(start / 60, start % 60), zone).minusMinutes(leadMinutes);
+        while (!at.isAfter(now)) { date = date.plusWeeks(1); at = ZonedDateTime.of(date, LocalTime.of(start / 60, start % 60), zone).minusMinutes(leadMinutes); }
+        return at.toInstant().toEpochMilli();
+    }
+
+    private void cancel(Reminder r) { if (!r.cancelled) { r.cancelled = true; cancelled++; } }
+
+    private void dropCancelledHead() {
+        while (!queue.isEmpty() && queue.peek().cancelled) { queue.poll(); cancelled--; }
+    }
+
+    // Keeps exactly one wake-up scheduled, for the earliest reminder (or MAX_SLEEP from now).
+    private void arm() {
+        dropCancelledHead();
+        if (closed) return;
+        long now = System.currentTimeMillis();
+        long at = Math.min(queue.isEmpty() ? Long.MAX_VALUE : queue.peek().fireAt, now + MAX_SLEEP);
+        if (wake != null && !wake.isDone() && wakeAt <= at) return;
+        if (wake != null) wake.cancel(false);
+        wakeAt = at;
+        wake = runner.schedule(this::fire, Math.max(0, at - now), TimeUnit.MILLISECONDS);
+    }
+
+    // Due reminders are handed to the listener outside the lock and queued again for the following week. Ones whose
+    // task has already started (the machine slept through them) are skipped.
+    private void fire() {
+        List<Reminder> due = new ArrayList<>();
+        synchronized (this) {
+            if (closed) return;
+            wake = null; wakeAt = Long.MAX_VALUE;
+            ZonedDateTime now = ZonedDateTime.now(zone);
+            long nowMillis = now.toInstant().toEpochMilli();
+            while (true) {
+                dropCancelledHead();
+                Reminder r = queue.peek();
+                if (r == null || r.fireAt > nowMillis) break;
+                queue.poll();
+                if (nowMillis - r.fireAt <= leadMinutes * 60_000L + MAX_SLEEP) due.add(r);
+                Reminder again = new Reminder(r.day, r.taskId, r.taskName, r.start, nextFire(now, Times.weekday(r.day), r.start));
+                byDay.get(r.day).put(again); queue.add(again);
+            }
+            arm();
+        }
+        for (Reminder r : due) {
+            try { listener.remind(r); }
+            catch (RuntimeException ex) { Log.UI.log(Level.WARNING, "Reminder listener failed", ex); }
+        }
+    }
+}
+
+// ---------------- Autosave ----------------
+// Decides when to save from the store's change events and from what saves cost; nothing is scheduled while nothing
+// changed. Each edit restarts a quiet period, so a burst of edits is saved once, after it ends. The quiet period is
+// short after a significant change (several days at once, or many edits pending) and grows with the measured save
+// time and size, so a large routine is not rewritten every few seconds. Whatever the pace, an edit is saved within
+// maxLossMillis of being made (less the expected save time); a failed save is retried every RETRY until one succeeds.
+class AutoSaver implements ScheduleStore.ChangeListener, Closeable {
+    // Writes the current state; returns the number of bytes written (0 if there was nothing to write).
+    interface Saver { long save() throws IOException; }
+
+    private static final long QUIET = 3_000, SIGNIFICANT_QUIET = 500;   // after the last edit
+    private static final int SIGNIFICANT_DAYS = 3, SIGNIFICANT_EDITS = 25;
+    private static final int DUTY = 10;                     // quiet period >= DUTY x average save time: <= ~10% of the time saving
+    private static final long BYTES_PER_MINUTE = 8 << 20;   // and a pace that writes no more than this
+    private static final long RETRY = 5_000;
+    private static final double WEIGHT = 0.3;               // of the newest save in the running averages
+
+    private final ScheduleStore store;
+    private final Saver saver;
+    private final long maxLossMillis;
+    private final ScheduledExecutorService runner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "weekly-autosave"); t.setDaemon(true); return t;
+    });
+    private ScheduledFuture<?> wake;
+    private long wakeAt = Long.MAX_VALUE;
+    private long edits, firstUnsaved, lastEdit, retryAt;   // times in millis of System.nanoTime()
+    private int pending;                                   // edits since the last save started
+    private boolean dirty, significant, enabled = true;
+    private int saving, saves;
+    private double avgMillis, avgBytes;
+    private volatile boolean closed;
+
+    AutoSaver(ScheduleStore store, Saver saver, long maxLossMillis) {
+        this.store = store; this.saver = saver; this.maxLossMillis = Math.max(1_000, maxLossMillis);
+        store.addListener(this);
+    }
 
-// ---------------- Tracking ----------------
-class TaskCompletionTracking {
-    private final File historyFile = new File(System.getProperty("user.home"), "weekly_routine_history.json");
+    @Override public synchronized void daysChanged(ScheduleStore store, Collection<String> days) {
+        if (closed || !enabled) return;
+        long now = now();
+        if (!dirty) { dirty = true; firstUnsaved = now; }
+        edits++; pending++; lastEdit = now;
+        if (days.size() >= SIGNIFICANT_DAYS || pending >= SIGNIFICANT_EDITS) significant = true;
+        arm();
+    }
 
-    public void recordToggle(String uiDayName, String taskName, boolean completed, LocalDate date) {
-        try {
-            Map<String,Object> root = ensureRoot();
-            Map<String,Object> daysMap = ensureMap(root, "days");
-            String dateKey = date.toString();
-            Map<String,Object> dayEntry = ensureMap(daysMap, dateKey);
-            Map<String,Object> dayTasks = ensureMap(dayEntry, uiDayName);
-            dayTasks.put(taskName, completed);
-            JsonUtil.writeString(historyFile, JsonUtil.stringify(root));
-        } catch (IOException ex) { Log.TRACK.log(Level.WARNING, "recordToggle failed", ex); }
+    @Override public void close() {
+        closed = true;
+        store.removeListener(this);
+        runner.shutdownNow();
     }
-    public int dailyCompletionPercent(DaySchedule<String> schedule) {
-        List<Task<String>> tasks = schedule.getTasks(); if (tasks.isEmpty()) return 0;
-        int done = 0; for (Task<String> t : tasks) if (t.isCompleted()) done++; return (int)Math.round(100.0*done/tasks.size());
+
+    // While off, edits are ignored and nothing is saved.
+    synchronized void setEnabled(boolean on) {
+        enabled = on;
+        if (on) arm(); else disarm();
     }
-    public Stats computeStats() {
-        try {
-            Map<String,Object> root = ensureRoot();
-            @SuppressWarnings("unchecked")
-            Map<String,Object> days = (Map<String,Object>) root.get("days");
-            LocalDate today = LocalDate.now();
-            LocalDate weekStart = today.minusDays((today.getDayOfWeek().getValue() + 6) % 7);
-            YearMonth ym = YearMonth.from(today); LocalDate monthStart = ym.atDay(1); LocalDate monthEnd = ym.atEndOfMonth();
-            int wc=0, wt=0, mc=0, mt=0;
-            for (Map.Entry<String,Object> e : days.entrySet()) {
-                LocalDate d = LocalDate.parse(e.getKey());
-                boolean inWeek = !d.isBefore(weekStart) && !d.isAfter(weekStart.plusDays(6));
-                boolean inMonth = !d.isBefore(monthStart) && !d.isAfter(monthEnd);
-                if (!inWeek && !inMonth) continue;
-                @SuppressWarnings("unchecked")
-                Map<String,Object> perDay = (Map<String,Object>) e.getValue();
-                for (Object v : perDay.values()) {
-                    @SuppressWarnings("unchecked")
-                    Map<String,Object> tasks = (Map<String,Object>) v;
-                    int total = tasks.size(); int done = 0;
-                    for (Object bv : tasks.values()) if (Boolean.TRUE.equals(bv)) done++;
-                    if (inWeek) { wc += done; wt += total; }
-                    if (inMonth) { mc += done; mt += total; }
-                }
-            }
-            return new Stats(wc, wt, mc, mt, computeStreak(days));
-        } catch (Exception ex) {
-            Log.TRACK.log(Level.WARNING, "computeStats failed", ex);
-            return new Stats(0,0,0,0,0);
-        }
+
+    synchronized boolean isDirty() { return dirty; }
+    synchronized long averageSaveMillis() { return Math.round(avgMillis); }
+    synchronized long averageSaveBytes() { return Math.round(avgBytes); }
+
+    // How long after the last edit the next save waits, given the saves measured so far.
+    synchronized long quietMillis() {
+        long quiet = Math.max(significant ? SIGNIFICANT_QUIET : QUIET, Math.round(DUTY * avgMillis));
+        return Math.max(quiet, Math.round(avgBytes * 60_000 / BYTES_PER_MINUTE));
     }
-    private int computeStreak(Map<String,Object> days) {
-        int streak=0; LocalDate d = LocalDate.now();
-        while (true) {
-            Object entry = days.get(d.toString()); if (!(entry instanceof Map)) break;
-            @SuppressWarnings("unchecked")
-            Map<String,Object> perDay = (Map<String,Object>) entry;
-            int total=0, done=0;
-            for (Object v : perDay.values()) {
-                @SuppressWarnings("unchecked")
-                Map<String,Object> tasks = (Map<String,Object>) v;
-                total += tasks.size();
-                for (Object bv : tasks.values()) if (Boolean.TRUE.equals(bv)) done++;
-            }
-            if (total==0) break;
-            int pct = (int)Math.round(100.0*done/total);
-            if (pct >= 80) { streak++; d = d.minusDays(1); } else break;
-        }
-        return streak;
+
+    // Saves on the calling thread if anything is unsaved (on exit, say).
+    void flush() throws IOException { if (isDirty()) save(); }
+
+    // When the pending edits are due: after the quiet period, but early enough that the save (taking its average
+    // time) ends within maxLossMillis of the first of them, and no sooner than a pending retry.
+    private long dueAt() {
+        long at = Math.min(lastEdit + quietMillis(), firstUnsaved + maxLossMillis - Math.round(avgMillis));
+        return Math.max(Math.max(at, firstUnsaved), retryAt);
     }
-    public static class Stats {
-        public final int weekCompleted, weekTotal, monthCompleted, monthTotal, streakDays;
-        public Stats(int wc,int wt,int mc,int mt,int s){ weekCompleted=wc; weekTotal=wt; monthCompleted=mc; monthTotal=mt; streakDays=s; }
+
+    // Keeps exactly one wake-up scheduled while there is something to save, pushed back as edits arrive.
+    private void arm() {
+        if (closed || !enabled || !dirty || saving > 0) return;
+        long at = dueAt();
+        if (wake != null && wakeAt == at) return;
+        disarm();
+        wakeAt = at;
+        wake = runner.schedule(this::run, Math.max(0, at - now()), TimeUnit.MILLISECONDS);
+    }
+
+    private void disarm() {
+        if (wake != null) wake.cancel(false);
+        wake = null; wakeAt = Long.MAX_VALUE;
+    }
+
+    private void run() {
+        synchronized (this) {
+            wake = null; wakeAt = Long.MAX_VALUE;
+            if (closed || !enabled || !dirty) return;
+            if (dueAt() > now()) { arm(); return; }
+        }
+        try { save(); } catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Autosave failed", ex); }
     }
-    private Map<String,Object> ensureRoot() throws IOException {
-        if (!historyFile.exists()) {
-            Map<String,Object> r = new LinkedHashMap<>(); r.put("days", new LinkedHashMap<String,Object>());
-            JsonUtil.writeString(historyFile, JsonUtil.stringify(r)); return r;
+
+    // Edits made while the save runs are not counted as saved: their clock starts when it did.
+    private void save() throws IOException {
+        long covered, start;
+        synchronized (this) {
+            covered = edits; start = now();
+            pending = 0; significant = false; saving++;
+            disarm();
+        }
+        long bytes = -1;
+        try { bytes = saver.save(); }
+        finally {
+            synchronized (this) {
+                saving--;
+                long took = now() - start;
+                if (bytes >= 0) {
+                    avgMillis = saves == 0 ? took : avgMillis + WEIGHT * (took - avgMillis);
+                    avgBytes = saves == 0 ? bytes : avgBytes + WEIGHT * (bytes - avgBytes);
+                    saves++; retryAt = 0;
+                    if (edits == covered) dirty = false; else firstUnsaved = start;
+                    Log.PERSIST.fine("Autosaved " + bytes + " bytes in " + took + " ms; quiet period now " + quietMillis() + " ms");
+                } else retryAt = now() + RETRY;
+                arm();
+            }
         }
-        Object root = JsonUtil.parse(JsonUtil.readString(historyFile)); return JsonUtil.obj(root);
     }
-    @SuppressWarnings("unchecked") private Map<String,Object> ensureMap(Map<String,Object> parent, String key) { return (Map<String,Object>) parent.computeIfAbsent(key, k -> new LinkedHashMap<String,Object>()); }
+
+    private static long now() { return System.nanoTime() / 1_000_000; }
 }
 
 // ---------------- UI ----------------
 public class Base extends JFrame {
-    private Map<String, DaySchedule<String>> weekSchedule;
-    private String[] daysOfWeek = {"Monday","Tuesday","Wednesday","Thursday","Friday","Saturday","Sunday"};
+    private final StorageBackend storage = openStorage();   // null: the JSON files in the home directory
+    private final ScheduleEngine engine = storage == null ? new ScheduleEngine() : new ScheduleEngine(storage);
+    private String[] daysOfWeek = engine.getDays();
     private String currentDay;
     private JComboBox<String> daySelector;
     private JTable taskTable;
@@ -660,17 +5058,22 @@ public class Base extends JFrame {
     private JButton addButton, addMultiButton, editButton, deleteButton, clearDayButton, copyDayButton;
     private JTextArea summaryArea;
     private JProgressBar dailyProgressBar;
+    private JDialog searchDialog;
+    private FileWatcher watcher;
+    private ReminderScheduler reminders;
+    private boolean remindersEnabled = true;
 
-    private final DataPersistence persistence = new DataPersistence();
     private final File autoSaveFile = new File(System.getProperty("user.home"), "weekly_routine_autosave.json");
-    private javax.swing.Timer autoSaveTimer;
+    private final File journalFile = new File(System.getProperty("user.home"), "weekly_routine_journal.log");
+    private AutoSaver autoSaver;
     private boolean autoSaveEnabled = true;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "weekly-io"); t.setDaemon(true); return t;
+    });
 
-    private final RecurringTasks.TemplateManager templateManager = new RecurringTasks.TemplateManager();
-    private final TaskCompletionTracking tracking = new TaskCompletionTracking();
+    private final RecurringTasks.TemplateManager templateManager = engine.getTemplates();
     
     public Base() {
-        weekSchedule = new LinkedHashMap<>(); for (String d : daysOfWeek) weekSchedule.put(d, new DaySchedule<>(d));
         currentDay = daysOfWeek[0];
         setTitle("Weekly Routine Manager");
         setSize(1080, 800);
@@ -678,14 +5081,14 @@ public class Base extends JFrame {
         setLayout(new BorderLayout(10, 10));
         setJMenuBar(createMenuBar());
         createTopPanel(); createCenterPanel(); createBottomPanel();
-        if (autoSaveFile.exists()) {
-            try { weekSchedule = persistence.load(autoSaveFile, DataPersistence.Format.JSON); }
-            catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Autosave load failed", ex); }
-        }
+        try { if (storage != null) engine.enableRecovery(storage, journalFile); else engine.enableRecovery(autoSaveFile, journalFile); }
+        catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Autosave load failed", ex); }
         loadDaySchedule(currentDay); updateDailyProgress();
         setupAutoSave();
+        startWatching();
+        if (remindersEnabled) startReminders();
         addWindowListener(new WindowAdapter() { @Override public void windowClosing(WindowEvent e) {
-            if (autoSaveEnabled) try { persistence.save(weekSchedule, autoSaveFile, DataPersistence.Format.JSON);} catch (IOException ex){ Log.PERSIST.log(Level.WARNING,"Autosave on close failed",ex); }
+            if (autoSaveEnabled) try { autoSaver.flush(); } catch (IOException ex){ Log.PERSIST.log(Level.WARNING,"Autosave on close failed",ex); }
         }});
         setLocationRelativeTo(null); setVisible(true);
     }
@@ -708,34 +5111,103 @@ public class Base extends JFrame {
         JMenuItem exportJson = new JMenuItem("Export as JSON..."); exportJson.addActionListener(e -> onExport(DataPersistence.Format.JSON));
         JMenuItem exportXml = new JMenuItem("Export as XML..."); exportXml.addActionListener(e -> onExport(DataPersistence.Format.XML));
         JMenuItem exportSer = new JMenuItem("Export as Serialized..."); exportSer.addActionListener(e -> onExport(DataPersistence.Format.SERIALIZED));
+        JMenuItem exportJsonGz = new JMenuItem("Export as Compressed JSON..."); exportJsonGz.addActionListener(e -> onExport(DataPersistence.Format.JSON, true));
+        JMenuItem exportXmlGz = new JMenuItem("Export as Compressed XML..."); exportXmlGz.addActionListener(e -> onExport(DataPersistence.Format.XML, true));
+        JMenuItem exportIcs = new JMenuItem("Export as iCalendar..."); exportIcs.addActionListener(e -> onExport(DataPersistence.Format.ICS));
         exportMenu.add(exportJson); exportMenu.add(exportXml); exportMenu.add(exportSer);
+        exportMenu.addSeparator(); exportMenu.add(exportJsonGz); exportMenu.add(exportXmlGz);
+        exportMenu.addSeparator(); exportMenu.add(exportIcs);
         JMenu importMenu = new JMenu("Import");
         JMenuItem importFile = new JMenuItem("Import from file..."); importFile.addActionListener(e -> onImport());
         importMenu.add(importFile);
-        JCheckBoxMenuItem autoSave = new JCheckBoxMenuItem("Auto-save (every 60s)");
+        JCheckBoxMenuItem autoSave = new JCheckBoxMenuItem("Auto-save");
         autoSave.setSelected(autoSaveEnabled);
-        autoSave.addActionListener(e -> { autoSaveEnabled = ((JCheckBoxMenuItem)e.getSource()).isSelected(); if (autoSaveEnabled) startAutoSave(); else stopAutoSave(); });
+        autoSave.addActionListener(e -> {
+            autoSaveEnabled = ((JCheckBoxMenuItem)e.getSource()).isSelected();
+            autoSaver.setEnabled(autoSaveEnabled);
+            try { engine.setJournaling(autoSaveEnabled); } catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Autosave failed", ex); }
+        });
+        JCheckBoxMenuItem remind = new JCheckBoxMenuItem("Remind 5 min before tasks");
+        remind.setSelected(remindersEnabled);
+        remind.addActionListener(e -> {
+            remindersEnabled = ((JCheckBoxMenuItem)e.getSource()).isSelected();
+            if (remindersEnabled) startReminders(); else stopReminders();
+        });
+        JMenu edit = new JMenu("Edit");
+        int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        JMenuItem undo = new JMenuItem("Undo"); undo.addActionListener(e -> { if (engine.undo()) refreshView(); });
+        undo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut));
+        JMenuItem redo = new JMenuItem("Redo"); redo.addActionListener(e -> { if (engine.redo()) refreshView(); });
+        redo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut));
+        JMenuItem autoPack = new JMenuItem("Auto-Pack Tasks..."); autoPack.addActionListener(e -> onAutoPack());
+        JMenuItem freeTime = new JMenuItem("Find Free Time..."); freeTime.addActionListener(e -> onFindFreeTime());
+        edit.add(undo); edit.add(redo); edit.addSeparator(); edit.add(autoPack); edit.add(freeTime);
+        edit.addMenuListener(new javax.swing.event.MenuListener() {
+            @Override public void menuSelected(javax.swing.event.MenuEvent e) {
+                String u = engine.undoLabel(), r = engine.redoLabel();
+                undo.setText(u == null ? "Undo" : "Undo " + u); undo.setEnabled(u != null);
+                redo.setText(r == null ? "Redo" : "Redo " + r); redo.setEnabled(r != null);
+            }
+            @Override public void menuDeselected(javax.swing.event.MenuEvent e) { undo.setEnabled(true); redo.setEnabled(true); }
+            @Override public void menuCanceled(javax.swing.event.MenuEvent e) { undo.setEnabled(true); redo.setEnabled(true); }
+        });
         JMenu templates = new JMenu("Templates");
         JMenuItem saveDayTpl = new JMenuItem("Save Current Day as Template..."); saveDayTpl.addActionListener(e -> onSaveDayTemplate());
         JMenuItem applyTpl = new JMenuItem("Apply Template to Days..."); applyTpl.addActionListener(e -> onApplyTemplateToDays());
         JMenuItem manageTpl = new JMenuItem("Delete Template..."); manageTpl.addActionListener(e -> onDeleteTemplate());
         JMenu stats = new JMenu("Stats");
-        JMenuItem showStats = new JMenuItem("Show Weekly/Monthly Stats"); showStats.addActionListener(e -> onShowStats());
+        JMenuItem showStats = new JMenuItem("Show Completion Stats"); showStats.addActionListener(e -> onShowStats());
+        JMenuItem exportReport = new JMenuItem("Export Report..."); exportReport.addActionListener(e -> onExportReport());
+        stats.add(showStats); stats.add(exportReport);
+        JMenu search = new JMenu("Search");
+        JMenuItem findTasks = new JMenuItem("Find Tasks..."); findTasks.addActionListener(e -> onSearch());
+        findTasks.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, shortcut));
+        JMenuItem addArchive = new JMenuItem("Add Archived Week..."); addArchive.addActionListener(e -> onAddArchivedWeek());
+        search.add(findTasks); search.add(addArchive);
         templates.add(saveDayTpl); templates.add(applyTpl); templates.add(manageTpl);
-        file.add(save); file.add(load); file.addSeparator(); file.add(exportMenu); file.add(importMenu); file.addSeparator(); file.add(autoSave);
-        bar.add(file); bar.add(templates); bar.add(stats); return bar;
+        file.add(save); file.add(load); file.addSeparator(); file.add(exportMenu); file.add(importMenu); file.addSeparator(); file.add(autoSave); file.add(remind);
+        bar.add(file); bar.add(edit); bar.add(templates); bar.add(stats); bar.add(search); return bar;
     }
 
+    // Saves after edits settle, never more than weekly.autosave.maxLossSeconds (default 60) after one is made.
     private void setupAutoSave() {
-        autoSaveTimer = new javax.swing.Timer(60_000, e -> {
-            if (!autoSaveEnabled) return;
-            try { persistence.save(weekSchedule, autoSaveFile, DataPersistence.Format.JSON); }
-            catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Autosave failed", ex); }
-        });
-        if (autoSaveEnabled) autoSaveTimer.start();
+        autoSaver = new AutoSaver(engine.getStore(), engine::checkpoint, Long.getLong("weekly.autosave.maxLossSeconds", 60) * 1000);
+        autoSaver.setEnabled(autoSaveEnabled);
+    }
+    // Undo/redo and reloads may touch any day, so the visible table and progress are simply reloaded.
+    private void refreshView() { loadDaySchedule(currentDay); updateDailyProgress(); }
+    private static StorageBackend openStorage() {
+        try { return Storage.fromConfig(); }
+        catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Storage backend unavailable, using files", ex); return null; }
+    }
+    // Picks up changes other processes make to the routine, template and history files.
+    private void startWatching() {
+        try {
+            watcher = new FileWatcher(500);
+            if (storage != null) {
+                if (storage.watchFile() != null) watcher.watch(storage.watchFile(), () -> {
+                    int days = engine.reloadCheckpoint();
+                    templateManager.reload(); engine.getTracking().reloadIfChanged();
+                    if (days > 0) SwingUtilities.invokeLater(this::refreshView);
+                });
+                return;
+            }
+            watcher.watch(autoSaveFile, () -> { if (engine.reloadCheckpoint() > 0) SwingUtilities.invokeLater(this::refreshView); });
+            watcher.watch(templateManager.getFile(), templateManager::reload);
+            TaskCompletionTracking tracking = engine.getTracking();
+            watcher.watch(tracking.getHistoryFile(), tracking::reloadIfChanged);
+            watcher.watch(tracking.getRollupsFile(), tracking::reloadIfChanged);
+        } catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "File watching unavailable", ex); }
+    }
+    private void startReminders() { if (reminders == null) reminders = engine.startReminders(5, r -> SwingUtilities.invokeLater(() -> showReminder(r))); }
+    private void stopReminders() { if (reminders != null) { reminders.close(); reminders = null; } }
+    // Non-modal, so a reminder never blocks editing.
+    private void showReminder(ReminderScheduler.Reminder r) {
+        JOptionPane pane = new JOptionPane(r.taskName + " starts at " + r.time() + " (" + r.day + ")", JOptionPane.INFORMATION_MESSAGE);
+        JDialog dialog = pane.createDialog(this, "Reminder");
+        dialog.setModal(false); dialog.setVisible(true);
+        Toolkit.getDefaultToolkit().beep();
     }
-    private void startAutoSave() { if (autoSaveTimer != null && !autoSaveTimer.isRunning()) autoSaveTimer.start(); }
-    private void stopAutoSave() { if (autoSaveTimer != null && autoSaveTimer.isRunning()) autoSaveTimer.stop(); }
     
     private void createTopPanel() {
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 15, 10));
@@ -785,13 +5257,9 @@ public class Base extends JFrame {
         JScrollPane scrollPane = new JScrollPane(taskTable); scrollPane.setBorder(BorderFactory.createTitledBorder("Daily Tasks"));
         tableModel.addTableModelListener(e -> {
             if (e.getType()==TableModelEvent.UPDATE && e.getColumn()==0 && e.getFirstRow()>=0) {
-                int row = e.getFirstRow(); DaySchedule<String> schedule = weekSchedule.get(currentDay);
-                if (row < schedule.getTasks().size()) {
-                    Task<String> t = schedule.getTasks().get(row);
-                    boolean completed = Boolean.TRUE.equals(tableModel.getValueAt(row, 0));
-                    t.setCompleted(completed); tracking.recordToggle(currentDay, t.getTaskName(), completed, LocalDate.now());
-                    updateDailyProgress();
-                }
+                int row = e.getFirstRow();
+                boolean completed = Boolean.TRUE.equals(tableModel.getValueAt(row, 0));
+                if (engine.setCompleted(currentDay, row, completed, LocalDate.now())) updateDailyProgress();
             }
         });
 
@@ -816,16 +5284,19 @@ public class Base extends JFrame {
     }
 
     private void updateDailyProgress() {
-        DaySchedule<String> schedule = weekSchedule.get(currentDay);
-        int pct = tracking.dailyCompletionPercent(schedule);
+        int pct = engine.dailyCompletionPercent(currentDay);
         dailyProgressBar.setValue(pct); dailyProgressBar.setString(pct + "%");
     }
 
-    private boolean isValidHHMM(String s) {
-        return s != null && s.matches("\\d{2}:\\d{2}");
-    }
-    private boolean isEndAfterOrEqual(String start, String end) {
-        return end.compareTo(start) >= 0;
+    // Shows why the entered fields are not a valid task; returns false in that case.
+    private boolean checkEntry(String name, String start, String end) {
+        int problem = TaskValidator.checkEntry(name, start, end);
+        if (problem == TaskValidator.OK) return true;
+        String msg = problem == TaskValidator.NO_NAME ? "Task name is required!"
+                : problem == TaskValidator.END_BEFORE_START ? "End time must be after or equal to start time!"
+                : "Times must be valid HH:MM (00:00–23:59): " + TaskValidator.describe(problem) + ".";
+        JOptionPane.showMessageDialog(this, msg, "Input Error", JOptionPane.ERROR_MESSAGE);
+        return false;
     }
     
     private void addTaskWithRecurrence() {
@@ -839,15 +5310,11 @@ public class Base extends JFrame {
             if (taskName.isEmpty() || start.isEmpty() || end.isEmpty()) {
                 JOptionPane.showMessageDialog(this, "Task name, start, and end time are required!", "Input Error", JOptionPane.ERROR_MESSAGE); return;
             }
-            if (!isValidHHMM(start) || !isValidHHMM(end)) {
-                JOptionPane.showMessageDialog(this, "Times must be in HH:MM format!", "Input Error", JOptionPane.ERROR_MESSAGE); return;
-            }
-            if (!isEndAfterOrEqual(start, end)) {
-                JOptionPane.showMessageDialog(this, "End time must be after or equal to start time!", "Input Error", JOptionPane.ERROR_MESSAGE); return;
-            }
+            if (!checkEntry(taskName, start, end)) return;
             Task<String> task = new Task<>(taskName, start, end, priority, category);
             RecurringTasks.Recurrence rec = parseRecurrence(recurrenceStr);
-            RecurringTasks.applyRecurrence(weekSchedule, daysOfWeek, currentDay, task, rec);
+            if (!confirmOverlap(RecurringTasks.expand(daysOfWeek, currentDay, task, rec).keySet(), start, end, 0)) return;
+            engine.addTask(currentDay, task, rec);
             taskNameField.setText(""); timeField.setText(""); endTimeField.setText("");
             loadDaySchedule(currentDay); updateDailyProgress();
             JOptionPane.showMessageDialog(this, "Task added" + (rec != RecurringTasks.Recurrence.NONE ? " with recurrence." : "!"), "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -867,12 +5334,11 @@ public class Base extends JFrame {
             if (taskName.isEmpty() || start.isEmpty() || end.isEmpty()) {
                 JOptionPane.showMessageDialog(this, "Task name, start, and end time are required!", "Input Error", JOptionPane.ERROR_MESSAGE); return;
             }
-            if (!isValidHHMM(start) || !isValidHHMM(end) || !isEndAfterOrEqual(start, end)) {
-                JOptionPane.showMessageDialog(this, "Invalid start/end time.", "Input Error", JOptionPane.ERROR_MESSAGE); return;
-            }
+            if (!checkEntry(taskName, start, end)) return;
             List<String> selectedDays = showDaysSelectionDialog("Apply task to which days?"); if (selectedDays == null || selectedDays.isEmpty()) return;
+            if (!confirmOverlap(selectedDays, start, end, 0)) return;
             Task<String> t = new Task<>(taskName, start, end, priority, category);
-            RecurringTasks.applyToDays(weekSchedule, selectedDays, t);
+            engine.addToDays(selectedDays, t);
             loadDaySchedule(currentDay); updateDailyProgress();
             JOptionPane.showMessageDialog(this, "Task applied to selected days.", "Success", JOptionPane.INFORMATION_MESSAGE);
         } catch (Exception ex) {
@@ -884,9 +5350,8 @@ public class Base extends JFrame {
     private void editSelectedTask() {
         int row = taskTable.getSelectedRow();
         if (row == -1) { JOptionPane.showMessageDialog(this, "Select a task to edit.", "Info", JOptionPane.INFORMATION_MESSAGE); return; }
-        DaySchedule<String> schedule = weekSchedule.get(currentDay);
-        if (row >= schedule.getTasks().size()) return;
-        Task<String> t = schedule.getTasks().get(row);
+        Task<String> t = engine.taskAt(currentDay, row);
+        if (t == null) return;
 
         JTextField nameF = new JTextField(t.getTaskName());
         JTextField startF = new JTextField(t.getTime());
@@ -904,20 +5369,21 @@ public class Base extends JFrame {
             String newName = nameF.getText().trim();
             String newStart = startF.getText().trim();
             String newEnd = endF.getText().trim();
-            if (newName.isEmpty() || !isValidHHMM(newStart) || !isValidHHMM(newEnd) || !isEndAfterOrEqual(newStart, newEnd)) {
-                JOptionPane.showMessageDialog(this, "Invalid input.", "Error", JOptionPane.ERROR_MESSAGE); return;
-            }
-            t.setTaskName(newName); t.setTime(newStart); t.setEndTime(newEnd);
-            t.setPriority((String) prioF.getSelectedItem()); t.setCategory((String) catF.getSelectedItem());
-            schedule.getTasks().sort((a,b) -> {
-                int c = a.getTime().compareTo(b.getTime());
-                if (c != 0) return c;
-                return a.getEndTime().compareTo(b.getEndTime());
-            });
+            if (!checkEntry(newName, newStart, newEnd)) return;
+            if (!confirmOverlap(Collections.singletonList(currentDay), newStart, newEnd, t.getId())) return;
+            engine.editTask(currentDay, row, newName, newStart, newEnd, (String) prioF.getSelectedItem(), (String) catF.getSelectedItem());
             loadDaySchedule(currentDay); updateDailyProgress();
         }
     }
 
+    // Overlapping tasks are allowed, but only once the user has seen where they clash.
+    private boolean confirmOverlap(Collection<String> targetDays, String start, String end, long ignoreId) {
+        List<String> clash = engine.conflictingDays(targetDays, start, end, ignoreId);
+        if (clash.isEmpty()) return true;
+        return JOptionPane.showConfirmDialog(this, start + "–" + end + " overlaps existing tasks on " + String.join(", ", clash) + ".\nContinue anyway?",
+                "Time Conflict", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) == JOptionPane.YES_OPTION;
+    }
+
     private RecurringTasks.Recurrence parseRecurrence(String s) {
         if (s == null) return RecurringTasks.Recurrence.NONE;
         switch (s) { case "Daily": return RecurringTasks.Recurrence.DAILY; case "Weekly": return RecurringTasks.Recurrence.WEEKLY; case "Weekdays": return RecurringTasks.Recurrence.WEEKDAYS; default: return RecurringTasks.Recurrence.NONE; }
@@ -927,7 +5393,7 @@ public class Base extends JFrame {
         int selectedRow = taskTable.getSelectedRow();
         if (selectedRow == -1) { JOptionPane.showMessageDialog(this, "Please select a task to delete!", "Selection Error", JOptionPane.WARNING_MESSAGE); return; }
         try {
-            weekSchedule.get(currentDay).removeTask(selectedRow);
+            engine.removeTask(currentDay, selectedRow);
             loadDaySchedule(currentDay); updateDailyProgress();
             JOptionPane.showMessageDialog(this, "Task deleted successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
         } catch (Exception ex) {
@@ -939,7 +5405,7 @@ public class Base extends JFrame {
     private void clearCurrentDay() {
         int confirm = JOptionPane.showConfirmDialog(this, "Are you sure you want to clear all tasks for " + currentDay + "?", "Confirm Clear", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
-            weekSchedule.put(currentDay, new DaySchedule<>(currentDay));
+            engine.clearDay(currentDay);
             loadDaySchedule(currentDay); updateDailyProgress();
             JOptionPane.showMessageDialog(this, "Day cleared successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
         }
@@ -949,13 +5415,7 @@ public class Base extends JFrame {
         String targetDay = (String) JOptionPane.showInputDialog(this, "Copy " + currentDay + "'s schedule to:", "Copy Schedule", JOptionPane.QUESTION_MESSAGE, null, daysOfWeek, daysOfWeek[0]);
         if (targetDay != null && !targetDay.equals(currentDay)) {
             try {
-                DaySchedule<String> sourceSchedule = weekSchedule.get(currentDay);
-                DaySchedule<String> targetSchedule = new DaySchedule<>(targetDay);
-                for (Task<String> task : sourceSchedule.getTasks()) {
-                    Task<String> newTask = new Task<>(task.getTaskName(), task.getTime(), task.getEndTime(), task.getPriority(), task.getCategory());
-                    newTask.setCompleted(task.isCompleted()); targetSchedule.addTask(newTask);
-                }
-                weekSchedule.put(targetDay, targetSchedule);
+                engine.copyDay(currentDay, targetDay);
                 JOptionPane.showMessageDialog(this, "Schedule copied to " + targetDay + " successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
             } catch (Exception ex) {
                 Log.UI.log(Level.WARNING, "Copy failed", ex);
@@ -977,18 +5437,12 @@ public class Base extends JFrame {
             onSave();
         }
 
-        Map<String, DaySchedule<String>> fresh = new LinkedHashMap<>();
-        for (String d : daysOfWeek) fresh.put(d, new DaySchedule<>(d));
-        weekSchedule = fresh;
+        engine.newRoutine();
         currentDay = daysOfWeek[0];
         daySelector.setSelectedItem(currentDay);
         loadDaySchedule(currentDay);
         updateDailyProgress();
 
-        try {
-            if (autoSaveFile.exists()) autoSaveFile.delete();
-        } catch (Exception ignore) {}
-
         JOptionPane.showMessageDialog(this, "New routine created.", "New Routine", JOptionPane.INFORMATION_MESSAGE);
     }
 
@@ -1024,19 +5478,8 @@ public class Base extends JFrame {
         );
         if (res != JOptionPane.OK_OPTION) return;
 
-        Map<String, DaySchedule<String>> fresh = new LinkedHashMap<>();
-        for (String d : daysOfWeek) fresh.put(d, new DaySchedule<>(d));
-        weekSchedule = fresh;
-
         List<String> days = showDaysSelectionDialog("Apply template to which days?");
-        if (days != null && !days.isEmpty()) {
-            for (String d : days) {
-                DaySchedule<String> s = weekSchedule.get(d);
-                for (Task<String> t : templateTasks) {
-                    s.addTask(new Task<>(t.getTaskName(), t.getTime(), t.getEndTime(), t.getPriority(), t.getCategory()));
-                }
-            }
-        }
+        engine.newRoutineFromTemplate(name, days);
 
         currentDay = daysOfWeek[0];
         daySelector.setSelectedItem(currentDay);
@@ -1048,8 +5491,7 @@ public class Base extends JFrame {
 
     private void loadDaySchedule(String day) {
         tableModel.setRowCount(0);
-        DaySchedule<String> schedule = weekSchedule.get(day);
-        for (Task<String> task : schedule.getTasks()) {
+        for (Task<String> task : engine.tasks(day)) {
             tableModel.addRow(new Object[]{
                     task.isCompleted(),
                     task.getTime(),
@@ -1064,8 +5506,9 @@ public class Base extends JFrame {
     private void showWeeklySummary() {
         StringBuilder summary = new StringBuilder();
         summary.append("WEEKLY ROUTINE SUMMARY\n").append("=".repeat(60)).append("\n\n");
+        Map<String, DaySchedule<String>> snapshot = engine.snapshot();
         for (String day : daysOfWeek) {
-            DaySchedule<String> schedule = weekSchedule.get(day);
+            DaySchedule<String> schedule = snapshot.get(day);
             summary.append(day).append(" (").append(schedule.getTasks().size()).append(" tasks):\n");
             if (schedule.getTasks().isEmpty()) {
                 summary.append("  No tasks scheduled\n");
@@ -1083,7 +5526,7 @@ public class Base extends JFrame {
     }
 
     private void onShowStats() {
-        TaskCompletionTracking.Stats s = tracking.computeStats();
+        TaskCompletionTracking.Stats s = engine.stats();
         StringBuilder b = new StringBuilder();
         b.append("Stats\n").append("=".repeat(40)).append("\n");
         b.append("This week: ").append(s.weekCompleted).append(" / ").append(s.weekTotal).append(" completed");
@@ -1092,15 +5535,173 @@ public class Base extends JFrame {
         b.append("This month: ").append(s.monthCompleted).append(" / ").append(s.monthTotal).append(" completed");
         if (s.monthTotal > 0) b.append(" (").append((int)Math.round(100.0*s.monthCompleted/s.monthTotal)).append("%)");
         b.append("\n");
+        b.append("This year: ").append(s.yearCompleted).append(" / ").append(s.yearTotal).append(" completed");
+        if (s.yearTotal > 0) b.append(" (").append((int)Math.round(100.0*s.yearCompleted/s.yearTotal)).append("%)");
+        b.append("\n");
         b.append("Streak (>=80% days): ").append(s.streakDays).append(" day(s)\n");
+        CompletionRollups.Bucket month = engine.rollup(CompletionRollups.Period.MONTH, LocalDate.now());
+        if (month != null) {
+            b.append("\nThis month by category:\n");
+            for (Map.Entry<String, int[]> e : month.byCategory.entrySet()) appendBreakdown(b, e.getKey(), e.getValue());
+            b.append("\nThis month by priority:\n");
+            for (Map.Entry<String, int[]> e : month.byPriority.entrySet()) appendBreakdown(b, e.getKey(), e.getValue());
+        }
         JOptionPane.showMessageDialog(this, b.toString(), "Statistics", JOptionPane.INFORMATION_MESSAGE);
     }
 
+    // HTML unless the chosen name ends in .csv; written on the I/O thread since it walks the whole history.
+    private void onExportReport() {
+        JFileChooser fc = new JFileChooser(); fc.setDialogTitle("Export Completion Report (.html or .csv)");
+        fc.setSelectedFile(new File("routine-report.html"));
+        if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File f = fc.getSelectedFile();
+        String name = f.getName(); int dot = name.lastIndexOf('.');
+        RoutineReport.Format format = name.toLowerCase(Locale.ROOT).endsWith(".csv") ? RoutineReport.Format.CSV : RoutineReport.Format.HTML;
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        File dir = f.getAbsoluteFile().getParentFile();
+        ioExecutor.execute(() -> {
+            try {
+                List<File> written = engine.writeReport(format, dir, base, null, null);
+                StringBuilder msg = new StringBuilder("Report written to:");
+                for (File w : written) msg.append("\n").append(w.getAbsolutePath());
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, msg.toString(), "Export Report", JOptionPane.INFORMATION_MESSAGE));
+            } catch (IOException ex) {
+                Log.TRACK.log(Level.SEVERE, "Report export failed", ex);
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Report export failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+            }
+        });
+    }
+
+    private static void appendBreakdown(StringBuilder b, String label, int[] counts) {
+        b.append("  ").append(label).append(": ").append(counts[0]).append(" / ").append(counts[1]);
+        if (counts[1] > 0) b.append(" (").append((int)Math.round(100.0*counts[0]/counts[1])).append("%)");
+        b.append("\n");
+    }
+
+    private void onAutoPack() {
+        JTextArea lines = new JTextArea("# name, minutes, priority, category[, HH:MM-HH:MM][, weekdays | day]\nReading, 30, Medium, Personal, 18:00-22:00\n", 10, 50);
+        JTextField fromF = new JTextField("06:00", 5), toF = new JTextField("22:00", 5);
+        JPanel horizon = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 4));
+        horizon.add(new JLabel("Schedule between")); horizon.add(fromF); horizon.add(new JLabel("and")); horizon.add(toF);
+        JPanel panel = new JPanel(new BorderLayout(8, 8));
+        panel.add(new JLabel("Tasks to place into free time, one per line:"), BorderLayout.NORTH);
+        panel.add(new JScrollPane(lines), BorderLayout.CENTER); panel.add(horizon, BorderLayout.SOUTH);
+        if (JOptionPane.showConfirmDialog(this, panel, "Auto-Pack Tasks", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) return;
+        int from = Times.toMinutes(fromF.getText().trim()), to = Times.toMinutes(toF.getText().trim());
+        if (from < 0 || to <= from) { JOptionPane.showMessageDialog(this, "Enter the time range as HH:MM, start before end.", "Invalid Range", JOptionPane.ERROR_MESSAGE); return; }
+        List<ScheduleOptimizer.Request> requests;
+        try { requests = ScheduleOptimizer.parse(lines.getText(), daysOfWeek); }
+        catch (IllegalArgumentException ex) { JOptionPane.showMessageDialog(this, ex.getMessage(), "Invalid Task", JOptionPane.ERROR_MESSAGE); return; }
+        if (requests.isEmpty()) return;
+        ScheduleOptimizer.Result r = engine.autoPack(new ScheduleOptimizer(daysOfWeek, from, to), requests, 300);
+        refreshView();
+        StringBuilder msg = new StringBuilder("Placed " + r.placed.size() + " of " + requests.size() + " task(s) in " + r.nanos / 1_000_000 + " ms.");
+        if (!r.unplaced.isEmpty()) {
+            msg.append("\nNo room for:");
+            for (int i = 0; i < r.unplaced.size() && i < 15; i++) msg.append("\n  ").append(r.unplaced.get(i).name).append(" (").append(r.unplaced.get(i).duration).append(" min)");
+            if (r.unplaced.size() > 15) msg.append("\n  ... and ").append(r.unplaced.size() - 15).append(" more");
+        }
+        JOptionPane.showMessageDialog(this, msg.toString(), "Auto-Pack", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private void onFindFreeTime() {
+        JTextField minutesF = new JTextField("30", 4), fromF = new JTextField("06:00", 5), toF = new JTextField("22:00", 5);
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 4));
+        panel.add(new JLabel("Minutes:")); panel.add(minutesF);
+        panel.add(new JLabel("between")); panel.add(fromF); panel.add(new JLabel("and")); panel.add(toF);
+        if (JOptionPane.showConfirmDialog(this, panel, "Find Free Time", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) return;
+        int from = Times.toMinutes(fromF.getText().trim()), to = Times.toMinutes(toF.getText().trim()), minutes;
+        try { minutes = Integer.parseInt(minutesF.getText().trim()); } catch (NumberFormatException ex) { minutes = -1; }
+        if (from < 0 || to <= from || minutes <= 0) { JOptionPane.showMessageDialog(this, "Enter minutes and a HH:MM range, start before end.", "Invalid Range", JOptionPane.ERROR_MESSAGE); return; }
+        FreeBusyIndex fb = engine.getFreeBusy();
+        StringBuilder out = new StringBuilder();
+        for (String d : daysOfWeek) {
+            int free = fb.freeMinutes(d, from, to), first = fb.nextFreeGap(d, from, to, minutes);
+            out.append(String.format("%-10s %2dh %02dm free   ", d, free / 60, free % 60))
+               .append(first < 0 ? "no " + minutes + "-min slot" : "first " + minutes + "-min slot " + Times.format(first)).append('\n');
+        }
+        int common = fb.commonFreeGap(Arrays.asList(daysOfWeek), from, to, minutes);
+        out.append('\n').append(common < 0 ? "No slot is free on every day." : "Free on every day from " + Times.format(common) + ".");
+        JTextArea area = new JTextArea(out.toString()); area.setEditable(false); area.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        JOptionPane.showMessageDialog(this, area, "Free Time", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private void onSearch() {
+        if (searchDialog == null) searchDialog = createSearchDialog();
+        searchDialog.setVisible(true); searchDialog.toFront();
+    }
+
+    private JDialog createSearchDialog() {
+        JDialog dialog = new JDialog(this, "Find Tasks", false);
+        JPanel panel = new JPanel(new BorderLayout(10, 10)); panel.setBorder(BorderFactory.createEmptyBorder(10,10,10,10));
+        JTextField textF = new JTextField(20);
+        JComboBox<String> catF = new JComboBox<>(new String[]{"Any","Work","Exercise","Personal","Study","Health","Other"});
+        JComboBox<String> prioF = new JComboBox<>(new String[]{"Any","High","Medium","Low"});
+        JComboBox<String> doneF = new JComboBox<>(new String[]{"Any","Done","Open"});
+        JTextField fromF = new JTextField(5); JTextField toF = new JTextField(5);
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 4));
+        filters.add(new JLabel("Text:")); filters.add(textF);
+        filters.add(new JLabel("Category:")); filters.add(catF);
+        filters.add(new JLabel("Priority:")); filters.add(prioF);
+        filters.add(new JLabel("Status:")); filters.add(doneF);
+        filters.add(new JLabel("From:")); filters.add(fromF); filters.add(new JLabel("To:")); filters.add(toF);
+        DefaultTableModel results = new DefaultTableModel(new String[]{"Week","Day","Start","End","Task Name","Priority","Category","Done"}, 0) {
+            @Override public boolean isCellEditable(int row, int column) { return false; }
+        };
+        JTable resultTable = new JTable(results); resultTable.setRowHeight(22);
+        JLabel status = new JLabel(" ");
+        Runnable run = () -> {
+            TaskSearchIndex.Query q = new TaskSearchIndex.Query();
+            q.text = textF.getText();
+            if (catF.getSelectedIndex() > 0) q.category = (String) catF.getSelectedItem();
+            if (prioF.getSelectedIndex() > 0) q.priority = (String) prioF.getSelectedItem();
+            if (doneF.getSelectedIndex() > 0) q.completed = doneF.getSelectedIndex() == 1;
+            q.fromMinute = Times.toMinutes(fromF.getText().trim()); q.toMinute = Times.toMinutes(toF.getText().trim());
+            long t0 = System.nanoTime();
+            List<TaskSearchIndex.Hit> hits = engine.search(q);
+            long micros = (System.nanoTime() - t0) / 1000;
+            results.setRowCount(0);
+            for (TaskSearchIndex.Hit h : hits) {
+                Task<String> t = h.task;
+                results.addRow(new Object[]{h.week, h.day, t.getTime(), t.getEndTime(), t.getTaskName(), String.valueOf(t.getPriority()), t.getCategory(), t.isCompleted() ? "Yes" : "No"});
+            }
+            status.setText(hits.size() + " result(s) in " + (micros / 1000.0) + " ms");
+        };
+        javax.swing.event.DocumentListener live = new javax.swing.event.DocumentListener() {
+            @Override public void insertUpdate(javax.swing.event.DocumentEvent e) { run.run(); }
+            @Override public void removeUpdate(javax.swing.event.DocumentEvent e) { run.run(); }
+            @Override public void changedUpdate(javax.swing.event.DocumentEvent e) { run.run(); }
+        };
+        textF.getDocument().addDocumentListener(live); fromF.getDocument().addDocumentListener(live); toF.getDocument().addDocumentListener(live);
+        catF.addActionListener(e -> run.run()); prioF.addActionListener(e -> run.run()); doneF.addActionListener(e -> run.run());
+        resultTable.addMouseListener(new MouseAdapter() { @Override public void mouseClicked(MouseEvent e) {
+            int row = resultTable.getSelectedRow();
+            if (e.getClickCount() == 2 && row >= 0 && TaskSearchIndex.CURRENT_WEEK.equals(results.getValueAt(row, 0))) {
+                daySelector.setSelectedItem(results.getValueAt(row, 1));
+            }
+        }});
+        dialog.addWindowListener(new WindowAdapter() { @Override public void windowActivated(WindowEvent e) { run.run(); } });
+        panel.add(filters, BorderLayout.NORTH); panel.add(new JScrollPane(resultTable), BorderLayout.CENTER); panel.add(status, BorderLayout.SOUTH);
+        dialog.setContentPane(panel); dialog.setSize(900, 450); dialog.setLocationRelativeTo(this);
+        return dialog;
+    }
+
+    private void onAddArchivedWeek() {
+        JFileChooser fc = new JFileChooser(); fc.setDialogTitle("Add Archived Week");
+        if (fc.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            File f = fc.getSelectedFile();
+            try {
+                engine.indexArchive(f.getName(), f);
+                JOptionPane.showMessageDialog(this, "Indexed " + f.getName() + " for search.", "Search", JOptionPane.INFORMATION_MESSAGE);
+            } catch (IOException ex) { Log.PERSIST.log(Level.SEVERE, "Archive index failed", ex); JOptionPane.showMessageDialog(this, "Index failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE); }
+        }
+    }
+
     private void onSave() {
         JFileChooser fc = new JFileChooser(); fc.setDialogTitle("Save Routine"); fc.setSelectedFile(new File("routine.json"));
         if (fc.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File f = fc.getSelectedFile(); DataPersistence.Format fmt = DataPersistence.formatFromFile(f);
-            try { persistence.save(weekSchedule, f, fmt); JOptionPane.showMessageDialog(this, "Saved to: " + f.getAbsolutePath(), "Saved", JOptionPane.INFORMATION_MESSAGE); }
+            File f = fc.getSelectedFile();
+            try { engine.save(f); JOptionPane.showMessageDialog(this, "Saved to: " + f.getAbsolutePath(), "Saved", JOptionPane.INFORMATION_MESSAGE); }
             catch (IOException ex) { Log.PERSIST.log(Level.SEVERE, "Save failed", ex); JOptionPane.showMessageDialog(this, "Save failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE); }
         }
     }
@@ -1108,24 +5709,27 @@ public class Base extends JFrame {
     private void onLoad() {
         JFileChooser fc = new JFileChooser(); fc.setDialogTitle("Load Routine");
         if (fc.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File f = fc.getSelectedFile(); DataPersistence.Format fmt = DataPersistence.formatFromFile(f);
+            File f = fc.getSelectedFile();
             try {
-                Map<String, DaySchedule<String>> loaded = persistence.load(f, fmt);
-                Map<String, DaySchedule<String>> ordered = new LinkedHashMap<>();
-                for (String d : daysOfWeek) ordered.put(d, loaded.getOrDefault(d, new DaySchedule<>(d)));
-                weekSchedule = ordered; loadDaySchedule(currentDay); updateDailyProgress();
-                JOptionPane.showMessageDialog(this, "Loaded from: " + f.getAbsolutePath(), "Loaded", JOptionPane.INFORMATION_MESSAGE);
+                TaskValidator.Report report = new TaskValidator.Report(f.getName());
+                engine.open(f, report); loadDaySchedule(currentDay); updateDailyProgress();
+                JOptionPane.showMessageDialog(this, "Loaded from: " + f.getAbsolutePath() + skippedNote(report), "Loaded",
+                        report.isClean() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
             } catch (IOException ex) { Log.PERSIST.log(Level.SEVERE, "Load failed", ex); JOptionPane.showMessageDialog(this, "Load failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE); }
         }
     }
 
-    private void onExport(DataPersistence.Format fmt) {
-        JFileChooser fc = new JFileChooser(); fc.setDialogTitle("Export Routine (" + fmt + ")");
-        String def = "routine" + (fmt==DataPersistence.Format.JSON?".json":fmt==DataPersistence.Format.XML?".xml":".ser");
+    private void onExport(DataPersistence.Format fmt) { onExport(fmt, false); }
+
+    // Compression follows the file name; the compressed variants suggest (and keep) a .gz suffix.
+    private void onExport(DataPersistence.Format fmt, boolean compressed) {
+        JFileChooser fc = new JFileChooser(); fc.setDialogTitle("Export Routine (" + fmt + (compressed ? ", GZIP" : "") + ")");
+        String def = "routine" + RoutineCli.extension(fmt) + (compressed ? ".gz" : "");
         fc.setSelectedFile(new File(def));
         if (fc.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             File f = fc.getSelectedFile();
-            try { persistence.save(weekSchedule, f, fmt); JOptionPane.showMessageDialog(this, "Exported to: " + f.getAbsolutePath(), "Export", JOptionPane.INFORMATION_MESSAGE); }
+            if (compressed && !DataPersistence.isCompressed(f)) f = new File(f.getPath() + ".gz");
+            try { engine.save(f, fmt); JOptionPane.showMessageDialog(this, "Exported to: " + f.getAbsolutePath(), "Export", JOptionPane.INFORMATION_MESSAGE); }
             catch (IOException ex) { Log.PERSIST.log(Level.SEVERE, "Export failed", ex); JOptionPane.showMessageDialog(this, "Export failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE); }
         }
     }
@@ -1133,32 +5737,25 @@ public class Base extends JFrame {
     private void onImport() {
         JFileChooser fc = new JFileChooser(); fc.setDialogTitle("Import Routine");
         if (fc.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File f = fc.getSelectedFile(); DataPersistence.Format fmt = DataPersistence.formatFromFile(f);
+            File f = fc.getSelectedFile();
             try {
-                Map<String, DaySchedule<String>> incoming = persistence.load(f, fmt);
-                int choice = JOptionPane.showConfirmDialog(this, "Replace current schedule? (Yes = replace, No = merge)", "Import", JOptionPane.YES_NO_CANCEL_OPTION);
+                TaskValidator.Report report = new TaskValidator.Report(f.getName());
+                Map<String, DaySchedule<String>> incoming = engine.load(f, report);
+                int choice = JOptionPane.showConfirmDialog(this, "Replace current schedule? (Yes = replace, No = merge)" + skippedNote(report), "Import", JOptionPane.YES_NO_CANCEL_OPTION);
                 if (choice == JOptionPane.CANCEL_OPTION) return;
-                if (choice == JOptionPane.YES_OPTION) {
-                    Map<String, DaySchedule<String>> ordered = new LinkedHashMap<>();
-                    for (String d : daysOfWeek) ordered.put(d, incoming.getOrDefault(d, new DaySchedule<>(d)));
-                    weekSchedule = ordered;
-                } else {
-                    for (String d : daysOfWeek) {
-                        DaySchedule<String> cur = weekSchedule.get(d); DaySchedule<String> inc = incoming.get(d);
-                        if (inc != null) for (Task<String> t : inc.getTasks()) cur.addTask(new Task<>(t.getTaskName(), t.getTime(), t.getEndTime(), t.getPriority(), t.getCategory()));
-                    }
-                }
+                if (choice == JOptionPane.YES_OPTION) engine.replaceAll(incoming); else engine.merge(incoming);
                 loadDaySchedule(currentDay); updateDailyProgress();
                 JOptionPane.showMessageDialog(this, "Import completed from: " + f.getAbsolutePath(), "Import", JOptionPane.INFORMATION_MESSAGE);
             } catch (IOException ex) { Log.PERSIST.log(Level.SEVERE, "Import failed", ex); JOptionPane.showMessageDialog(this, "Import failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE); }
         }
     }
 
+    private static String skippedNote(TaskValidator.Report report) { return report.isClean() ? "" : "\n\n" + report.details(); }
+
     private void onSaveDayTemplate() {
         String name = JOptionPane.showInputDialog(this, "Template name:");
         if (name == null || name.trim().isEmpty()) return;
-        DaySchedule<String> schedule = weekSchedule.get(currentDay);
-        templateManager.saveDayTemplate(name.trim(), schedule.getTasks());
+        engine.saveDayAsTemplate(name.trim(), currentDay);
         JOptionPane.showMessageDialog(this, "Saved template: " + name, "Templates", JOptionPane.INFORMATION_MESSAGE);
     }
 
@@ -1178,11 +5775,7 @@ public class Base extends JFrame {
         List<String> days = showDaysSelectionDialog("Apply template to which days?");
         if (days == null || days.isEmpty()) return;
 
-        for (String d : days) {
-            for (Task<String> t : tasks) {
-                weekSchedule.get(d).addTask(new Task<>(t.getTaskName(), t.getTime(), t.getEndTime(), t.getPriority(), t.getCategory()));
-            }
-        }
+        engine.applyTemplate(name, days);
         loadDaySchedule(currentDay);
         updateDailyProgress();
         JOptionPane.showMessageDialog(this, "Applied template to selected days.", "Templates", JOptionPane.INFORMATION_MESSAGE);
@@ -1216,4 +5809,598 @@ public class Base extends JFrame {
     }
     
     public static void main(String[] args) { SwingUtilities.invokeLater(() -> new Base()); }
-}
\ No newline at end of file
+}
+// ---------------- Local HTTP Service ----------------
+// Loopback-only JSON API over a ScheduleEngine:
+//   GET  /days                          day list with task counts and completion
+//   GET  /days/{day}                    tasks of one day (ETag / If-None-Match supported)
+//   POST /days/{day}/tasks              add {taskName,time,endTime,priority,category,recurrence}
+//   POST /days/{day}/tasks/{id}/toggle  flip completion, or set it with {"completed":bool}
+//   DELETE /days/{day}/tasks/{id}       remove a task
+//   GET  /stats                         week/month/year/streak stats
+// Tasks are addressed by their stable id: rows shift as other clients add and delete.
+class RoutineServer {
+    private static final int MAX_BODY = 1 << 20;
+
+    private final ScheduleEngine engine;
+    private final Map<String, Payload> dayPayloads = new ConcurrentHashMap<>();
+    private final String instanceTag = Long.toString(System.currentTimeMillis(), 36);
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private static final class Payload {
+        final long version; final byte[] body; final String etag;
+        Payload(long version, byte[] body, String etag) { this.version = version; this.body = body; this.etag = etag; }
+    }
+
+    RoutineServer(ScheduleEngine engine) { this.engine = engine; }
+
+    void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/days", this::handleDays);
+        server.createContext("/stats", ex -> {
+            if (!"GET".equals(ex.getRequestMethod())) { send(ex, 405, error("Method not allowed"), null); return; }
+            TaskCompletionTracking.Stats s = engine.stats();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("weekCompleted", s.weekCompleted); m.put("weekTotal", s.weekTotal);
+            m.put("monthCompleted", s.monthCompleted); m.put("monthTotal", s.monthTotal);
+            m.put("yearCompleted", s.yearCompleted); m.put("yearTotal", s.yearTotal); m.put("streakDays", s.streakDays);
+            send(ex, 200, JsonUtil.stringify(m), null);
+        });
+        server.start();
+        Log.PERSIST.info("Routine service listening on " + server.getAddress());
+    }
+
+    void stop() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdown();
+    }
+
+    int getPort() { return server.getAddress().getPort(); }
+
+    // One virtual thread per request where the runtime has them (Java 21+), otherwise a bounded platform pool.
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            int n = Math.max(4, Runtime.getRuntime().availableProcessors() * 4);
+            return Executors.newFixedThreadPool(n, r -> { Thread t = new Thread(r, "routine-http"); t.setDaemon(true); return t; });
+        }
+    }
+
+    private void handleDays(HttpExchange ex) throws IOException {
+        try {
+            String[] parts = ex.getRequestURI().getPath().split("/");
+            String method = ex.getRequestMethod();
+            // parts: "", "days", {day}, "tasks", {id}, "toggle"
+            if (parts.length == 2 && "GET".equals(method)) { send(ex, 200, listDays(), null); return; }
+            String day = parts.length > 2 ? findDay(URLDecoder.decode(parts[2], StandardCharsets.UTF_8.name())) : null;
+            if (day == null) { send(ex, 404, error("Unknown day"), null); return; }
+            if (parts.length == 3 && "GET".equals(method)) { sendDay(ex, day); return; }
+            if (parts.length == 4 && parts[3].equals("tasks") && "POST".equals(method)) {
+                Map<String, Object> body = JsonUtil.obj(readBody(ex));
+                String time = String.valueOf(body.get("time"));
+                Object endObj = body.get("endTime");
+                Task<String> t = new Task<>(body.get("taskName") == null ? null : String.valueOf(body.get("taskName")), time, endObj == null ? time : String.valueOf(endObj),
+                        String.valueOf(body.getOrDefault("priority", "Medium")), String.valueOf(body.getOrDefault("category", "Other")));
+                int problem = TaskValidator.checkEntry(t.getTaskName(), t.getTime(), t.getEndTime());
+                if (problem != TaskValidator.OK) { send(ex, 400, error(TaskValidator.describe(problem)), null); return; }
+                RecurringTasks.Recurrence rec = RecurringTasks.Recurrence.valueOf(String.valueOf(body.getOrDefault("recurrence", "NONE")).toUpperCase(Locale.ROOT));
+                engine.addTask(day, t, rec);
+                send(ex, 201, dayJson(day).second, null); return;
+            }
+            boolean task = parts.length > 4 && parts[3].equals("tasks");
+            long id = task ? Long.parseLong(parts[4]) : 0;
+            if (task && parts.length == 6 && parts[5].equals("toggle") && "POST".equals(method)) {
+                Object body = readBody(ex);
+                Object want = body instanceof Map ? JsonUtil.obj(body).get("completed") : null;
+                if (engine.setCompletedById(day, id, want instanceof Boolean ? (Boolean) want : null, LocalDate.now()) == null) { send(ex, 404, error("No such task"), null); return; }
+                send(ex, 200, dayJson(day).second, null); return;
+            }
+            if (task && parts.length == 5 && "DELETE".equals(method)) {
+                if (!engine.removeTaskById(day, id)) { send(ex, 404, error("No such task"), null); return; }
+                send(ex, 200, dayJson(day).second, null); return;
+            }
+            send(ex, 405, error("Method not allowed"), null);
+        } catch (IOException | RuntimeException e) {
+            Log.PERSIST.log(Level.FINE, "Request failed", e);
+            send(ex, 400, error(e.getMessage()), null);
+        }
+    }
+
+    private void sendDay(HttpExchange ex, String day) throws IOException {
+        Payload p = payload(day);
+        String inm = ex.getRequestHeaders().getFirst("If-None-Match");
+        if (p.etag.equals(inm)) {
+            ex.getResponseHeaders().set("ETag", p.etag);
+            ex.sendResponseHeaders(304, -1); ex.close(); return;
+        }
+        sendBytes(ex, 200, p.body, p.etag);
+    }
+
+    // Serialized day bodies are cached per day version, so repeated reads skip JsonUtil.stringify entirely.
+    private Payload payload(String day) {
+        Payload cached = dayPayloads.get(day);
+        if (cached != null && cached.version == engine.getStore().version(day)) return cached;
+        Pair<Long, String> fresh = dayJson(day);
+        Payload p = new Payload(fresh.first, fresh.second.getBytes(StandardCharsets.UTF_8), "\"" + day + "-" + instanceTag + "-" + fresh.first + "\"");
+        dayPayloads.put(day, p);
+        return p;
+    }
+
+    private Pair<Long, String> dayJson(String day) {
+        ScheduleStore store = engine.getStore();
+        return store.read(day, s -> new Pair<>(store.version(day), JsonUtil.stringify(engine.getPersistence().serializeDay(day, s))));
+    }
+
+    private String listDays() {
+        List<Object> out = new ArrayList<>();
+        for (String d : engine.getDays()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("day", d);
+            m.put("tasks", engine.getStore().read(d, s -> s.getTasks().size()));
+            m.put("percent", engine.dailyCompletionPercent(d));
+            m.put("version", engine.getStore().version(d));
+            out.add(m);
+        }
+        return JsonUtil.stringify(out);
+    }
+
+    private String findDay(String name) {
+        for (String d : engine.getDays()) if (d.equalsIgnoreCase(name)) return d;
+        return null;
+    }
+
+    private static Object readBody(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192]; int r;
+            while ((r = in.read(buf)) != -1) {
+                bos.write(buf, 0, r);
+                if (bos.size() > MAX_BODY) throw new IOException("Request body too large");
+            }
+            String s = bos.toString(StandardCharsets.UTF_8.name()).trim();
+            return s.isEmpty() ? null : JsonUtil.parse(s);
+        }
+    }
+
+    private static String error(String message) {
+        Map<String, Object> m = new LinkedHashMap<>(); m.put("error", message); return JsonUtil.stringify(m);
+    }
+
+    private static void send(HttpExchange ex, int status, String json, String etag) throws IOException {
+        sendBytes(ex, status, json.getBytes(StandardCharsets.UTF_8), etag);
+    }
+
+    private static void sendBytes(HttpExchange ex, int status, byte[] body, String etag) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (etag != null) ex.getResponseHeaders().set("ETag", etag);
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) { out.write(body); }
+    }
+
+    private static final class Pair<A, B> {
+        final A first; final B second;
+        Pair(A first, B second) { this.first = first; this.second = second; }
+    }
+}
+
+// ---------------- Batch CLI ----------------
+// Headless entry point: java -cp . RoutineCli <command> [options] <files...>
+class RoutineCli {
+    private static final String USAGE = String.join("\n",
+            "Usage: RoutineCli <command> [--threads N] [--verbose] ...",
+            "  convert <json|xml|ser|ics>[.gz] <outDir> <files...>   convert routine files to another format (.gz: compressed)",
+            "  merge <outFile> <files...>                     merge routine files into one (format from extension)",
+            "  validate <files...>                            check every task of routine files; exit 1 if any is invalid",
+            "  report <historyFiles...>                       completion totals per history file",
+            "  report <--csv|--html> <outDir> [--from D] [--to D] [--routine F] <historyFiles...>",
+            "                                                 per-day/category/priority report per history file",
+            "  serve [--port N] [routineFile]                 local HTTP/JSON service (default: the autosave file)",
+            "  kv import <store> [--routine F] [--templates F] [--history F]",
+            "                                                 copy the JSON files (default: home directory) into a store",
+            "  kv export <store> <routineFile>                write the stored days as a routine file",
+            "  kv stats|compact <store>                       key counts and sizes / rewrite the log without dead values",
+            "  bench stats [--years N]                        time and heap allocation per stats operation",
+            "  bench pack [--tasks N]                         auto-pack solution quality against time budget");
+
+    private final int threads;
+    private final AtomicLong filesDone = new AtomicLong(), filesFailed = new AtomicLong(), tasksDone = new AtomicLong(), bytesRead = new AtomicLong(), tasksRejected = new AtomicLong();
+
+    RoutineCli(int threads) { this.threads = threads; }
+
+    public static void main(String[] args) {
+        List<String> rest = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors(); boolean verbose = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) threads = Math.max(1, Integer.parseInt(args[++i]));
+            else if (args[i].equals("--verbose")) verbose = true;
+            else rest.add(args[i]);
+        }
+        if (!verbose) { Log.PERSIST.setLevel(Level.WARNING); Log.TRACK.setLevel(Level.WARNING); }
+        if (rest.isEmpty()) { System.err.println(USAGE); System.exit(2); }
+        RoutineCli cli = new RoutineCli(threads);
+        long start = System.nanoTime();
+        try {
+            String cmd = rest.get(0);
+            switch (cmd) {
+                case "convert":
+                    if (rest.size() < 4) { System.err.println(USAGE); System.exit(2); }
+                    String target = rest.get(1); boolean gzip = target.toLowerCase(Locale.ROOT).endsWith(".gz");
+                    cli.convert(parseFormat(gzip ? target.substring(0, target.length() - 3) : target), gzip, new File(rest.get(2)), files(rest.subList(3, rest.size())));
+                    break;
+                case "merge":
+                    if (rest.size() < 3) { System.err.println(USAGE); System.exit(2); }
+                    cli.merge(new File(rest.get(1)), files(rest.subList(2, rest.size())));
+                    break;
+                case "validate":
+                    if (rest.size() < 2) { System.err.println(USAGE); System.exit(2); }
+                    cli.validate(files(rest.subList(1, rest.size())));
+                    break;
+                case "report":
+                    if (rest.size() < 2) { System.err.println(USAGE); System.exit(2); }
+                    if (rest.get(1).equals("--csv") || rest.get(1).equals("--html")) cli.exportReports(rest.subList(1, rest.size()));
+                    else cli.report(files(rest.subList(1, rest.size())));
+                    break;
+                case "serve":
+                    serve(rest.subList(1, rest.size()));
+                    return;
+                case "kv":
+                    if (rest.size() < 3) { System.err.println(USAGE); System.exit(2); }
+                    cli.kv(rest.get(1), new File(rest.get(2)), rest.subList(3, rest.size()));
+                    break;
+                case "bench":
+                    if (rest.size() < 2) { System.err.println(USAGE); System.exit(2); }
+                    bench(rest.get(1), rest.subList(2, rest.size()));
+                    System.exit(0);
+                    return;
+                default:
+                    System.err.println("Unknown command: " + cmd); System.err.println(USAGE); System.exit(2);
+            }
+        } catch (Exception ex) {
+            System.err.println("Failed: " + ex.getMessage()); System.exit(1);
+        }
+        cli.printThroughput(System.nanoTime() - start);
+        System.exit(cli.filesFailed.get() > 0 || cli.tasksRejected.get() > 0 ? 1 : 0);
+    }
+
+    void convert(DataPersistence.Format target, boolean gzip, File outDir, List<File> inputs) throws InterruptedException {
+        if (!outDir.isDirectory() && !outDir.mkdirs()) throw new IllegalArgumentException("Cannot create " + outDir);
+        DataPersistence persistence = new DataPersistence();
+        forEachParallel(inputs, f -> {
+            Map<String, DaySchedule<String>> data = persistence.load(f, DataPersistence.formatFromFile(f));
+            File out = new File(outDir, baseName(f) + extension(target) + (gzip ? ".gz" : ""));
+            persistence.save(data, out, target);
+            countTasks(data);
+            println(f + " -> " + out);
+        });
+    }
+
+    // Files are loaded in parallel but merged in argument order; at most a bounded window of loaded files is held at once.
+    void merge(File outFile, List<File> inputs) throws IOException, InterruptedException {
+        ScheduleEngine engine = new ScheduleEngine(ScheduleEngine.DEFAULT_DAYS, new DataPersistence(), null, null);
+        DataPersistence persistence = engine.getPersistence();
+        ExecutorService pool = newPool();
+        Deque<Map.Entry<File, Future<Map<String, DaySchedule<String>>>>> window = new ArrayDeque<>();
+        try {
+            for (File f : inputs) {
+                window.addLast(new AbstractMap.SimpleEntry<>(f, pool.submit(() -> persistence.load(f, DataPersistence.formatFromFile(f)))));
+                if (window.size() >= threads * 2) mergeNext(engine, window);
+            }
+            while (!window.isEmpty()) mergeNext(engine, window);
+        } finally { pool.shutdownNow(); }
+        engine.save(outFile);
+        println("Merged " + filesDone.get() + " file(s) into " + outFile);
+    }
+
+    // One line per file (with the first offenders when some tasks are invalid); nothing is written back.
+    void validate(List<File> inputs) throws InterruptedException {
+        DataPersistence persistence = new DataPersistence();
+        forEachParallel(inputs, f -> {
+            TaskValidator.Report report = new TaskValidator.Report(f.getPath());
+            Map<String, DaySchedule<String>> data = persistence.load(f, DataPersistence.formatFromFile(f), report);
+            countTasks(data); tasksRejected.addAndGet(report.rejected);
+            println(report.isClean() ? report.summary() : report.details());
+        });
+    }
+
+    void report(List<File> historyFiles) throws InterruptedException {
+        println("file,firstDate,lastDate,days,completed,total,percent");
+        forEachParallel(historyFiles, f -> {
+            if (!f.isFile()) throw new FileNotFoundException(f.getPath());
+            TaskCompletionTracking.Summary s = new TaskCompletionTracking(f).summarize();
+            tasksDone.addAndGet(s.total);
+            int pct = s.total == 0 ? 0 : (int) Math.round(100.0 * s.completed / s.total);
+            println(f + "," + s.firstDate + "," + s.lastDate + "," + s.days + "," + s.completed + "," + s.total + "," + pct);
+        });
+    }
+
+    // Works on a LogStore file, as used with -Dweekly.storage=kv:<file>.
+    void kv(String action, File storeFile, List<String> args) throws IOException {
+        if (!action.equals("import") && !storeFile.isFile()) throw new FileNotFoundException(storeFile.getPath());
+        try (LogStore store = new LogStore(storeFile)) {
+            switch (action) {
+                case "import": {
+                    File home = new File(System.getProperty("user.home"));
+                    File routine = new File(home, "weekly_routine_autosave.json"), templates = new File(home, "weekly_routine_templates.json"), history = new File(home, "weekly_routine_history.json");
+                    for (int i = 0; i + 1 < args.size(); i += 2) {
+                        File f = new File(args.get(i + 1));
+                        switch (args.get(i)) {
+                            case "--routine": routine = f; break;
+                            case "--templates": templates = f; break;
+                            case "--history": history = f; break;
+                            default: throw new IllegalArgumentException("Unknown kv import option: " + args.get(i));
+                        }
+                    }
+                    int keys = Storage.importFiles(store, routine, templates, history);
+                    for (File f : new File[]{routine, templates, history}) if (f.exists()) { bytesRead.addAndGet(f.length()); filesDone.incrementAndGet(); }
+                    println("Imported " + keys + " key(s) into " + storeFile);
+                    break;
+                }
+                case "export": {
+                    if (args.isEmpty()) throw new IllegalArgumentException("kv export needs a routine file");
+                    File out = new File(args.get(0));
+                    Map<String, DaySchedule<String>> days = new DataPersistence().load(store, new TaskValidator.Report(storeFile.getName()));
+                    new DataPersistence().save(days, out, DataPersistence.formatFromFile(out));
+                    countTasks(days); filesDone.incrementAndGet();
+                    println(storeFile + " -> " + out);
+                    break;
+                }
+                case "stats": {
+                    for (String prefix : new String[]{Storage.DAYS, Storage.TEMPLATES, Storage.HISTORY, Storage.ROLLUPS})
+                        println(prefix + "*: " + store.versions(prefix).size() + " key(s)");
+                    println("version " + store.version() + ", " + store.fileBytes() / 1024 + " KB on disk, " + store.liveBytes() / 1024 + " KB live");
+                    break;
+                }
+                case "compact": {
+                    long before = store.fileBytes();
+                    store.compact();
+                    println("Compacted " + storeFile + ": " + before / 1024 + " KB -> " + storeFile.length() / 1024 + " KB");
+                    break;
+                }
+                default: throw new IllegalArgumentException("Unknown kv action: " + action);
+            }
+        }
+    }
+
+    // Runs until the process is stopped. Changes are journaled and checkpointed as the GUI does: by an AutoSaver (once
+    // edits pause, never later than weekly.autosave.maxLossSeconds, default 60, after one is made; nothing while idle)
+    // and on shutdown, merging with whatever another instance committed meanwhile. The default file shares the GUI's
+    // journal, so either one recovers the other's edits after a crash.
+    static void serve(List<String> args) throws IOException {
+        int port = 8765; File file = new File(System.getProperty("user.home"), "weekly_routine_autosave.json");
+        for (int i = 0; i < args.size(); i++) {
+            if (args.get(i).equals("--port") && i + 1 < args.size()) port = Integer.parseInt(args.get(++i));
+            else file = new File(args.get(i));
+        }
+        File home = new File(System.getProperty("user.home"));
+        File journal = file.getAbsoluteFile().equals(new File(home, "weekly_routine_autosave.json").getAbsoluteFile())
+                ? new File(home, "weekly_routine_journal.log") : new File(file.getPath() + ".journal");
+        ScheduleEngine engine = new ScheduleEngine();
+        engine.enableRecovery(file, journal);
+        RoutineServer server = new RoutineServer(engine);
+        server.start(port);
+        AutoSaver saver = new AutoSaver(engine.getStore(), engine::checkpoint, Long.getLong("weekly.autosave.maxLossSeconds", 60) * 1000);
+        FileWatcher watcher = new FileWatcher(500);
+        watcher.watch(file, engine::reloadCheckpoint);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            try { saver.flush(); watcher.close(); } catch (IOException ex) { Log.PERSIST.log(Level.WARNING, "Service save failed", ex); }
+            saver.close();
+        }));
+        System.err.println("Serving " + file + " on http://127.0.0.1:" + server.getPort() + "/days");
+    }
+
+    static void bench(String what, List<String> args) throws IOException {
+        int years = 5, tasks = 3000;
+        for (int i = 0; i < args.size(); i++) {
+            if (args.get(i).equals("--years") && i + 1 < args.size()) years = Integer.parseInt(args.get(++i));
+            else if (args.get(i).equals("--tasks") && i + 1 < args.size()) tasks = Integer.parseInt(args.get(++i));
+        }
+        switch (what) {
+            case "stats": benchStats(years); break;
+            case "pack": benchPack(tasks); break;
+            default: throw new IllegalArgumentException("Unknown benchmark: " + what);
+        }
+    }
+
+    // Synthetic history (20 tasks a day, 90% done so the streak spans all of it) in a temporary directory.
+    static void benchStats(int years) throws IOException {
+        File dir = Files.createTempDirectory("routine-bench").toFile();
+        try {
+            File hist = new File(dir, "weekly_routine_history.json");
+            HistoryChunk all = new HistoryChunk();
+            long[] ids = new long[20];
+            for (int i = 0; i < ids.length; i++) ids[i] = Task.newId();
+            LocalDate today = LocalDate.now();
+            for (LocalDate d = today.minusYears(years); !d.isAfter(today); d = d.plusDays(1))
+                for (int i = 0; i < ids.length; i++) all.put(d, ScheduleEngine.DEFAULT_DAYS[d.getDayOfWeek().getValue() - 1], ids[i], "Task " + i, (i + d.getDayOfMonth()) % 10 != 0);
+            all.save(hist);
+            System.out.println("history: " + years + " year(s), " + all.days.size() + " day(s), " + all.days.size() * ids.length + " entries");
+            AllocMeter m = new AllocMeter();
+            m.start();
+            TaskCompletionTracking tracking = new TaskCompletionTracking(hist, 0);
+            TaskCompletionTracking.Stats st = tracking.computeStats();
+            m.stop("first load (roll + rollup rebuild)", 1);
+            for (int i = 0; i < 2_000; i++) tracking.computeStats();
+            m.start();
+            for (int i = 0; i < 10_000; i++) st = tracking.computeStats();
+            m.stop("computeStats (streak " + st.streakDays + " days)", 10_000);
+            m.start();
+            for (int i = 0; i < 10_000; i++) tracking.rollup(CompletionRollups.Period.MONTH, today);
+            m.stop("rollup(MONTH) copy", 10_000);
+            m.start();
+            for (int i = 0; i < 5; i++) new TaskCompletionTracking(hist, 0).summarize();
+            m.stop("summarize (hot file + segments)", 5);
+            String rollupsText = JsonUtil.readString(new File(dir, "weekly_routine_history-rollups.json"));
+            for (int i = 0; i < 5; i++) JsonUtil.parse(rollupsText);
+            m.start();
+            for (int i = 0; i < 20; i++) JsonUtil.parse(rollupsText);
+            m.stop("parse rollups (" + rollupsText.length() / 1024 + " KB)", 20);
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) for (File f : files) f.delete();
+            dir.delete();
+        }
+    }
+
+    // A week with fixed work blocks and random appointments, and more requests (mixed durations, priorities and
+    // constraints) than fit; each budget is a fresh run from the same greedy start.
+    static void benchPack(int tasks) {
+        String[] days = ScheduleEngine.DEFAULT_DAYS;
+        SplittableRandom rnd = new SplittableRandom(42);
+        Map<String, DaySchedule<String>> week = new LinkedHashMap<>();
+        int busy = 0;
+        for (String d : days) {
+            DaySchedule<String> s = new DaySchedule<>(d);
+            if (ScheduleOptimizer.isWeekday(d)) { s.addTask(new Task<>("Work", "09:00", "12:30", "High", "Work")); s.addTask(new Task<>("Work", "13:30", "17:30", "High", "Work")); busy += 450; }
+            for (int i = 0; i < 4; i++) { int a = 6 * 60 + rnd.nextInt(15 * 60), len = 15 + rnd.nextInt(60); s.addTask(new Task<>("Appointment", Times.format(a), Times.format(a + len), "Medium", "Personal")); busy += len; }
+            week.put(d, s);
+        }
+        String[] prios = {"High", "Medium", "Medium", "Low", "Low", "Low"};
+        List<ScheduleOptimizer.Request> requests = new ArrayList<>();
+        long demand = 0;
+        for (int i = 0; i < tasks; i++) {
+            int len = rnd.nextInt(10) < 7 ? 5 + rnd.nextInt(26) : 30 + rnd.nextInt(91);
+            ScheduleOptimizer.Request q = new ScheduleOptimizer.Request("Task " + i, len, prios[rnd.nextInt(prios.length)], "Other");
+            int c = rnd.nextInt(10);
+            if (c < 2) { int a = 6 * 60 + rnd.nextInt(12 * 60); q.window(a, Math.min(22 * 60, a + len + rnd.nextInt(240))); }
+            else if (c < 4) q.weekdaysOnly();
+            else if (c == 4) q.on(days[rnd.nextInt(days.length)]);
+            requests.add(q); demand += len;
+        }
+        ScheduleOptimizer opt = new ScheduleOptimizer(days, 6 * 60, 22 * 60);
+        System.out.println(tasks + " request(s), " + demand + " min demanded, about " + (days.length * 16 * 60 - busy) + " min free (06:00-22:00)");
+        for (int i = 0; i < 5; i++) opt.pack(week, requests, 20_000_000L, i);   // warm-up
+        System.out.printf(Locale.ROOT, "%-10s %10s %8s %8s %10s %10s%n", "budget", "time ms", "placed", "moves", "score", "of bound");
+        for (long ms : new long[]{0, 10, 50, 200, 1000}) {
+            ScheduleOptimizer.Result r = opt.pack(week, requests, ms * 1_000_000, 7);
+            System.out.printf(Locale.ROOT, "%-10s %10.1f %8d %8d %10d %9.1f%%%n", ms == 0 ? "greedy" : ms + " ms", r.nanos / 1e6, r.placed.size(), r.moves, r.score, 100.0 * r.score / r.bound);
+        }
+    }
+
+    // Wall time and bytes allocated by the current thread (HotSpot's ThreadMXBean extension) per operation.
+    private static final class AllocMeter {
+        private final java.lang.management.ThreadMXBean mx = java.lang.management.ManagementFactory.getThreadMXBean();
+        private final boolean supported = mx instanceof com.sun.management.ThreadMXBean;
+        private long t0, b0;
+
+        void start() { b0 = allocated(); t0 = System.nanoTime(); }
+
+        void stop(String label, int ops) {
+            long ns = System.nanoTime() - t0, bytes = allocated() - b0;
+            System.out.printf(Locale.ROOT, "%-40s %8d op(s) %12.1f us/op %14s B/op%n", label, ops, ns / 1e3 / ops, supported ? String.valueOf(bytes / ops) : "n/a");
+        }
+
+        private long allocated() { return supported ? ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0; }
+    }
+
+    // One report per history file, named after it; the routine (if given) adds the current-week table to each.
+    // Retention is off here so reading a history never expires its old segments.
+    void exportReports(List<String> args) throws IOException, InterruptedException {
+        RoutineReport.Format format = args.get(0).equals("--csv") ? RoutineReport.Format.CSV : RoutineReport.Format.HTML;
+        if (args.size() < 3) throw new IllegalArgumentException("report " + args.get(0) + " needs <outDir> and history files");
+        File outDir = new File(args.get(1));
+        LocalDate from = null, to = null; File routine = null; List<String> paths = new ArrayList<>();
+        for (int i = 2; i < args.size(); i++) {
+            if (args.get(i).equals("--from") && i + 1 < args.size()) from = LocalDate.parse(args.get(++i));
+            else if (args.get(i).equals("--to") && i + 1 < args.size()) to = LocalDate.parse(args.get(++i));
+            else if (args.get(i).equals("--routine") && i + 1 < args.size()) routine = new File(args.get(++i));
+            else paths.add(args.get(i));
+        }
+        Map<String, DaySchedule<String>> week = null;
+        if (routine != null) { week = new DataPersistence().load(routine, DataPersistence.formatFromFile(routine)); countTasks(week); }
+        Map<String, DaySchedule<String>> current = week; LocalDate first = from, last = to;
+        forEachParallel(files(paths), f -> {
+            if (!f.isFile()) throw new FileNotFoundException(f.getPath());
+            RoutineReport report = new RoutineReport(new TaskCompletionTracking(f, 0), current, first, last);
+            List<File> written = report.write(format, outDir, baseName(f) + "-report");
+            println(f + " -> " + written.get(0) + (written.size() > 1 ? " (+" + (written.size() - 1) + ")" : "") + ", " + report.rows() + " row(s)");
+        });
+    }
+
+    private interface FileJob { void run(File f) throws Exception; }
+
+    // Bounded pool: a full queue makes the submitting thread run the job itself, so memory stays flat for huge inputs.
+    private void forEachParallel(List<File> inputs, FileJob job) throws InterruptedException {
+        ExecutorService pool = newPool();
+        for (File f : inputs) {
+            pool.execute(() -> {
+                try { bytesRead.addAndGet(f.length()); job.run(f); filesDone.incrementAndGet(); }
+                catch (Exception ex) { filesFailed.incrementAndGet(); System.err.println(f + ": " + ex.getMessage()); }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    private void mergeNext(ScheduleEngine engine, Deque<Map.Entry<File, Future<Map<String, DaySchedule<String>>>>> window) throws InterruptedException {
+        Map.Entry<File, Future<Map<String, DaySchedule<String>>>> next = window.removeFirst();
+        File f = next.getKey();
+        try {
+            Map<String, DaySchedule<String>> data = next.getValue().get();
+            engine.merge(data); countTasks(data);
+            bytesRead.addAndGet(f.length()); filesDone.incrementAndGet();
+        } catch (ExecutionException ex) {
+            filesFailed.incrementAndGet(); System.err.println(f + ": " + ex.getCause().getMessage());
+        }
+    }
+
+    private ExecutorService newPool() {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 4),
+                r -> { Thread t = new Thread(r, "routine-cli"); t.setDaemon(true); return t; }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private void countTasks(Map<String, DaySchedule<String>> data) {
+        long n = 0; for (DaySchedule<String> s : data.values()) n += s.getTasks().size();
+        tasksDone.addAndGet(n);
+    }
+
+    private void printThroughput(long elapsedNanos) {
+        double secs = Math.max(elapsedNanos / 1e9, 1e-9);
+        System.err.printf(Locale.ROOT, "%d file(s) ok, %d failed, %d task(s), %.1f MB in %.2fs: %.1f files/s, %.0f tasks/s, %.1f MB/s%n",
+                filesDone.get(), filesFailed.get(), tasksDone.get(), bytesRead.get() / 1e6, secs,
+                filesDone.get() / secs, tasksDone.get() / secs, bytesRead.get() / 1e6 / secs);
+    }
+
+    private static synchronized void println(String line) { System.out.println(line); }
+
+    private static List<File> files(List<String> paths) {
+        List<File> out = new ArrayList<>();
+        for (String p : paths) {
+            File f = new File(p);
+            File[] children = f.isDirectory() ? f.listFiles(File::isFile) : null;
+            if (children != null) { Arrays.sort(children); out.addAll(Arrays.asList(children)); }
+            else out.add(f);
+        }
+        return out;
+    }
+
+    private static DataPersistence.Format parseFormat(String s) {
+        switch (s.toLowerCase(Locale.ROOT)) {
+            case "json": return DataPersistence.Format.JSON;
+            case "xml": return DataPersistence.Format.XML;
+            case "ser": case "serialized": return DataPersistence.Format.SERIALIZED;
+            case "ics": case "ical": return DataPersistence.Format.ICS;
+            default: throw new IllegalArgumentException("Unknown format: " + s);
+        }
+    }
+
+    static String extension(DataPersistence.Format fmt) {
+        switch (fmt) {
+            case JSON: return ".json";
+            case XML: return ".xml";
+            case ICS: return ".ics";
+            default: return ".ser";
+        }
+    }
+
+    private static String baseName(File f) {
+        String n = f.getName();
+        if (DataPersistence.isCompressed(f)) n = n.substring(0, n.length() - 3);
+        int dot = n.lastIndexOf('.');
+        return dot > 0 ? n.substring(0, dot) : n;
+    }
+}
@@ -0,0 +1,394 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Self-check for persistence: seeded random schedules (unicode and astral names, JSON and XML metacharacters,
+// empty days) must survive every format, plain and GZIP, unchanged; JsonUtil and TemplateManager get the same
+// treatment; then 10k/100k/1M-task routines are saved and loaded against time and peak-heap budgets. Any failure
+// makes it exit 1, so a CI step running it fails the build. The budgets are deliberately loose
+// (several times what a laptop needs) so only real regressions, such as a lost streaming path or a quadratic
+// loader, trip them.
+public class RoutineVerify {
+    private static final long NANOS_PER_TASK = 30_000;   // save + load, per task and format
+    private static final long LIVE_PER_TASK = 1_000;     // heap the loaded routine keeps, bytes per task
+    private static final long PEAK_PER_TASK = 100;       // old-generation peak while loading beyond that, bytes per task
+    private static final String[] NASTY = {"", " ", "&", "&amp;", "&#x41;", "<task>", "</day>", "</name>", "]]>", "<!-- x -->",
+            "\"quoted\"", "it's", "a\\b", "\\u0041", "\\", "tab\there", "line\nbreak", "cr\rlf", "\u0000", "\u001f", "\u007f",
+            "é", "日本語", "😀", "𝄞", "  ", "﻿", "{\"json\":[1,2]}", ",;:", "BEGIN:VEVENT", " lead", "trail "};
+    private static final String[] PRIORITIES = {"High", "Medium", "Low"};
+    private static final String[] CATEGORIES = {"Work", "Exercise", "Personal", "Study", "Health", "Other"};
+
+    private long seed = 1;
+    private int rounds = 200;
+    private int[] sizes = {10_000, 100_000, 1_000_000};
+    private int failures, checks;
+
+    // java -cp <app classes>:<test classes> RoutineVerify [--seed N] [--rounds N] [--sizes a,b]
+    public static void main(String[] args) throws IOException {
+        System.exit(new RoutineVerify(Arrays.asList(args)).run() ? 0 : 1);
+    }
+
+    RoutineVerify(List<String> args) {
+        for (int i = 0; i < args.size(); i++) {
+            if (args.get(i).equals("--seed") && i + 1 < args.size()) seed = Long.parseLong(args.get(++i));
+            else if (args.get(i).equals("--rounds") && i + 1 < args.size()) rounds = Integer.parseInt(args.get(++i));
+            else if (args.get(i).equals("--sizes") && i + 1 < args.size()) {
+                String[] parts = args.get(++i).split(",");
+                sizes = new int[parts.length];
+                for (int j = 0; j < parts.length; j++) sizes[j] = Integer.parseInt(parts[j].trim());
+            }
+            else throw new IllegalArgumentException("Unknown verify option: " + args.get(i));
+        }
+    }
+
+    boolean run() throws IOException {
+        File dir = Files.createTempDirectory("routine-verify").toFile();
+        try {
+            System.out.println("seed " + seed + ", " + rounds + " round(s)");
+            roundTrips(dir);
+            jsonValues();
+            templates(dir);
+            storage(dir);
+            sharedFile(dir);
+            validation(dir);
+            for (int n : sizes) budgets(dir, n);
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) for (File f : files) f.delete();
+            dir.delete();
+        }
+        System.out.println((failures == 0 ? "OK" : "FAILED") + ": " + checks + " check(s), " + failures + " failure(s)");
+        return failures == 0;
+    }
+
+    private void roundTrips(File dir) throws IOException {
+        DataPersistence p = new DataPersistence();
+        SplittableRandom rnd = new SplittableRandom(seed);
+        for (DataPersistence.Format fmt : DataPersistence.Format.values()) {
+            for (boolean gz : new boolean[]{false, true}) {
+                String label = fmt + (gz ? ".gz" : "");
+                File f = new File(dir, "round" + RoutineCli.extension(fmt) + (gz ? ".gz" : ""));
+                String failure = null;
+                for (int r = 0; r < rounds && failure == null; r++) {
+                    Map<String, DaySchedule<String>> week = randomWeek(rnd, r % 10 == 0 ? 0 : 1 + rnd.nextInt(40));
+                    try {
+                        p.save(week, f, fmt);
+                        String want = canonical(week, fmt), got = canonical(p.load(f, fmt), fmt);
+                        if (!want.equals(got)) failure = "round " + r + " differs at " + firstDifference(want, got);
+                    } catch (IOException | RuntimeException ex) { failure = "round " + r + ": " + ex; }
+                }
+                check("round trip " + label, failure);
+            }
+        }
+    }
+
+    // Values through stringify/parse and file writes, plus hand-made \\u escapes (any case, surrogate pairs).
+    private void jsonValues() {
+        SplittableRandom rnd = new SplittableRandom(seed + 1);
+        String failure = null;
+        for (int r = 0; r < rounds && failure == null; r++) {
+            Object v = randomJson(rnd, 0);
+            try {
+                Object back = JsonUtil.parse(JsonUtil.stringify(v));
+                if (!Objects.equals(String.valueOf(normalizeJson(v)), String.valueOf(normalizeJson(back)))) failure = "round " + r + ": " + JsonUtil.stringify(v);
+                String text = randomText(rnd);
+                StringBuilder escaped = new StringBuilder("\"");
+                for (int i = 0; i < text.length(); i++) escaped.append(String.format(rnd.nextBoolean() ? "\\u%04x" : "\\u%04X", (int) text.charAt(i)));
+                Object decoded = JsonUtil.parse(escaped.append('"').toString());
+                if (failure == null && !text.equals(decoded)) failure = "round " + r + ": \\u escapes of " + JsonUtil.stringify(text);
+            } catch (IOException | RuntimeException ex) { failure = "round " + r + ": " + ex; }
+        }
+        check("JsonUtil stringify/parse and \\u escapes", failure);
+    }
+
+    private void templates(File dir) {
+        SplittableRandom rnd = new SplittableRandom(seed + 2);
+        File f = new File(dir, "templates.json");
+        String failure = null;
+        for (int r = 0; r < Math.max(1, rounds / 10) && failure == null; r++) {
+            f.delete();
+            RecurringTasks.TemplateManager tm = new RecurringTasks.TemplateManager(f);
+            Map<String, List<Task<String>>> want = new LinkedHashMap<>();
+            int n = rnd.nextInt(6);
+            for (int i = 0; i < n; i++) {
+                String name = randomText(rnd) + i;
+                List<Task<String>> tasks = randomWeek(rnd, rnd.nextInt(20)).get("Monday").getTasks();
+                tm.saveDayTemplate(name, tasks);
+                want.put(name, tm.getTemplate(name));
+            }
+            RecurringTasks.TemplateManager back = new RecurringTasks.TemplateManager(f);
+            if (!back.getTemplateNames().equals(want.keySet())) failure = "round " + r + ": names " + back.getTemplateNames() + " vs " + want.keySet();
+            for (String name : want.keySet()) {
+                if (failure != null) break;
+                if (!canonicalTasks(want.get(name), false, false).equals(canonicalTasks(back.getTemplate(name), false, false))) failure = "round " + r + ": template " + JsonUtil.stringify(name);
+            }
+        }
+        check("TemplateManager save/reload", failure);
+    }
+
+    // Routines and templates through a LogStore opened twice (the second sees the first's writes), then a
+    // compaction that must keep every key and version.
+    private void storage(File dir) throws IOException {
+        SplittableRandom rnd = new SplittableRandom(seed + 4);
+        File f = new File(dir, "store.kv");
+        DataPersistence p = new DataPersistence();
+        String failure = null;
+        try (LogStore writer = new LogStore(f); LogStore reader = new LogStore(f)) {
+            RecurringTasks.TemplateManager tm = new RecurringTasks.TemplateManager(writer);
+            for (int r = 0; r < rounds && failure == null; r++) {
+                Map<String, DaySchedule<String>> week = randomWeek(rnd, r % 10 == 0 ? 0 : 1 + rnd.nextInt(40));
+                p.save(week, writer);
+                String want = canonical(week, DataPersistence.Format.JSON), got = canonical(p.load(reader, new TaskValidator.Report("store")), DataPersistence.Format.JSON);
+                if (!want.equals(got)) failure = "round " + r + " differs at " + firstDifference(want, got);
+                String name = randomText(rnd) + r;
+                tm.saveDayTemplate(name, week.get("Monday").getTasks());
+                RecurringTasks.TemplateManager back = new RecurringTasks.TemplateManager(reader);
+                if (failure == null && !canonicalTasks(tm.getTemplate(name), false, false).equals(canonicalTasks(back.getTemplate(name), false, false))) failure = "round " + r + ": template " + JsonUtil.stringify(name);
+            }
+            SortedMap<String, Long> before = reader.versions("");
+            long bytes = writer.fileBytes();
+            writer.compact();
+            if (failure == null && !reader.versions("").equals(before)) failure = "compaction changed keys or versions";
+            if (failure == null && writer.fileBytes() >= bytes) failure = "compaction did not shrink " + bytes + " bytes";
+        } catch (RuntimeException ex) { failure = ex.toString(); }
+        check("LogStore days/templates round trip and compaction", failure);
+    }
+
+    // A commit, then two outside rewrites in a row (an editor saving twice): each must be a version of its own, so
+    // a commit still expecting the one in between is refused instead of overwriting the second.
+    private void sharedFile(File dir) throws IOException {
+        File f = new File(dir, "shared.json");
+        SharedFile shared = new SharedFile(f);
+        String failure = null;
+        try {
+            File tmp = shared.newTemp();
+            Files.write(tmp.toPath(), "[]".getBytes("UTF-8"));
+            long committed = shared.commit(shared.version(), Collections.singletonMap(tmp, f));
+            Files.write(f.toPath(), "[1]".getBytes("UTF-8"));
+            long first = shared.version();
+            Files.write(f.toPath(), "[1,2]".getBytes("UTF-8"));
+            long second = shared.version();
+            if (committed < 0 || first <= committed || second <= first) failure = "versions " + committed + ", " + first + ", " + second;
+            tmp = shared.newTemp();
+            Files.write(tmp.toPath(), "[3]".getBytes("UTF-8"));
+            if (failure == null && shared.commit(first, Collections.singletonMap(tmp, f)) >= 0) failure = "stale commit overwrote the second outside write";
+            if (failure == null && !new String(Files.readAllBytes(f.toPath()), "UTF-8").equals("[1,2]")) failure = "file changed by a refused commit";
+        } catch (RuntimeException ex) { failure = ex.toString(); }
+        check("SharedFile outside rewrites", failure);
+    }
+
+    // Time parsing edge cases, then files mixing valid and broken tasks: every loader must keep exactly the valid
+    // ones and report the rest.
+    private void validation(File dir) throws IOException {
+        String failure = null;
+        String[] good = {"00:00", "09:05", "12:00", "23:59"}, bad = {"24:00", "99:99", "12:60", "9:00", "09:5", " 09:00", "09-00", "0a:00", "", null, "٠٩:٠٠"};
+        for (String g : good) if (failure == null && Times.toMinutes(g) != Integer.parseInt(g.substring(0, 2)) * 60 + Integer.parseInt(g.substring(3))) failure = "rejects " + g;
+        for (String b : bad) if (failure == null && Times.toMinutes(b) >= 0) failure = "accepts " + JsonUtil.stringify(b);
+        if (failure == null && TaskValidator.checkEntry("x", "10:00", "09:00") != TaskValidator.END_BEFORE_START) failure = "entry accepts end before start";
+        if (failure == null && TaskValidator.check("x", "23:00", "01:00") != TaskValidator.OK) failure = "stored overnight task rejected";
+        if (failure == null && TaskValidator.check(" \t", "10:00", "11:00") != TaskValidator.NO_NAME) failure = "blank name accepted";
+        check("HH:MM parsing and task rules", failure);
+
+        SplittableRandom rnd = new SplittableRandom(seed + 3);
+        DataPersistence p = new DataPersistence();
+        for (DataPersistence.Format fmt : new DataPersistence.Format[]{DataPersistence.Format.JSON, DataPersistence.Format.XML, DataPersistence.Format.SERIALIZED}) {
+            Map<String, DaySchedule<String>> valid = randomWeek(rnd, 200), mixed = new LinkedHashMap<>();
+            int broken = 0;
+            for (Map.Entry<String, DaySchedule<String>> e : valid.entrySet()) {
+                DaySchedule<String> s = e.getValue().copy();
+                for (int i = 0; i < 5; i++, broken++) {
+                    String start = i == 1 ? "99:99" : i == 2 ? "7:30" : "08:00", end = i == 3 ? "24:00" : "09:00";
+                    s.getTasks().add(new Task<>(i == 0 ? " " : i == 4 ? "" : "broken " + i, start, end, "Low", "Other"));
+                }
+                mixed.put(e.getKey(), s);
+            }
+            File f = new File(dir, "mixed" + RoutineCli.extension(fmt));
+            p.save(mixed, f, fmt);
+            TaskValidator.Report report = new TaskValidator.Report(f.getName());
+            Map<String, DaySchedule<String>> back = p.load(f, fmt, report);
+            failure = report.rejected != broken ? "rejected " + report.rejected + " of " + broken + " broken task(s)"
+                    : !canonical(valid, fmt).equals(canonical(back, fmt)) ? "valid tasks changed" : null;
+            check("batch validation " + fmt, failure, report.summary());
+        }
+    }
+
+    // Each format saves and then loads an n-task routine; wall time and the heap peak while loading (above the
+    // routine already in memory) are held to per-task budgets.
+    private void budgets(File dir, int n) throws IOException {
+        Map<String, DaySchedule<String>> week = syntheticWeek(n);
+        DataPersistence p = new DataPersistence();
+        for (DataPersistence.Format fmt : new DataPersistence.Format[]{DataPersistence.Format.JSON, DataPersistence.Format.XML, DataPersistence.Format.SERIALIZED, DataPersistence.Format.ICS}) {
+            for (boolean gz : new boolean[]{false, true}) {
+                String label = String.format(Locale.ROOT, "%,d tasks %s", n, fmt + (gz ? ".gz" : ""));
+                File f = new File(dir, "budget" + RoutineCli.extension(fmt) + (gz ? ".gz" : ""));
+                try {
+                    long t0 = System.nanoTime();
+                    p.save(week, f, fmt);
+                    long t1 = System.nanoTime();
+                    long heapBase = settledHeap(), oldBase = oldGen(false);
+                    resetPeaks();
+                    Map<String, DaySchedule<String>> back = p.load(f, fmt);
+                    long t2 = System.nanoTime();
+                    long peak = oldGen(true) - oldBase;
+                    long live = settledHeap() - heapBase, overhead = Math.max(0, peak - live);
+                    int loaded = 0;
+                    for (DaySchedule<String> s : back.values()) loaded += s.getTasks().size();
+                    back = null;
+                    long nanos = t2 - t0, timeBudget = NANOS_PER_TASK * n + 2_000_000_000L;
+                    long liveBudget = LIVE_PER_TASK * n + (16L << 20), peakBudget = PEAK_PER_TASK * n + (64L << 20);
+                    String detail = String.format(Locale.ROOT, "save %d ms, load %d ms, %d KB; live %d B/task, load peak +%d MB (budgets %d ms, %d B/task, %d MB)",
+                            (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, f.length() / 1024, Math.max(0, live) / n, overhead >> 20,
+                            timeBudget / 1_000_000, liveBudget / n, peakBudget >> 20);
+                    String failure = loaded != n ? "loaded " + loaded + " task(s)" : nanos > timeBudget ? "too slow"
+                            : live > liveBudget ? "routine too large in memory" : overhead > peakBudget ? "loader holds too much" : null;
+                    check(label, failure, detail);
+                } catch (OutOfMemoryError ex) {
+                    check(label, "out of memory (max heap " + (Runtime.getRuntime().maxMemory() >> 20) + " MB)");
+                } finally { f.delete(); }
+            }
+        }
+    }
+
+    private void check(String label, String failure) { check(label, failure, null); }
+
+    private void check(String label, String failure, String detail) {
+        checks++;
+        if (failure != null) failures++;
+        System.out.println((failure == null ? "PASS " : "FAIL ") + label + (failure != null ? ": " + failure : "") + (detail != null ? "  [" + detail + "]" : ""));
+    }
+
+    // ---- generators ----
+
+    private static Map<String, DaySchedule<String>> randomWeek(SplittableRandom rnd, int tasks) {
+        Map<String, DaySchedule<String>> week = new LinkedHashMap<>();
+        for (String d : ScheduleEngine.DEFAULT_DAYS) week.put(d, new DaySchedule<>(d));
+        List<String> days = Arrays.asList(ScheduleEngine.DEFAULT_DAYS);
+        for (int i = 0; i < tasks; i++) {
+            int start = rnd.nextInt(24 * 60), end = rnd.nextInt(4) == 0 ? start : rnd.nextInt(24 * 60);
+            String priority = rnd.nextInt(8) == 0 ? randomText(rnd) : PRIORITIES[rnd.nextInt(PRIORITIES.length)];
+            String category = rnd.nextInt(8) == 0 ? randomText(rnd) : CATEGORIES[rnd.nextInt(CATEGORIES.length)];
+            String name = randomText(rnd);
+            if (name.trim().isEmpty()) name += "task";   // blank names are rejected on load
+            Task<String> t = new Task<>(name, Times.format(start), Times.format(end), priority, category);
+            t.setCompleted(rnd.nextBoolean());
+            // A few days stay empty; some tasks repeat across days the way recurrences do.
+            String day = days.get(rnd.nextInt(days.size() - 2));
+            week.get(day).addTask(t);
+            if (rnd.nextInt(4) == 0) for (String d : days) if (!d.equals(day) && rnd.nextBoolean()) week.get(d).addTask(t.duplicate());
+        }
+        return week;
+    }
+
+    private static String randomText(SplittableRandom rnd) {
+        StringBuilder sb = new StringBuilder();
+        int parts = rnd.nextInt(4);
+        for (int i = 0; i < parts; i++) {
+            switch (rnd.nextInt(3)) {
+                case 0: sb.append(NASTY[rnd.nextInt(NASTY.length)]); break;
+                case 1: for (int j = rnd.nextInt(8); j > 0; j--) sb.append((char) ('a' + rnd.nextInt(26))); break;
+                default:
+                    for (int j = rnd.nextInt(6); j > 0; j--) {
+                        int cp = rnd.nextInt(3) == 0 ? 0x10000 + rnd.nextInt(0x10000) : rnd.nextInt(0xd800);
+                        sb.appendCodePoint(cp);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Object randomJson(SplittableRandom rnd, int depth) {
+        switch (depth > 3 ? rnd.nextInt(4) : rnd.nextInt(6)) {
+            case 0: return randomText(rnd);
+            case 1: return rnd.nextBoolean() ? (Object) (long) rnd.nextInt() : (Object) rnd.nextLong();
+            case 2: return rnd.nextBoolean();
+            case 3: return rnd.nextInt(4) == 0 ? null : (Object) (rnd.nextInt(2_000_000) / 1000.0 - 1000);
+            case 4: { List<Object> l = new ArrayList<>(); for (int i = rnd.nextInt(5); i > 0; i--) l.add(randomJson(rnd, depth + 1)); return l; }
+            default: { Map<String, Object> m = new LinkedHashMap<>(); for (int i = rnd.nextInt(5); i > 0; i--) m.put(randomText(rnd) + i, randomJson(rnd, depth + 1)); return m; }
+        }
+    }
+
+    // Numbers compare by value: the parser may return an integral double as a long and vice versa.
+    private static Object normalizeJson(Object v) {
+        if (v instanceof Number) { double d = ((Number) v).doubleValue(); return d == Math.rint(d) && Math.abs(d) < 1e15 ? String.valueOf((long) d) : String.valueOf(v); }
+        if (v instanceof List) { List<Object> out = new ArrayList<>(); for (Object o : (List<?>) v) out.add(normalizeJson(o)); return out; }
+        if (v instanceof Map) { Map<Object, Object> out = new LinkedHashMap<>(); for (Map.Entry<?, ?> e : ((Map<?, ?>) v).entrySet()) out.put(e.getKey(), normalizeJson(e.getValue())); return out; }
+        return v;
+    }
+
+    // n tasks spread over the week with realistic names; ids and times vary so nothing can be shared.
+    private static Map<String, DaySchedule<String>> syntheticWeek(int n) {
+        String[] days = ScheduleEngine.DEFAULT_DAYS;
+        List<List<Task<String>>> lists = new ArrayList<>();
+        for (int d = 0; d < days.length; d++) lists.add(new ArrayList<>(n / days.length + 1));
+        for (int i = 0; i < n; i++) {
+            Task<String> t = new Task<>("Task " + i + " – Übung", Times.format(i % 1440), Times.format((i + 45) % 1440), PRIORITIES[i % 3], CATEGORIES[i % 6]);
+            t.setCompleted(i % 3 == 0);
+            lists.get(i % days.length).add(t);
+        }
+        Map<String, DaySchedule<String>> week = new LinkedHashMap<>();
+        for (int d = 0; d < days.length; d++) { DaySchedule<String> s = new DaySchedule<>(days[d]); s.addTasks(lists.get(d)); week.put(days[d], s); }
+        return week;
+    }
+
+    // ---- comparison ----
+
+    // One line per task, sorted within each day (regrouped formats may reorder equal start times). iCalendar
+    // text cannot hold a carriage return, so it is compared without them.
+    private static String canonical(Map<String, DaySchedule<String>> week, DataPersistence.Format fmt) {
+        StringBuilder sb = new StringBuilder();
+        for (String d : ScheduleEngine.DEFAULT_DAYS) {
+            DaySchedule<String> s = week.get(d);
+            sb.append(d).append(":\n").append(s == null ? "" : canonicalTasks(s.getTasks(), true, fmt == DataPersistence.Format.ICS));
+        }
+        for (String d : week.keySet()) if (!Arrays.asList(ScheduleEngine.DEFAULT_DAYS).contains(d) && !week.get(d).getTasks().isEmpty()) sb.append("extra day ").append(d);
+        return sb.toString();
+    }
+
+    private static String canonicalTasks(List<Task<String>> tasks, boolean ids, boolean noCr) {
+        List<String> rows = new ArrayList<>();
+        for (Task<String> t : tasks) {
+            String row = (ids ? t.getId() + "|" : "") + t.getTime() + "|" + t.getEndTime() + "|" + t.getTaskName() + "|" + t.getPriority() + "|" + t.getCategory() + "|" + t.isCompleted();
+            rows.add(noCr ? row.replace("\r", "") : row);
+        }
+        Collections.sort(rows);
+        StringBuilder sb = new StringBuilder();
+        for (String r : rows) sb.append("  ").append(r).append('\n');
+        return sb.toString();
+    }
+
+    private static String firstDifference(String want, String got) {
+        int i = 0;
+        while (i < want.length() && i < got.length() && want.charAt(i) == got.charAt(i)) i++;
+        int from = Math.max(0, want.lastIndexOf('\n', Math.max(0, i - 1)) + 1);
+        return JsonUtil.stringify(want.substring(from, Math.min(want.length(), i + 40))) + " vs " + JsonUtil.stringify(got.substring(Math.min(from, got.length()), Math.min(got.length(), i + 40)));
+    }
+
+    // ---- heap measurement ----
+    // Short-lived garbage stays in the young generation and says more about GC sizing than about a loader, so
+    // only the old generation is measured: a loader that buffers the whole document, or a bloated model, shows
+    // up there. Collectors without a recognisable old pool are measured over the whole heap.
+
+    private static long settledHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static List<java.lang.management.MemoryPoolMXBean> oldPools() {
+        List<java.lang.management.MemoryPoolMXBean> old = new ArrayList<>(), heap = new ArrayList<>();
+        for (java.lang.management.MemoryPoolMXBean pool : java.lang.management.ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != java.lang.management.MemoryType.HEAP) continue;
+            heap.add(pool);
+            if (pool.getName().contains("Old") || pool.getName().contains("Tenured")) old.add(pool);
+        }
+        return old.isEmpty() ? heap : old;
+    }
+
+    private static void resetPeaks() { for (java.lang.management.MemoryPoolMXBean pool : oldPools()) pool.resetPeakUsage(); }
+
+    private static long oldGen(boolean peak) {
+        long sum = 0;
+        for (java.lang.management.MemoryPoolMXBean pool : oldPools()) sum += (peak ? pool.getPeakUsage() : pool.getUsage()).getUsed();
+        return sum;
+    }
+}